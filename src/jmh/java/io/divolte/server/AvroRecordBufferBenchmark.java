@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.recordmapping.DslRecordMapper;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing a mapped record into an {@link AvroRecordBuffer}.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AvroRecordBufferBenchmark {
+    private DivolteEvent[] events;
+    private GenericRecord[] records;
+    private int index;
+
+    @Setup
+    public void setup() {
+        final DslRecordMapper mapper =
+            new DslRecordMapper(DefaultEventRecord.getClassSchema(),
+                                Mapping.defaultRecordMapping(BenchmarkEvents.defaultConfiguration()));
+        events = BenchmarkEvents.parsedBrowserEvents();
+        records = new GenericRecord[events.length];
+        for (int i = 0; i < events.length; ++i) {
+            records[i] = mapper.newRecordFromExchange(events[i]);
+        }
+    }
+
+    @Benchmark
+    public AvroRecordBuffer fromRecord() {
+        final int i = index++ & (BenchmarkEvents.EVENT_COUNT - 1);
+        final DivolteEvent event = events[i];
+        return AvroRecordBuffer.fromRecord(event.partyId, event.sessionId, event.eventId, event.requestStartTime, records[i]);
+    }
+}
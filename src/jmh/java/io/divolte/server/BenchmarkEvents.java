@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import com.typesafe.config.ConfigFactory;
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.config.ValidatedConfiguration;
+import io.divolte.server.recordmapping.DslRecordMapper;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.apache.avro.Schema;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Fixtures shared by the benchmarks.
+ * <p>
+ * The events produced here are equivalent to what the tracking JavaScript sends,
+ * including a valid checksum. Each event has its own event identifier so that the
+ * duplicate detection behaves as it would for real traffic.
+ */
+@ParametersAreNonnullByDefault
+public final class BenchmarkEvents {
+    // This must be a power of 2; benchmarks cycle through the events using a mask.
+    public static final int EVENT_COUNT = 1024;
+
+    private static final String USER_AGENT =
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_13_6) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/69.0.3497.100 Safari/537.36";
+
+    private BenchmarkEvents() {
+        // Prevent external instantiation.
+    }
+
+    public static ValidatedConfiguration defaultConfiguration() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(ConfigFactory::defaultReference);
+        Preconditions.checkState(vc.isValid(), "Invalid benchmark configuration: %s", vc.errors());
+        return vc;
+    }
+
+    public static HttpServerExchange[] browserEventExchanges() {
+        return IntStream.range(0, EVENT_COUNT)
+                        .mapToObj(BenchmarkEvents::browserEventExchange)
+                        .toArray(HttpServerExchange[]::new);
+    }
+
+    public static UndertowEvent[] browserEvents() {
+        final Instant now = Instant.now();
+        final HttpServerExchange[] exchanges = browserEventExchanges();
+        final UndertowEvent[] events = new UndertowEvent[exchanges.length];
+        for (int i = 0; i < exchanges.length; ++i) {
+            final DivolteIdentifier partyId = HttpSource.queryParamFromExchange(exchanges[i], "p")
+                                                        .flatMap(DivolteIdentifier::tryParse)
+                                                        .orElseThrow(IllegalStateException::new);
+            events[i] = new ClientSideCookieEventHandler.BrowserUndertowEvent(now, exchanges[i], partyId);
+        }
+        return events;
+    }
+
+    public static DivolteEvent[] parsedBrowserEvents() {
+        final UndertowEvent[] events = browserEvents();
+        final DivolteEvent[] parsedEvents = new DivolteEvent[events.length];
+        for (int i = 0; i < events.length; ++i) {
+            try {
+                parsedEvents[i] = events[i].parseRequest();
+            } catch (final IncompleteRequestException e) {
+                throw new IllegalStateException("Benchmark event could not be parsed.", e);
+            }
+        }
+        return parsedEvents;
+    }
+
+    public static AvroRecordBuffer[] defaultRecordBuffers() {
+        return defaultRecordBuffers(Optional.empty());
+    }
+
+    public static AvroRecordBuffer[] defaultRecordBuffers(final Optional<Integer> confluentId) {
+        final DslRecordMapper mapper = new DslRecordMapper(DefaultEventRecord.getClassSchema(),
+                                                           Mapping.defaultRecordMapping(defaultConfiguration()));
+        final DivolteEvent[] events = parsedBrowserEvents();
+        final AvroRecordBuffer[] buffers = new AvroRecordBuffer[events.length];
+        for (int i = 0; i < events.length; ++i) {
+            final DivolteEvent event = events[i];
+            buffers[i] = AvroRecordBuffer.fromRecord(event.partyId, event.sessionId, event.eventId,
+                                                     event.requestStartTime, mapper.newRecordFromExchange(event),
+                                                     confluentId);
+        }
+        return buffers;
+    }
+
+    private static HttpServerExchange browserEventExchange(final int index) {
+        // A null connection is fine provided the source address is set explicitly.
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.setSourceAddress(InetSocketAddress.createUnresolved("192.168.1." + (index & 0xff), 54321));
+        exchange.getRequestHeaders()
+                .put(Headers.USER_AGENT, USER_AGENT)
+                .put(Headers.REFERER, "http://www.example.com/");
+        // Values are the same as those in the RequestChecksumTest, apart from the event identifier.
+        final String eventId = "0:1fF6GFGjDOQiEx_OxnTm_tl4BH91eGLF" + index;
+        exchange.addQueryParam("p", "0:i1t84hgy:5AF359Zjq5kUy98u4wQjlIZzWGhN~GlG")
+                .addQueryParam("s", "0:i1t84hgy:95CbiPCYln_1e0a6rFvuRkDkeNnc6KC8")
+                .addQueryParam("v", "0:1fF6GFGjDOQiEx_OxnTm_tl4BH91eGLF")
+                .addQueryParam("e", eventId)
+                .addQueryParam("c", "i1t8q2b6")
+                .addQueryParam("n", "f")
+                .addQueryParam("f", "f")
+                .addQueryParam("l", "http://localhost:8290/path/with/42/shoes.html?q=running&p=1&p=2#top")
+                .addQueryParam("r", "https://www.google.com/search?q=running+shoes")
+                .addQueryParam("i", "1ak")
+                .addQueryParam("j", "sj")
+                .addQueryParam("k", "2")
+                .addQueryParam("w", "uq")
+                .addQueryParam("h", "qd")
+                .addQueryParam("t", "pageView");
+        exchange.addQueryParam("x", Integer.toString(checksum(exchange.getQueryParameters()), 36));
+        return exchange;
+    }
+
+    private static int checksum(final Map<String, Deque<String>> queryParameters) {
+        // Same canonical form as the tracking JavaScript; see ClientSideCookieEventHandler.
+        final StringBuilder builder = new StringBuilder();
+        new TreeMap<>(queryParameters).forEach((name, values) -> {
+            builder.append(name).append('=');
+            values.forEach(value -> builder.append(value).append(','));
+            builder.append(';');
+        });
+        return Hashing.murmur3_32().hashString(builder, StandardCharsets.UTF_8).asInt();
+    }
+
+    public static Schema loadSchema(final String resourceName) {
+        try (final InputStream stream = Resources.getResource(resourceName).openStream()) {
+            return new Schema.Parser().parse(stream);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not load schema: " + resourceName, e);
+        }
+    }
+
+    public static String copyResourceToFile(final String resourceName) {
+        // Mappings are loaded from the file-system, so we need a copy there.
+        try (final InputStream stream = Resources.getResource(resourceName).openStream()) {
+            final Path file = Files.createTempFile("benchmark-", '-' + resourceName);
+            file.toFile().deleteOnExit();
+            Files.copy(stream, file, StandardCopyOption.REPLACE_EXISTING);
+            return file.toString();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not copy resource to file: " + resourceName, e);
+        }
+    }
+}
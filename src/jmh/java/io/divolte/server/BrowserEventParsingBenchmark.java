@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a browser event from the incoming request: checksum
+ * verification, query parameter extraction and identifier parsing.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BrowserEventParsingBenchmark {
+    private UndertowEvent[] events;
+    private int index;
+
+    @Setup
+    public void setup() {
+        events = BenchmarkEvents.browserEvents();
+    }
+
+    @Benchmark
+    public DivolteEvent parseRequest() throws IncompleteRequestException {
+        return events[index++ & (BenchmarkEvents.EVENT_COUNT - 1)].parseRequest();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.config.ValidatedConfiguration;
+import io.divolte.server.recordmapping.DslRecordMapper;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Param;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mapping a parsed event onto an Avro record: for the built-in default
+ * mapping, for a mapping that uses most of the expensive DSL features and for a
+ * mapping dominated by regular expressions.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DslRecordMapperBenchmark {
+    @Param({"default", "heavy", "regexes"})
+    public String mapping;
+
+    private DslRecordMapper mapper;
+    private DivolteEvent[] events;
+    private int index;
+
+    @Setup
+    public void setup() {
+        final ValidatedConfiguration vc = BenchmarkEvents.defaultConfiguration();
+        switch (mapping) {
+            case "default":
+                mapper = new DslRecordMapper(DefaultEventRecord.getClassSchema(), Mapping.defaultRecordMapping(vc));
+                break;
+            case "heavy":
+                mapper = scriptedMapper(vc, "heavy-mapping.groovy");
+                break;
+            case "regexes":
+                mapper = scriptedMapper(vc, "many-regexes-mapping.groovy");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mapping: " + mapping);
+        }
+        events = BenchmarkEvents.parsedBrowserEvents();
+    }
+
+    private static DslRecordMapper scriptedMapper(final ValidatedConfiguration vc, final String mappingResource) {
+        return new DslRecordMapper(vc,
+                                   BenchmarkEvents.copyResourceToFile(mappingResource),
+                                   BenchmarkEvents.loadSchema("TestRecord.avsc"),
+                                   Optional.empty());
+    }
+
+    @Benchmark
+    public GenericRecord newRecordFromExchange() {
+        return mapper.newRecordFromExchange(events[index++ & (BenchmarkEvents.EVENT_COUNT - 1)]);
+    }
+}
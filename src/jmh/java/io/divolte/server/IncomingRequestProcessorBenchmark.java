@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import com.google.common.collect.ImmutableMap;
+import io.divolte.server.config.ValidatedConfiguration;
+import io.divolte.server.processing.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the complete processing of a browser event on a mapping thread:
+ * parsing, duplicate detection, mapping and serialization. There are no sinks
+ * configured, so nothing is enqueued after the event has been serialized.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IncomingRequestProcessorBenchmark {
+    private IncomingRequestProcessor processor;
+    private Item<UndertowEvent>[] items;
+    private int index;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final ValidatedConfiguration vc = BenchmarkEvents.defaultConfiguration();
+        processor = new IncomingRequestProcessor(vc,
+                                                 ImmutableMap.of(),
+                                                 Optional.empty(),
+                                                 new SchemaRegistry(vc),
+                                                 (event, buffer, record) -> {});
+        final UndertowEvent[] events = BenchmarkEvents.browserEvents();
+        items = new Item[events.length];
+        for (int i = 0; i < events.length; ++i) {
+            items[i] = Item.of(0, events[i].partyId.value, events[i]);
+        }
+    }
+
+    @Benchmark
+    public Object process() {
+        return processor.process(items[index++ & (BenchmarkEvents.EVENT_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking an event against the short-term duplicate memory, using the
+ * same event properties as the mapping threads do.
+ * <p>
+ * {@link #isProbableDuplicateOfNewEvent()} checks an event that hasn't been seen before,
+ * as is usual for real traffic: each invocation uses a fresh event identifier, so that the
+ * slots that are touched are spread over the whole memory. Building that identifier is
+ * included; {@link #newEventId()} measures it separately so it can be subtracted.
+ * {@link #isProbableDuplicateOfRepeatedEvent()} cycles through a small set of events
+ * instead. After the first pass every check is a duplicate, and the few slots involved
+ * stay cached.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShortTermDuplicateMemoryBenchmark {
+    private static final int MEMORY_SIZE = 1000000;
+
+    private ShortTermDuplicateMemory memory;
+    private String[] partyIds;
+    private String[] sessionIds;
+    private String[] eventIds;
+    private int index;
+    private long sequence;
+
+    @Setup
+    public void setup() {
+        memory = new ShortTermDuplicateMemory(MEMORY_SIZE);
+        final DivolteEvent[] events = BenchmarkEvents.parsedBrowserEvents();
+        partyIds = new String[events.length];
+        sessionIds = new String[events.length];
+        eventIds = new String[events.length];
+        for (int i = 0; i < events.length; ++i) {
+            partyIds[i] = events[i].partyId.value;
+            sessionIds[i] = events[i].sessionId.value;
+            eventIds[i] = events[i].eventId;
+        }
+    }
+
+    @Benchmark
+    public String newEventId() {
+        final int i = index++ & (BenchmarkEvents.EVENT_COUNT - 1);
+        return eventIds[i] + sequence++;
+    }
+
+    @Benchmark
+    public boolean isProbableDuplicateOfNewEvent() {
+        final int i = index++ & (BenchmarkEvents.EVENT_COUNT - 1);
+        return memory.isProbableDuplicate(partyIds[i], sessionIds[i], eventIds[i] + sequence++);
+    }
+
+    @Benchmark
+    public boolean isProbableDuplicateOfRepeatedEvent() {
+        final int i = index++ & (BenchmarkEvents.EVENT_COUNT - 1);
+        return memory.isProbableDuplicate(partyIds[i], sessionIds[i], eventIds[i]);
+    }
+}
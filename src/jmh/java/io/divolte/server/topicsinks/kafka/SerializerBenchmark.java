@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.BenchmarkEvents;
+import io.divolte.server.DivolteSchema;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a serialized record into the bytes handed to the Kafka producer,
+ * for each of the supported sink modes.
+ */
+@ParametersAreNonnullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+    @Param({"naked", "confluent"})
+    public String mode;
+
+    private Serializer<AvroRecordBuffer> serializer;
+    private AvroRecordBuffer[] buffers;
+    private int index;
+
+    @Setup
+    public void setup() {
+        final DivolteSchema schema;
+        switch (mode) {
+            case "naked":
+                schema = new DivolteSchema(DefaultEventRecord.getClassSchema(), Optional.empty());
+                serializer = Serializers.createNakedAvroSerializer(schema);
+                break;
+            case "confluent":
+                schema = new DivolteSchema(DefaultEventRecord.getClassSchema(), Optional.of(42));
+                serializer = Serializers.createConfluentAvroSerializer(schema);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        // Records are encoded the way a mapping with this schema would encode them.
+        buffers = BenchmarkEvents.defaultRecordBuffers(schema.confluentId);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize("divolte", buffers[index++ & (BenchmarkEvents.EVENT_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * A mapping that exercises most of the expensive parts of the mapping DSL:
+ * regular expressions, URI parsing, headers, cookies, conditions and
+ * user agent parsing.
+ */
+mapping {
+    map corrupt() onto 'unreliable'
+    map duplicate() onto 'dupe'
+    map firstInSession() onto 'sessionStart'
+    map timestamp() onto 'ts'
+    map remoteHost() onto 'remoteHost'
+    map referer() onto 'referer'
+    map location() onto 'location'
+    map viewportPixelWidth() onto 'viewportWidth'
+    map viewportPixelHeight() onto 'viewportHeight'
+    map screenPixelWidth() onto 'screenWidth'
+    map screenPixelHeight() onto 'screenHeight'
+    map devicePixelRatio() onto 'pixelRatio'
+    map partyId() onto 'client'
+    map sessionId() onto 'session'
+    map pageViewId() onto 'pageview'
+    map eventId() onto 'event'
+    map eventType() onto 'eventType'
+    map userAgentString() onto 'userAgentString'
+
+    def locMatcher = match '^http://[^/]+/path/with/([0-9]+)/(?<page>[^\\.]+)\\.html' against location()
+    map locMatcher.matches() onto 'pathBoolean'
+    map locMatcher.group('page') onto 'contentPage'
+
+    def locationProtocol = match '^([a-z]+)://' against location()
+    map locationProtocol.group(1) onto 'locationProtocol'
+    def refererProtocol = match '^([a-z]+)://' against referer()
+    map refererProtocol.group(1) onto 'refererProtocol'
+
+    def locationUri = parse location() to uri
+    map locationUri.scheme() onto 'uriScheme'
+    map locationUri.path() onto 'uriPath'
+    map locationUri.host() onto 'uriHost'
+    map locationUri.port() onto 'uriPort'
+    map locationUri.decodedQueryString() onto 'uriQueryString'
+    map locationUri.decodedFragment() onto 'uriFragment'
+    map locationUri.query().value('q') onto 'uriQueryStringValue'
+    map locationUri.query().valueList('p') onto 'uriQueryStringValues'
+    map locationUri.query() onto 'uriQuery'
+
+    def hdr = header('Referer')
+    map hdr onto 'headerList'
+    map hdr.first() onto 'headerFirst'
+    map hdr.last() onto 'headerLast'
+    map hdr.commaSeparated() onto 'headers'
+
+    map cookie('custom_cookie') onto 'customCookie'
+
+    when locationUri.path().equalTo('/') apply {
+        map 'home' onto 'toplevelCategory'
+    }
+    when { locMatcher.matches() } apply {
+        map 'product' onto 'toplevelCategory'
+        map locMatcher.group(1) onto 'subCategory'
+    }
+
+    def ua = userAgent()
+    map ua.name() onto 'userAgentName'
+    map ua.family() onto 'userAgentFamily'
+    map ua.vendor() onto 'userAgentVendor'
+    map ua.type() onto 'userAgentType'
+    map ua.version() onto 'userAgentVersion'
+    map ua.deviceCategory() onto 'userAgentDeviceCategory'
+    map ua.osFamily() onto 'userAgentOsFamily'
+    map ua.osVersion() onto 'userAgentOsVersion'
+    map ua.osVendor() onto 'userAgentOsVendor'
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * A mapping that is dominated by regular expressions on the location and referer,
+ * including some that only check for a literal prefix or suffix.
+ */
+mapping {
+    map timestamp() onto 'ts'
+    map remoteHost() onto 'remoteHost'
+
+    def locMatcher = match '^http://[^/]+/path/with/([0-9]+)/(?<page>[^\\.]+)\\.html' against location()
+    map locMatcher.matches() onto 'pathBoolean'
+    map locMatcher.group(1) onto 'subCategory'
+    map locMatcher.group('page') onto 'contentPage'
+
+    def locationProtocol = match '^([a-z]+)://' against location()
+    map locationProtocol.group(1) onto 'locationProtocol'
+    def refererProtocol = match '^([a-z]+)://' against referer()
+    map refererProtocol.group(1) onto 'refererProtocol'
+
+    def searchReferer = match '^https://www\\.google\\.[a-z]+/.*' against referer()
+    when searchReferer.matches() apply {
+        map 'search' onto 'toplevelCategory'
+    }
+    def localLocation = match '^http://localhost:8290/.*' against location()
+    when localLocation.matches() apply {
+        map 'local' onto 'eventType'
+    }
+    def topLocation = match '.*#top' against location()
+    when topLocation.matches() apply {
+        map 'top' onto 'queryparam'
+    }
+}
@@ -51,8 +51,21 @@ public class AsyncRequestBodyReceiver {
 
     private final AtomicInteger preallocateChunks = new AtomicInteger(1);
     private final int maximumChunks;
+    private final ChunkPool pool;
 
     public AsyncRequestBodyReceiver(final int requestedMaxBufferSize) {
+        this(requestedMaxBufferSize, ChunkPool.UNPOOLED);
+    }
+
+    /**
+     * Create a receiver whose buffers come from a pool. Bodies passed to the callback must
+     * be closed once they have been read so that their buffers are returned to the pool.
+     *
+     * @param requestedMaxBufferSize the maximum size of a request body.
+     * @param pool the pool from which buffers are obtained.
+     */
+    public AsyncRequestBodyReceiver(final int requestedMaxBufferSize, final ChunkPool pool) {
+        this.pool = Objects.requireNonNull(pool);
         /*
          * Convert requested buffer size into the number of slots.
          * We always need at least one slot, and the actual buffer
@@ -124,6 +137,15 @@ public class AsyncRequestBodyReceiver {
         }
     }
 
+    static void closeQuietly(final InputStream body) {
+        try {
+            body.close();
+        } catch (final IOException e) {
+            // Our buffered bodies don't throw on close.
+            logger.debug("Error closing request body.", e);
+        }
+    }
+
     private static String getPeerHost(final HttpServerExchange exchange) {
         return Optional.ofNullable(exchange.getSourceAddress())
             .map(InetSocketAddress::getHostString)
@@ -149,7 +171,7 @@ public class AsyncRequestBodyReceiver {
          * buffers are used exclusively on heap after receiving the bytes from the
          * socket.
          */
-        ChunkyByteBuffer.fill(channel, provisionChunks, contentLength.isPresent() ? provisionChunks : maximumChunks,
+        ChunkyByteBuffer.fill(channel, provisionChunks, contentLength.isPresent() ? provisionChunks : maximumChunks, pool,
                               new ChunkyByteBuffer.CompletionHandler() {
             @Override
             public void overflow() {
@@ -178,6 +200,7 @@ public class AsyncRequestBodyReceiver {
                     }
                     exchange.setStatusCode(StatusCodes.BAD_REQUEST)
                             .endExchange();
+                    closeQuietly(body);
                     return;
                 }
                 // First bump the global default for the number of chunks that we pre-allocate.
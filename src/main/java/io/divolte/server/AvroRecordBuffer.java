@@ -17,61 +17,78 @@
 package io.divolte.server;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import com.google.common.base.MoreObjects;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumWriter;
-import org.apache.avro.io.Encoder;
-import org.apache.avro.io.EncoderFactory;
-import org.apache.avro.specific.SpecificDatumWriter;
 
 @ParametersAreNonnullByDefault
 public final class AvroRecordBuffer {
-    private static final int INITIAL_BUFFER_SIZE = 100;
-    private static final AtomicInteger BUFFER_SIZE = new AtomicInteger(INITIAL_BUFFER_SIZE);
+    // Reference: https://docs.confluent.io/3.3.0/schema-registry/docs/serializer-formatter.html#wire-format
+    private static final byte CONFLUENT_RECORD_MAGIC = 0;
+    public static final int CONFLUENT_HEADER_SIZE = 5;
 
     private final DivolteIdentifier partyId;
     private final DivolteIdentifier sessionId;
     private final String eventId;
+    private final Optional<String> eventType;
     private final Instant timestamp;
+
+    // The encoded record, preceded by the header (if any). The array is never modified after construction.
+    private final byte[] bytes;
+    private final int headerSize;
     private final ByteBuffer byteBuffer;
 
     private AvroRecordBuffer(final DivolteIdentifier partyId,
                              final DivolteIdentifier sessionId,
                              final String eventId,
+                             final Optional<String> eventType,
                              final Instant timestamp,
-                             final GenericRecord record) throws IOException {
+                             final GenericRecord record,
+                             final Optional<Integer> confluentId,
+                             final AvroRecordEncoder encoder) throws IOException {
         this.partyId = Objects.requireNonNull(partyId);
         this.sessionId = Objects.requireNonNull(sessionId);
         this.eventId = Objects.requireNonNull(eventId);
+        this.eventType = Objects.requireNonNull(eventType);
         this.timestamp = Objects.requireNonNull(timestamp);
 
         /*
-         * We avoid ByteArrayOutputStream as it is fully synchronized and performs
-         * a lot of copying. Instead, we create a byte array and point a
-         * ByteBuffer to it and create a custom OutputStream implementation that
-         * writes directly to the ByteBuffer. If we under-allocate, we recreate
-         * the entire object using a larger byte array. All subsequent instances
-         * will also allocate the larger size array from that point onward.
+         * The encoder produces an array of exactly the right size, with room for
+         * the header in front. This means the array we retain never over-allocates,
+         * and can be handed out as-is to sinks that need the encoded record as a
+         * byte array.
          */
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE.get());
-        final DatumWriter<GenericRecord> writer = new SpecificDatumWriter<>(record.getSchema());
-        final Encoder encoder = EncoderFactory.get().directBinaryEncoder(new ByteBufferOutputStream(byteBuffer), null);
+        this.headerSize = confluentId.isPresent() ? CONFLUENT_HEADER_SIZE : 0;
+        final byte[] bytes = encoder.encode(record, headerSize);
+        confluentId.ifPresent(schemaId -> writeConfluentHeader(bytes, schemaId));
+        this.bytes = bytes;
+        this.byteBuffer = ByteBuffer.wrap(bytes, headerSize, bytes.length - headerSize).slice().asReadOnlyBuffer();
+    }
 
-        writer.write(record, encoder);
+    private static void writeConfluentHeader(final byte[] bytes, final int schemaId) {
+        // (The documentation doesn't specify the byte-order, but it's network byte order.)
+        bytes[0] = CONFLUENT_RECORD_MAGIC;
+        bytes[1] = (byte) ((schemaId >> 24) & 0xff);
+        bytes[2] = (byte) ((schemaId >> 16) & 0xff);
+        bytes[3] = (byte) ((schemaId >> 8)  & 0xff);
+        bytes[4] = (byte) ( schemaId        & 0xff);
+    }
 
-        // Prepare buffer for reading, and store it (read-only).
-        byteBuffer.flip();
-        this.byteBuffer = byteBuffer.asReadOnlyBuffer();
+    private boolean hasConfluentHeader(final int schemaId) {
+        return CONFLUENT_HEADER_SIZE == headerSize
+            && bytes[0] == CONFLUENT_RECORD_MAGIC
+            && bytes[1] == (byte) ((schemaId >> 24) & 0xff)
+            && bytes[2] == (byte) ((schemaId >> 16) & 0xff)
+            && bytes[3] == (byte) ((schemaId >> 8)  & 0xff)
+            && bytes[4] == (byte) ( schemaId        & 0xff);
     }
 
     public DivolteIdentifier getPartyId() {
@@ -86,6 +103,10 @@ public final class AvroRecordBuffer {
         return eventId;
     }
 
+    public Optional<String> getEventType() {
+        return eventType;
+    }
+
     public Instant getTimestamp() {
         return timestamp;
     }
@@ -95,19 +116,57 @@ public final class AvroRecordBuffer {
                                               final String eventId,
                                               final Instant timestamp,
                                               final GenericRecord record) {
-        for (;;) {
-            try {
-                return new AvroRecordBuffer(partyId, sessionId, eventId, timestamp, record);
-            } catch (final BufferOverflowException boe) {
-                // Increase the buffer size by about 10%
-                // Because we only ever increase the buffer size, we discard the
-                // scenario where this thread fails to set the new size,
-                // as we can assume another thread increased it.
-                int currentSize = BUFFER_SIZE.get();
-                BUFFER_SIZE.compareAndSet(currentSize, (int) (currentSize * 1.1));
-            } catch (final IOException ioe) {
-                throw new UncheckedIOException("Serialization error.", ioe);
-            }
+        return fromRecord(partyId, sessionId, eventId, timestamp, record, Optional.empty());
+    }
+
+    public static AvroRecordBuffer fromRecord(final DivolteIdentifier partyId,
+                                              final DivolteIdentifier sessionId,
+                                              final String eventId,
+                                              final Instant timestamp,
+                                              final GenericRecord record,
+                                              final Optional<Integer> confluentId) {
+        return fromRecord(partyId, sessionId, eventId, timestamp, record, confluentId, AvroRecordEncoder.forCurrentThread());
+    }
+
+    /**
+     * Serialize a record, optionally reserving a Confluent-compatible header in front of it.
+     * <p>
+     * If a Confluent schema identifier is supplied the header is written up front, so that
+     * {@link #toConfluentBytes(int)} can return the encoded record without copying. Otherwise
+     * {@link #toNakedBytes()} can do this.
+     *
+     * @param confluentId the Confluent schema registry identifier of the record's schema, if known.
+     * @param encoder     the encoder to serialize with; this must belong to the current thread.
+     * @return the serialized record.
+     */
+    public static AvroRecordBuffer fromRecord(final DivolteIdentifier partyId,
+                                              final DivolteIdentifier sessionId,
+                                              final String eventId,
+                                              final Instant timestamp,
+                                              final GenericRecord record,
+                                              final Optional<Integer> confluentId,
+                                              final AvroRecordEncoder encoder) {
+        return fromRecord(partyId, sessionId, eventId, Optional.empty(), timestamp, record, confluentId, encoder);
+    }
+
+    /**
+     * Serialize a record, retaining the type of the event it was produced from. Sinks can pass
+     * the type on to consumers as metadata, alongside the serialized record.
+     *
+     * @see #fromRecord(DivolteIdentifier, DivolteIdentifier, String, Instant, GenericRecord, Optional, AvroRecordEncoder)
+     */
+    public static AvroRecordBuffer fromRecord(final DivolteIdentifier partyId,
+                                              final DivolteIdentifier sessionId,
+                                              final String eventId,
+                                              final Optional<String> eventType,
+                                              final Instant timestamp,
+                                              final GenericRecord record,
+                                              final Optional<Integer> confluentId,
+                                              final AvroRecordEncoder encoder) {
+        try {
+            return new AvroRecordBuffer(partyId, sessionId, eventId, eventType, timestamp, record, confluentId, encoder);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException("Serialization error.", ioe);
         }
     }
 
@@ -115,6 +174,38 @@ public final class AvroRecordBuffer {
         return byteBuffer.slice();
     }
 
+    /**
+     * Obtain the serialized record as a byte array, without any header.
+     * <p>
+     * If there is no header the internal array is returned instead of a copy: callers
+     * must not modify it.
+     *
+     * @return an array containing the serialized record.
+     */
+    public byte[] toNakedBytes() {
+        return 0 == headerSize ? bytes : Arrays.copyOfRange(bytes, headerSize, bytes.length);
+    }
+
+    /**
+     * Obtain the serialized record as a byte array, preceded by a Confluent-compatible header.
+     * <p>
+     * If the record was serialized with the same header in front of it the internal array is
+     * returned instead of a copy: callers must not modify it.
+     *
+     * @param schemaId the Confluent schema registry identifier to place in the header.
+     * @return an array containing the header followed by the serialized record.
+     */
+    public byte[] toConfluentBytes(final int schemaId) {
+        if (hasConfluentHeader(schemaId)) {
+            return bytes;
+        }
+        final int recordSize = size();
+        final byte[] confluentBytes = new byte[CONFLUENT_HEADER_SIZE + recordSize];
+        writeConfluentHeader(confluentBytes, schemaId);
+        System.arraycopy(bytes, headerSize, confluentBytes, CONFLUENT_HEADER_SIZE, recordSize);
+        return confluentBytes;
+    }
+
     /**
      * Convenience getter for determining the size without materializing a slice of the buffer.
      * @return The internal buffer's size.
@@ -131,23 +222,4 @@ public final class AvroRecordBuffer {
                 .add("size", size())
                 .toString();
     }
-
-    @ParametersAreNonnullByDefault
-    private static final class ByteBufferOutputStream extends OutputStream {
-        private final ByteBuffer underlying;
-
-        public ByteBufferOutputStream(final ByteBuffer underlying) {
-            this.underlying = Objects.requireNonNull(underlying);
-        }
-
-        @Override
-        public void write(final int b) throws IOException {
-            underlying.put((byte) b);
-        }
-
-        @Override
-        public void write(final byte[] b, final int off, final int len) throws IOException {
-            underlying.put(b, off, len);
-        }
-    }
 }
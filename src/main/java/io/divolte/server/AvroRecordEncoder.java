@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+/**
+ * Serializes Avro records into exactly-sized byte arrays.
+ * <p>
+ * Encoding takes place in a scratch buffer that grows as needed, so a record is never
+ * encoded more than once. The writer and encoder for the current schema are reused for
+ * every record.
+ * <p>
+ * The scratch buffer is sized according to a histogram of recent record sizes. If an
+ * unusually large record causes the buffer to grow, it shrinks back once the record has
+ * been copied out. Each mapping owns an encoder so that the records of one mapping don't
+ * affect the estimate for another.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class AvroRecordEncoder {
+    private static final ThreadLocal<AvroRecordEncoder> THREAD_ENCODER = ThreadLocal.withInitial(AvroRecordEncoder::new);
+
+    private static final int INITIAL_BUFFER_SIZE = 128;
+    // Bucket i counts records whose size needs i bits, i.e. is less than 2^i.
+    private static final int BUCKET_COUNT = 31;
+    // The estimate covers this fraction of the records seen recently.
+    private static final double ESTIMATE_FRACTION = 0.99;
+    // How often (in records) we update the estimate, and how often we age the histogram.
+    private static final int ESTIMATE_INTERVAL = 256;
+    private static final int DECAY_INTERVAL = 16 * ESTIMATE_INTERVAL;
+
+    private final GrowableOutputStream stream = new GrowableOutputStream(INITIAL_BUFFER_SIZE);
+    private final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(stream, null);
+
+    @Nullable
+    private Schema schema;
+    @Nullable
+    private DatumWriter<GenericRecord> writer;
+
+    private final int[] sizeHistogram = new int[BUCKET_COUNT];
+    private int sampleCount;
+    private int sizeEstimate = INITIAL_BUFFER_SIZE;
+
+    /**
+     * Obtain the encoder shared by all records serialized on the current thread that aren't
+     * associated with a particular mapping.
+     *
+     * @return the encoder for the current thread.
+     */
+    public static AvroRecordEncoder forCurrentThread() {
+        return THREAD_ENCODER.get();
+    }
+
+    /**
+     * Serialize a record into a new array, leaving space in front of it for a header.
+     *
+     * @param record     the record to serialize.
+     * @param headerSize the number of bytes to reserve in front of the record. These will be zero.
+     * @return an array containing the header space followed by the serialized record.
+     * @throws IOException if the record could not be serialized.
+     */
+    public byte[] encode(final GenericRecord record, final int headerSize) throws IOException {
+        final DatumWriter<GenericRecord> writer = writerFor(record.getSchema());
+        stream.reset();
+        writer.write(record, encoder);
+        final int recordSize = stream.size();
+        final byte[] result = new byte[headerSize + recordSize];
+        System.arraycopy(stream.buffer(), 0, result, headerSize, recordSize);
+        recordSize(recordSize);
+        return result;
+    }
+
+    private DatumWriter<GenericRecord> writerFor(final Schema recordSchema) {
+        // Mappings only ever produce records of a single schema, so a single cached writer suffices.
+        if (recordSchema != schema) {
+            schema = recordSchema;
+            writer = new SpecificDatumWriter<>(recordSchema);
+        }
+        return Objects.requireNonNull(writer);
+    }
+
+    private void recordSize(final int size) {
+        ++sizeHistogram[Math.min(BUCKET_COUNT - 1, 32 - Integer.numberOfLeadingZeros(size))];
+        if (0 == ++sampleCount % ESTIMATE_INTERVAL) {
+            sizeEstimate = estimateSize();
+            if (0 == sampleCount % DECAY_INTERVAL) {
+                // Halving the counts lets the estimate follow changes in traffic.
+                for (int i = 0; i < BUCKET_COUNT; ++i) {
+                    sizeHistogram[i] >>>= 1;
+                }
+            }
+        }
+        // Don't hold on to a buffer that an outlier forced us to grow.
+        if (stream.capacity() > 2 * sizeEstimate) {
+            stream.resize(sizeEstimate);
+        }
+    }
+
+    private int estimateSize() {
+        int total = 0;
+        for (final int count : sizeHistogram) {
+            total += count;
+        }
+        final int threshold = (int) Math.ceil(total * ESTIMATE_FRACTION);
+        int cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            cumulative += sizeHistogram[i];
+            if (cumulative >= threshold) {
+                return Math.max(INITIAL_BUFFER_SIZE, 1 << i);
+            }
+        }
+        return 1 << (BUCKET_COUNT - 1);
+    }
+
+    /**
+     * The current estimate of the size that will accommodate most records.
+     *
+     * @return the estimated record size, in bytes.
+     */
+    int sizeEstimate() {
+        return sizeEstimate;
+    }
+
+    /**
+     * The current capacity of the scratch buffer.
+     *
+     * @return the number of bytes that can be encoded without growing the buffer.
+     */
+    int bufferCapacity() {
+        return stream.capacity();
+    }
+
+    /*
+     * We avoid ByteArrayOutputStream as it is fully synchronized, and we want to
+     * control when the buffer shrinks.
+     */
+    @ParametersAreNonnullByDefault
+    @NotThreadSafe
+    private static final class GrowableOutputStream extends OutputStream {
+        private byte[] buffer;
+        private int size;
+
+        GrowableOutputStream(final int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        @Override
+        public void write(final int b) {
+            ensureCapacity(size + 1);
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(final int required) {
+            if (required > buffer.length) {
+                // Grow geometrically; the contents encoded so far are kept.
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+            }
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void resize(final int capacity) {
+            buffer = new byte[capacity];
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return buffer.length;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+    }
+}
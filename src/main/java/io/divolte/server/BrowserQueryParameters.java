@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * The query parameters of an event sent by the browser source, indexed by slot.
+ * <p>
+ * Browser events use single-letter parameter names. Instead of looking up each parameter
+ * separately, a single pass over the parameters places the first value of each into its
+ * slot. The same pass feeds the canonical form of the parameters into the request checksum.
+ * <p>
+ * Undertow has already decoded the query string by the time we see it. We use its result
+ * rather than parsing the raw query string again so that the values (and hence the checksum)
+ * are exactly those of the exchange.
+ */
+@ParametersAreNonnullByDefault
+final class BrowserQueryParameters {
+    // The parameter names, in alphabetical order: this is also the order of the slots.
+    private static final String PARAMETER_NAMES = "cefhijklnprstuvwx";
+
+    static final int CLIENT_TIMESTAMP = 0;          // c (chronos)
+    static final int EVENT_ID = 1;                  // e
+    static final int FIRST_IN_SESSION = 2;          // f
+    static final int VIEWPORT_PIXEL_HEIGHT = 3;     // h
+    static final int SCREEN_PIXEL_WIDTH = 4;        // i
+    static final int SCREEN_PIXEL_HEIGHT = 5;       // j
+    static final int DEVICE_PIXEL_RATIO = 6;        // k
+    static final int LOCATION = 7;                  // l
+    static final int NEW_PARTY_ID = 8;              // n
+    static final int PARTY_ID = 9;                  // p
+    static final int REFERER = 10;                  // r
+    static final int SESSION_ID = 11;               // s
+    static final int EVENT_TYPE = 12;               // t
+    static final int EVENT_PARAMETERS = 13;         // u
+    static final int PAGE_VIEW_ID = 14;             // v
+    static final int VIEWPORT_PIXEL_WIDTH = 15;     // w
+    static final int CHECKSUM = 16;                 // x
+
+    private static final int SLOT_COUNT = PARAMETER_NAMES.length();
+    private static final String CHECKSUM_PARAMETER_NAME = String.valueOf(PARAMETER_NAMES.charAt(CHECKSUM));
+    private static final byte[] SLOTS_BY_NAME = new byte[128];
+    static {
+        Arrays.fill(SLOTS_BY_NAME, (byte) -1);
+        for (int slot = 0; slot < SLOT_COUNT; ++slot) {
+            SLOTS_BY_NAME[PARAMETER_NAMES.charAt(slot)] = (byte) slot;
+        }
+    }
+
+    private static final HashFunction CHECKSUM_HASH = Hashing.murmur3_32();
+
+    private final SortedMap<String, Deque<String>> queryParameters;
+    private final String[] values;
+    private final int checksum;
+
+    private BrowserQueryParameters(final SortedMap<String, Deque<String>> queryParameters) {
+        this.queryParameters = queryParameters;
+        this.values = new String[SLOT_COUNT];
+        /*
+         * The canonical form of the parameters for the checksum is:
+         *  1) Sort the query parameters by key, preserving multiple values (and their order).
+         *  2) The magic parameter containing the checksum is discarded.
+         *  3) Build up a string. For each parameter:
+         *     a) Append the parameter name, followed by a '='.
+         *     b) Append each value of the parameter, followed by a ','.
+         *     c) Append a ';'.
+         *  This is designed to be unambiguous in the face of many edge cases. The
+         *  string is hashed as UTF-8; we feed its parts directly into the hash instead
+         *  of building it up.
+         */
+        final Hasher hasher = CHECKSUM_HASH.newHasher();
+        for (final Map.Entry<String, Deque<String>> parameter : queryParameters.entrySet()) {
+            final String name = parameter.getKey();
+            final Deque<String> parameterValues = parameter.getValue();
+            final int slot = slot(name);
+            if (0 <= slot && !parameterValues.isEmpty()) {
+                values[slot] = parameterValues.getFirst();
+            }
+            if (CHECKSUM != slot) {
+                hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) '=');
+                for (final String value : parameterValues) {
+                    hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) ',');
+                }
+                hasher.putByte((byte) ';');
+            }
+        }
+        this.checksum = hasher.hash().asInt();
+    }
+
+    private static int slot(final String name) {
+        if (1 == name.length()) {
+            final char c = name.charAt(0);
+            if (c < SLOTS_BY_NAME.length) {
+                return SLOTS_BY_NAME[c];
+            }
+        }
+        return -1;
+    }
+
+    static BrowserQueryParameters fromExchange(final HttpServerExchange exchange) {
+        return of(exchange.getQueryParameters());
+    }
+
+    static BrowserQueryParameters of(final Map<String, Deque<String>> queryParameters) {
+        // Undertow supplies a sorted map, so normally no copy is needed.
+        return new BrowserQueryParameters(queryParameters instanceof SortedMap
+                                          ? (SortedMap<String, Deque<String>>) queryParameters
+                                          : ImmutableSortedMap.copyOf(queryParameters));
+    }
+
+    /**
+     * Obtain the (first) value of a parameter.
+     *
+     * @param slot the slot of the parameter.
+     * @return the value of the parameter, or <code>null</code> if it wasn't present.
+     */
+    @Nullable
+    String get(final int slot) {
+        return values[slot];
+    }
+
+    /**
+     * The checksum of the request, calculated over all parameters apart from the
+     * checksum itself. This should match the value of the checksum parameter.
+     *
+     * @return the checksum calculated for the parameters.
+     */
+    int checksum() {
+        return checksum;
+    }
+
+    /**
+     * The canonical form of the parameters, as used for calculating the checksum.
+     * This is intended for diagnostic purposes.
+     *
+     * @return the string whose UTF-8 encoding is hashed to calculate the checksum.
+     */
+    String canonicalChecksumString() {
+        final StringBuilder builder = new StringBuilder();
+        queryParameters.forEach((name, parameterValues) -> {
+            if (!CHECKSUM_PARAMETER_NAME.equals(name)) {
+                builder.append(name).append('=');
+                parameterValues.forEach((value) -> builder.append(value).append(','));
+                builder.append(';');
+            }
+        });
+        return builder.toString();
+    }
+}
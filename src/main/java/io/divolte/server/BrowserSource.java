@@ -54,7 +54,8 @@ public class BrowserSource extends HttpSource {
              vc.configuration().getSourceConfiguration(sourceName, BrowserSourceConfiguration.class).httpResponseDelay,
              loadTrackingJavaScript(vc, sourceName),
              processingPool,
-             vc.configuration().sourceIndex(sourceName));
+             vc.configuration().sourceIndex(sourceName),
+             ChunkPool.forSource(vc.configuration().global.server, sourceName));
     }
 
     private BrowserSource(final String sourceName,
@@ -63,17 +64,22 @@ public class BrowserSource extends HttpSource {
                           final Duration httpResponseDelay,
                           final TrackingJavaScriptResource trackingJavascript,
                           final IncomingRequestProcessingPool processingPool,
-                          final int sourceIndex) {
+                          final int sourceIndex,
+                          final ChunkPool chunkPool) {
         super(sourceName);
         this.pathPrefix = pathPrefix;
         this.eventSuffix = eventSuffix;
         javascriptName = trackingJavascript.getScriptName();
         javascriptHandler = new AllowedMethodsHandler(new JavaScriptHandler(trackingJavascript), Methods.GET);
         final ClientSideCookieEventHandler clientSideCookieEventHandler = new ClientSideCookieEventHandler(processingPool, sourceIndex);
+        final ClientSideCookieBatchEventHandler batchEventHandler = new ClientSideCookieBatchEventHandler(processingPool, sourceIndex, chunkPool);
+        // Single events arrive via GET; batches of events are POSTed to the same location.
+        final HttpHandler methodHandler = exchange ->
+            (Methods.POST.equals(exchange.getRequestMethod()) ? batchEventHandler : clientSideCookieEventHandler).handleRequest(exchange);
         final HttpHandler delayedHandler = httpResponseDelay.isZero()
-            ? clientSideCookieEventHandler
-            : new ResponseDelayingHandler(clientSideCookieEventHandler, httpResponseDelay.toNanos(), TimeUnit.NANOSECONDS);
-        eventHandler = new AllowedMethodsHandler(delayedHandler, Methods.GET);
+            ? methodHandler
+            : new ResponseDelayingHandler(methodHandler, httpResponseDelay.toNanos(), TimeUnit.NANOSECONDS);
+        eventHandler = new AllowedMethodsHandler(delayedHandler, Methods.GET, Methods.POST);
     }
 
     @Override
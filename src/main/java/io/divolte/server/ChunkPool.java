@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.divolte.server.config.ServerConfiguration;
+
+/**
+ * A pool of the fixed-size chunks used to buffer request bodies.
+ * <p>
+ * Chunks are handed out by {@link #acquire()} and returned via {@link #release(ByteBuffer)}
+ * once the request body they hold has been consumed. If the pool is empty a new chunk is
+ * allocated; if the pool is full a released chunk is left for the garbage collector. A
+ * chunk that is never released is therefore harmless: it just isn't reused.
+ * <p>
+ * A pool with a capacity of zero is disabled: request bodies are then buffered without
+ * pooling, as sized by {@link ChunkyByteBuffer}.
+ * <p>
+ * Statistics are available via JMX so that the effectiveness of the pool can be measured.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class ChunkPool implements ChunkPoolMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkPool.class);
+
+    // A pool that is disabled, for when request bodies should be buffered without pooling.
+    public static final ChunkPool UNPOOLED = new ChunkPool(0, false);
+
+    private final int capacity;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> availableChunks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    public ChunkPool(final int capacity, final boolean direct) {
+        Preconditions.checkArgument(0 <= capacity, "Pool capacity must not be negative: %s", capacity);
+        this.capacity = capacity;
+        this.direct = direct;
+        // An ArrayBlockingQueue needs a capacity of at least 1, even when disabled.
+        this.availableChunks = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Create a pool for a source, as configured for the server. If pooling is enabled the
+     * pool is registered for monitoring.
+     *
+     * @param configuration the server configuration.
+     * @param sourceName the name of the source that will use the pool.
+     * @return a pool for the source.
+     */
+    static ChunkPool forSource(final ServerConfiguration configuration, final String sourceName) {
+        if (0 == configuration.requestBufferPoolSize) {
+            return UNPOOLED;
+        }
+        final ChunkPool pool = new ChunkPool(configuration.requestBufferPoolSize, configuration.requestBufferPoolDirect);
+        pool.register(sourceName);
+        return pool;
+    }
+
+    private void register(final String sourceName) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName("io.divolte.server:type=ChunkPool,source=" + ObjectName.quote(sourceName));
+            try {
+                mBeanServer.registerMBean(this, name);
+            } catch (final InstanceAlreadyExistsException e) {
+                // A previous server instance within the same JVM; the newest wins.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(this, name);
+            }
+        } catch (final JMException e) {
+            logger.warn("Could not register request buffer pool statistics for source: " + sourceName, e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return 0 < capacity;
+    }
+
+    /**
+     * Obtain a cleared chunk of {@link ChunkyByteBuffer#CHUNK_SIZE} bytes, from the pool if possible.
+     *
+     * @return a chunk, ready for filling.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer pooledChunk = availableChunks.poll();
+        if (null != pooledChunk) {
+            hits.increment();
+            pooledChunk.clear();
+            return pooledChunk;
+        }
+        misses.increment();
+        return direct ? ByteBuffer.allocateDirect(ChunkyByteBuffer.CHUNK_SIZE) : ByteBuffer.allocate(ChunkyByteBuffer.CHUNK_SIZE);
+    }
+
+    /**
+     * Return a chunk to the pool. The caller must not use the chunk after this.
+     * Chunks that were not obtained from a pool are ignored.
+     *
+     * @param chunk the chunk to return.
+     */
+    public void release(final ByteBuffer chunk) {
+        if (isEnabled() && ChunkyByteBuffer.CHUNK_SIZE == chunk.capacity() && direct == chunk.isDirect()
+                && !availableChunks.offer(chunk)) {
+            discards.increment();
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return 0 == total ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    @Override
+    public int getAvailableChunks() {
+        return availableChunks.size();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+/**
+ * Management interface for monitoring a {@link ChunkPool}.
+ */
+public interface ChunkPoolMXBean {
+    /** @return the number of chunks that were reused from the pool. */
+    long getHits();
+    /** @return the number of chunks that had to be allocated because the pool was empty. */
+    long getMisses();
+    /** @return the fraction of chunk requests satisfied by the pool, or 0 if there were none. */
+    double getHitRate();
+    /** @return the number of released chunks that were discarded because the pool was full. */
+    long getDiscards();
+    /** @return the number of chunks currently available in the pool. */
+    int getAvailableChunks();
+}
@@ -40,7 +40,11 @@ public class ChunkyByteBuffer {
         void failed(Throwable e);
     }
 
+    // Used to detect the end of the stream once all chunks are full. Only the I/O thread reading uses it.
+    private static final ThreadLocal<ByteBuffer> END_OF_STREAM_PROBE = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1));
+
     private final CompletionHandler completionHandler;
+    private final ChunkPool pool;
     // The chunks into which we will be buffering data. Allocated on demand as they fill up.
     private final ByteBuffer[] chunks;
     private int currentChunkIndex;
@@ -48,8 +52,9 @@ public class ChunkyByteBuffer {
     public static void fill(final StreamSourceChannel channel,
                             final int initialChunkCount,
                             final int maxChunkCount,
+                            final ChunkPool pool,
                             final CompletionHandler completionHandler) {
-        final ChunkyByteBuffer buffer = new ChunkyByteBuffer(initialChunkCount, maxChunkCount, completionHandler);
+        final ChunkyByteBuffer buffer = new ChunkyByteBuffer(initialChunkCount, maxChunkCount, pool, completionHandler);
         buffer.fillBuffers(channel, c -> {
             c.getReadSetter().set(d -> buffer.fillBuffers(d, null));
             c.resumeReads();
@@ -58,14 +63,22 @@ public class ChunkyByteBuffer {
 
     private ChunkyByteBuffer(final int initialChunkCount,
                              final int maxChunkCount,
+                             final ChunkPool pool,
                              final CompletionHandler completionHandler) {
         Preconditions.checkArgument(0 < initialChunkCount && initialChunkCount <= maxChunkCount,
                                     "Initial chunk count (%s) must be greater than 0 and less than or equal to the maximum chunk count (%s)", initialChunkCount, maxChunkCount);
         this.completionHandler = Objects.requireNonNull(completionHandler);
-        final int headChunkSize = initialChunkCount * CHUNK_SIZE;
-        final int tailChunkCount = maxChunkCount - initialChunkCount;
-        chunks = new ByteBuffer[1 + tailChunkCount];
-        chunks[0] = ByteBuffer.allocate(headChunkSize);
+        this.pool = Objects.requireNonNull(pool);
+        if (pool.isEnabled()) {
+            // Pooled chunks are all the same size, so the head chunk is a normal chunk.
+            chunks = new ByteBuffer[maxChunkCount];
+            chunks[0] = pool.acquire();
+        } else {
+            final int headChunkSize = initialChunkCount * CHUNK_SIZE;
+            final int tailChunkCount = maxChunkCount - initialChunkCount;
+            chunks = new ByteBuffer[1 + tailChunkCount];
+            chunks[0] = ByteBuffer.allocate(headChunkSize);
+        }
     }
 
     private int getBufferUsed() {
@@ -119,7 +132,7 @@ public class ChunkyByteBuffer {
                     if (!currentChunk.hasRemaining()) {
                         if (currentChunkIndex + 1 < chunks.length) {
                             // We allocate chunks on demand, as we advance.
-                            chunks[++currentChunkIndex] = ByteBuffer.allocate(CHUNK_SIZE);
+                            chunks[++currentChunkIndex] = pool.isEnabled() ? pool.acquire() : ByteBuffer.allocate(CHUNK_SIZE);
                         } else {
                             // Buffers are full; detect if we're at EOF, waiting if necessary.
                             channel.getReadSetter().set(this::waitForEndOfStream);
@@ -135,21 +148,32 @@ public class ChunkyByteBuffer {
         channel.getReadSetter().set(null);
         // Calculate the size before the buffers are flipped for reading.
         final int bufferSize = getBufferUsed();
-        completionHandler.completed(new ChunkyByteBufferInputStream(chunks), bufferSize);
+        // The stream takes over the chunks, and returns them to the pool when closed.
+        completionHandler.completed(new ChunkyByteBufferInputStream(chunks, pool), bufferSize);
     }
 
     private void onFailure(final StreamSourceChannel channel, final Throwable t) {
         channel.getReadSetter().set(null);
+        releaseChunks();
         completionHandler.failed(t);
     }
 
+    private void releaseChunks() {
+        for (int i = 0; i <= currentChunkIndex; ++i) {
+            pool.release(chunks[i]);
+            chunks[i] = null;
+        }
+    }
+
     private void waitForEndOfStream(final StreamSourceChannel channel) {
         // So we have to supply a buffer to detect EOF.
         // This is a corner case, and some alternatives are inappropriate:
         //  - A singleton 1-byte buffer will lead to contention if multiple clients are in this state.
         //  - A zero-byte buffer can't be used because the semantics for reading from it aren't properly
         //    defined.
-        final ByteBuffer tinyBuffer = ByteBuffer.allocate(1);
+        // Instead each I/O thread has its own 1-byte buffer; anything read into it is discarded anyway.
+        final ByteBuffer tinyBuffer = END_OF_STREAM_PROBE.get();
+        tinyBuffer.clear();
         try {
             final int numRead = channel.read(tinyBuffer);
             switch (numRead) {
@@ -164,6 +188,7 @@ public class ChunkyByteBuffer {
                 default:
                     // Overflow. Doh.
                     channel.getReadSetter().set(null);
+                    releaseChunks();
                     completionHandler.overflow();
             }
         } catch (final IOException e) {
@@ -176,14 +201,37 @@ public class ChunkyByteBuffer {
         // The buffers wrapped by this stream.
         // (These will be released as we no longer need them.)
         private final ByteBuffer[] buffers;
+        // The pool to which the buffers are returned when the stream is closed, if any.
+        @Nullable
+        private ChunkPool pool;
+        private final ByteBuffer[] pooledBuffers;
         // The index of the current buffer, or equal to the number of buffers if exhausted.
         private int currentBufferIndex;
 
         public ChunkyByteBufferInputStream(final ByteBuffer... buffers) {
+            this(buffers, null);
+        }
+
+        ChunkyByteBufferInputStream(final ByteBuffer[] buffers, @Nullable final ChunkPool pool) {
             this.buffers = Stream.of(buffers)
                                  .filter(Objects::nonNull)
                                  .map(Buffer::flip)
                                  .toArray(ByteBuffer[]::new);
+            this.pool = null != pool && pool.isEnabled() ? pool : null;
+            this.pooledBuffers = null != this.pool ? this.buffers.clone() : this.buffers;
+        }
+
+        @Override
+        public void close() {
+            // Subsequent reads see the end of the stream.
+            currentBufferIndex = buffers.length;
+            final ChunkPool pool = this.pool;
+            if (null != pool) {
+                this.pool = null;
+                for (final ByteBuffer buffer : pooledBuffers) {
+                    pool.release(buffer);
+                }
+            }
         }
 
         @Override
@@ -204,7 +252,7 @@ public class ChunkyByteBuffer {
             while (currentBufferIndex < buffers.length) {
                 final ByteBuffer currentBuffer = buffers[currentBufferIndex];
                 if (currentBuffer.hasRemaining()) {
-                    return currentBuffer.get();
+                    return currentBuffer.get() & 0xff;
                 }
                 buffers[currentBufferIndex++] = null;
             }
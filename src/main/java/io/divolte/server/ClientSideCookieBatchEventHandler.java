@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static io.divolte.server.HttpSource.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.divolte.server.ClientSideCookieEventHandler.BrowserUndertowEvent;
+import io.divolte.server.processing.Item;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handler for batches of browser events delivered in a single <code>POST</code> request.
+ * <p>
+ * The body of the request is plain text with an event on each line. Each event is encoded
+ * as the query string that would otherwise have been sent with a <code>GET</code> request,
+ * including the checksum. Each event is processed as if it had arrived on its own; lines
+ * that are not usable are skipped without affecting the rest of the batch.
+ */
+@ParametersAreNonnullByDefault
+public final class ClientSideCookieBatchEventHandler implements HttpHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ClientSideCookieBatchEventHandler.class);
+
+    // Browsers limit the amount of data that can be pending via sendBeacon() to 64 KiB.
+    static final int MAXIMUM_BODY_SIZE = 64 * 1024;
+
+    private final IncomingRequestProcessingPool processingPool;
+    private final int sourceIndex;
+
+    private final AsyncRequestBodyReceiver receiver;
+
+    public ClientSideCookieBatchEventHandler(final IncomingRequestProcessingPool processingPool,
+                                             final int sourceIndex,
+                                             final ChunkPool chunkPool) {
+        this.processingPool = Objects.requireNonNull(processingPool);
+        this.sourceIndex = sourceIndex;
+
+        receiver = new AsyncRequestBodyReceiver(MAXIMUM_BODY_SIZE, chunkPool);
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) {
+        captureAndPersistSourceAddress(exchange);
+
+        receiver.receive((body, length) -> {
+            try {
+                if (0 < length) {
+                    logEvents(exchange, body);
+                    exchange.setStatusCode(StatusCodes.NO_CONTENT);
+                } else {
+                    // Empty body; bad by definition.
+                    exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+                }
+            } finally {
+                exchange.endExchange();
+            }
+        }, exchange);
+    }
+
+    private void logEvents(final HttpServerExchange exchange, final InputStream body) {
+        final Instant requestTime = Instant.now();
+        // Closing the reader also closes the body, releasing its buffers.
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (!line.isEmpty()) {
+                    logEvent(exchange, requestTime, line);
+                }
+            }
+        } catch (final IOException e) {
+            // The body has already been buffered, so this is not expected.
+            logger.warn("Error reading batch of events received from " + getPeerHost(exchange), e);
+        }
+    }
+
+    private void logEvent(final HttpServerExchange exchange, final Instant requestTime, final String queryString) {
+        final Optional<SortedMap<String, Deque<String>>> queryParameters = parseQueryString(queryString);
+        final Optional<DivolteIdentifier> partyId =
+            queryParameters.map(parameters -> parameters.get(ClientSideCookieEventHandler.PARTY_ID_QUERY_PARAM))
+                           .map(Deque::getFirst)
+                           .flatMap(DivolteIdentifier::tryParse);
+        if (partyId.isPresent()) {
+            final UndertowEvent event = new BrowserUndertowEvent(requestTime, exchange, partyId.get(), queryParameters.get());
+            processingPool.enqueue(Item.of(sourceIndex, partyId.get().value, event));
+        } else {
+            // Improper event, could be anything.
+            logger.debug("Improper event in batch received from {}.", getPeerHost(exchange));
+        }
+    }
+
+    /*
+     * Decode a query string in the same way as Undertow does for a GET request, so that the
+     * checksum calculated by the JavaScript can be verified.
+     */
+    static Optional<SortedMap<String, Deque<String>>> parseQueryString(final String queryString) {
+        final SortedMap<String, Deque<String>> parameters = new TreeMap<>();
+        try {
+            int start = 0;
+            while (start <= queryString.length()) {
+                final int ampersand = queryString.indexOf('&', start);
+                final int end = -1 == ampersand ? queryString.length() : ampersand;
+                if (start < end) {
+                    final int equals = queryString.indexOf('=', start);
+                    final String name;
+                    final String value;
+                    if (-1 == equals || end < equals) {
+                        name = decode(queryString.substring(start, end));
+                        value = "";
+                    } else {
+                        name = decode(queryString.substring(start, equals));
+                        value = decode(queryString.substring(equals + 1, end));
+                    }
+                    parameters.computeIfAbsent(name, ignored -> new ArrayDeque<>()).add(value);
+                }
+                start = end + 1;
+            }
+        } catch (final IllegalArgumentException e) {
+            // Malformed escape sequence.
+            return Optional.empty();
+        }
+        return Optional.of(parameters);
+    }
+
+    private static String decode(final String encoded) {
+        try {
+            return URLDecoder.decode(encoded, StandardCharsets.UTF_8.name());
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getPeerHost(final HttpServerExchange exchange) {
+        return Optional.ofNullable(exchange.getSourceAddress())
+                       .map(InetSocketAddress::getHostString)
+                       .orElse("<UNKNOWN HOST>");
+    }
+}
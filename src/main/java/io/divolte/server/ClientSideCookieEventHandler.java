@@ -16,13 +16,10 @@
 
 package io.divolte.server;
 
-import avro.shaded.com.google.common.collect.ImmutableSortedMap;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.base.Strings;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
 
 import io.divolte.server.DivolteEvent.BrowserEventData;
@@ -40,13 +37,13 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import static io.divolte.server.BrowserQueryParameters.*;
 import static io.divolte.server.HttpSource.*;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Supplier;
@@ -64,23 +61,8 @@ public final class ClientSideCookieEventHandler implements HttpHandler {
 
     private static final String TRUE_STRING = "t";
 
-    private static final String PARTY_ID_QUERY_PARAM = "p";
-    private static final String NEW_PARTY_ID_QUERY_PARAM = "n";
-    private static final String SESSION_ID_QUERY_PARAM = "s";
-    private static final String FIRST_IN_SESSION_QUERY_PARAM = "f";
-    private static final String EVENT_ID_QUERY_PARAM = "e";
-    private static final String CLIENT_TIMESTAMP_QUERY_PARAM = "c"; // chronos
-    private static final String CHECKSUM_QUERY_PARAM = "x";
-    private static final String PAGE_VIEW_ID_QUERY_PARAM = "v";
-    private static final String EVENT_TYPE_QUERY_PARAM = "t";
-    private static final String EVENT_PARAMETERS_QUERY_PARAM = "u";
-    private static final String LOCATION_QUERY_PARAM = "l";
-    private static final String REFERER_QUERY_PARAM = "r";
-    private static final String VIEWPORT_PIXEL_WIDTH_QUERY_PARAM = "w";
-    private static final String VIEWPORT_PIXEL_HEIGHT_QUERY_PARAM = "h";
-    private static final String SCREEN_PIXEL_WIDTH_QUERY_PARAM = "i";
-    private static final String SCREEN_PIXEL_HEIGHT_QUERY_PARAM = "j";
-    private static final String DEVICE_PIXEL_RATIO_QUERY_PARAM = "k";
+    // The other parameters are accessed via BrowserQueryParameters.
+    static final String PARTY_ID_QUERY_PARAM = "p";
 
     private static final ObjectReader EVENT_PARAMETERS_READER = new ObjectMapper(new MincodeFactory()).reader();
 
@@ -151,34 +133,65 @@ public final class ClientSideCookieEventHandler implements HttpHandler {
         processingPool.enqueue(Item.of(sourceIndex, partyId.value, event));
     }
 
-    private static final class BrowserUndertowEvent extends UndertowEvent {
-        private BrowserUndertowEvent(final Instant requestTime, final HttpServerExchange exchange, final DivolteIdentifier partyId) {
+    static final class BrowserUndertowEvent extends UndertowEvent {
+        private final Map<String, Deque<String>> queryParameters;
+
+        BrowserUndertowEvent(final Instant requestTime, final HttpServerExchange exchange, final DivolteIdentifier partyId) {
+            this(requestTime, exchange, partyId, exchange.getQueryParameters());
+        }
+
+        /*
+         * Events that arrive in a batch share the exchange, but each has its own parameters
+         * instead of those on the query string.
+         */
+        BrowserUndertowEvent(final Instant requestTime,
+                             final HttpServerExchange exchange,
+                             final DivolteIdentifier partyId,
+                             final Map<String, Deque<String>> queryParameters) {
             super(requestTime, exchange, partyId);
+            this.queryParameters = Objects.requireNonNull(queryParameters);
         }
 
         @Override
         public DivolteEvent parseRequest() throws IncompleteRequestException {
-            final boolean corrupt = !isRequestChecksumCorrect(exchange);
-            final DivolteIdentifier partyId = queryParamFromExchange(exchange, PARTY_ID_QUERY_PARAM).flatMap(DivolteIdentifier::tryParse).orElseThrow(IncompleteRequestException::new);
-            final DivolteIdentifier sessionId = queryParamFromExchange(exchange, SESSION_ID_QUERY_PARAM).flatMap(DivolteIdentifier::tryParse).orElseThrow(IncompleteRequestException::new);
-            final String pageViewId = queryParamFromExchange(exchange, PAGE_VIEW_ID_QUERY_PARAM).orElseThrow(IncompleteRequestException::new);
-            final String eventId = queryParamFromExchange(exchange, EVENT_ID_QUERY_PARAM).orElseThrow(IncompleteRequestException::new);
-            final boolean isNewPartyId = queryParamFromExchange(exchange, NEW_PARTY_ID_QUERY_PARAM).map(TRUE_STRING::equals).orElseThrow(IncompleteRequestException::new);
-            final boolean isFirstInSession = queryParamFromExchange(exchange, FIRST_IN_SESSION_QUERY_PARAM).map(TRUE_STRING::equals).orElseThrow(IncompleteRequestException::new);
-            final Instant clientTimeStamp = Instant.ofEpochMilli(queryParamFromExchange(exchange, CLIENT_TIMESTAMP_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Long).orElseThrow(IncompleteRequestException::new));
+            final BrowserQueryParameters parameters = BrowserQueryParameters.of(queryParameters);
+            final boolean corrupt = !isRequestChecksumCorrect(parameters);
+            final DivolteIdentifier partyId = DivolteIdentifier.tryParse(requiredParameter(parameters, PARTY_ID)).orElseThrow(IncompleteRequestException::new);
+            final DivolteIdentifier sessionId = DivolteIdentifier.tryParse(requiredParameter(parameters, SESSION_ID)).orElseThrow(IncompleteRequestException::new);
+            final String pageViewId = requiredParameter(parameters, PAGE_VIEW_ID);
+            final String eventId = requiredParameter(parameters, EVENT_ID);
+            final boolean isNewPartyId = TRUE_STRING.equals(requiredParameter(parameters, NEW_PARTY_ID));
+            final boolean isFirstInSession = TRUE_STRING.equals(requiredParameter(parameters, FIRST_IN_SESSION));
+            final Instant clientTimeStamp = Instant.ofEpochMilli(parseRequiredBase36Long(requiredParameter(parameters, CLIENT_TIMESTAMP)));
 
             final DivolteEvent event = DivolteEvent.createBrowserEvent(exchange, corrupt, partyId, sessionId, eventId,
                                                                        requestTime, clientTimeStamp,
                                                                        isNewPartyId, isFirstInSession,
-                                                                       queryParamFromExchange(exchange, EVENT_TYPE_QUERY_PARAM),
-                                                                       eventParameterSupplier(exchange),
-                                                                       browserEventData(exchange, pageViewId));
+                                                                       Optional.ofNullable(parameters.get(EVENT_TYPE)),
+                                                                       eventParameterSupplier(parameters),
+                                                                       browserEventData(parameters, pageViewId));
             return event;
         }
     }
 
-    private static Supplier<Optional<JsonNode>> eventParameterSupplier(final HttpServerExchange exchange) {
-        return () -> queryParamFromExchange(exchange, EVENT_PARAMETERS_QUERY_PARAM)
+    private static String requiredParameter(final BrowserQueryParameters parameters, final int slot) throws IncompleteRequestException {
+        final String value = parameters.get(slot);
+        if (null == value) {
+            throw new IncompleteRequestException();
+        }
+        return value;
+    }
+
+    private static long parseRequiredBase36Long(final String input) throws IncompleteRequestException {
+        try {
+            return Long.parseLong(input, 36);
+        } catch (final NumberFormatException nfe) {
+            throw new IncompleteRequestException();
+        }
+    }
+
+    private static Supplier<Optional<JsonNode>> eventParameterSupplier(final BrowserQueryParameters parameters) {
+        return () -> Optional.ofNullable(parameters.get(EVENT_PARAMETERS))
                 .map(encodedParameters -> {
                     try {
                         return EVENT_PARAMETERS_READER.readTree(encodedParameters);
@@ -191,73 +204,40 @@ public final class ClientSideCookieEventHandler implements HttpHandler {
                 });
     }
 
-    private static BrowserEventData browserEventData(final HttpServerExchange exchange, final String pageViewId) {
+    private static BrowserEventData browserEventData(final BrowserQueryParameters parameters, final String pageViewId) {
         return new DivolteEvent.BrowserEventData(
                 pageViewId,
-                queryParamFromExchange(exchange, LOCATION_QUERY_PARAM),
-                queryParamFromExchange(exchange, REFERER_QUERY_PARAM),
-                queryParamFromExchange(exchange, VIEWPORT_PIXEL_WIDTH_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Int),
-                queryParamFromExchange(exchange, VIEWPORT_PIXEL_HEIGHT_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Int),
-                queryParamFromExchange(exchange, SCREEN_PIXEL_WIDTH_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Int),
-                queryParamFromExchange(exchange, SCREEN_PIXEL_HEIGHT_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Int),
-                queryParamFromExchange(exchange, DEVICE_PIXEL_RATIO_QUERY_PARAM).map(ClientSideCookieEventHandler::tryParseBase36Int));
+                Optional.ofNullable(parameters.get(LOCATION)),
+                Optional.ofNullable(parameters.get(REFERER)),
+                optionalBase36Int(parameters.get(VIEWPORT_PIXEL_WIDTH)),
+                optionalBase36Int(parameters.get(VIEWPORT_PIXEL_HEIGHT)),
+                optionalBase36Int(parameters.get(SCREEN_PIXEL_WIDTH)),
+                optionalBase36Int(parameters.get(SCREEN_PIXEL_HEIGHT)),
+                optionalBase36Int(parameters.get(DEVICE_PIXEL_RATIO)));
     }
 
-    private static final HashFunction CHECKSUM_HASH = Hashing.murmur3_32();
-
-    private static boolean isRequestChecksumCorrect(final HttpServerExchange exchange) {
+    private static boolean isRequestChecksumCorrect(final BrowserQueryParameters parameters) {
         // This is not intended to be robust against intentional tampering; it is intended to guard
         // against proxies and the like that may have truncated the request.
-
-        return queryParamFromExchange(exchange, CHECKSUM_QUERY_PARAM)
-                .map(ClientSideCookieEventHandler::tryParseBase36Long)
-                .map((expectedChecksum) -> {
-                    /*
-                     * We could optimize this by calculating the checksum directly, instead of building up
-                     * the intermediate string representation. For now the debug value of the string exceeds
-                     * the benefits of going slightly faster.
-                     */
-                    final String canonicalRequestString = buildNormalizedChecksumString(sorted(exchange.getQueryParameters()));
-                    final int requestChecksum =
-                            CHECKSUM_HASH.hashString(canonicalRequestString, StandardCharsets.UTF_8).asInt();
-                    final boolean isRequestChecksumCorrect = expectedChecksum == requestChecksum;
-                    if (!isRequestChecksumCorrect && logger.isDebugEnabled()) {
-                        logger.debug("Checksum mismatch detected; expected {} but was {} for request string: {}",
-                                Long.toString(expectedChecksum, 36),
-                                Integer.toString(requestChecksum, 36),
-                                canonicalRequestString);
-                    }
-                    return isRequestChecksumCorrect;
-                })
-                .orElse(false);
-    }
-
-    private static <K,V> SortedMap<K, V> sorted(final Map<K, V> map) {
-        return map instanceof SortedMap
-            ? (SortedMap<K,V>)map
-            : ImmutableSortedMap.copyOf(map);
-    }
-
-    private static String buildNormalizedChecksumString(final SortedMap<String,Deque<String>> queryParameters) {
-        /*
-         * Build up a canonical representation of the query parameters. The canonical order is:
-         *  1) Sort the query parameters by key, preserving multiple values (and their order).
-         *  2) The magic parameter containing the checksum is discarded.
-         *  3) Build up a string. For each parameter:
-         *     a) Append the parameter name, followed by a '='.
-         *     b) Append each value of the parameter, followed by a ','.
-         *     c) Append a ';'.
-         *  This is designed to be unambiguous in the face of many edge cases.
-         */
-        final StringBuilder builder = new StringBuilder();
-        queryParameters.forEach((name, values) -> {
-            if (!CHECKSUM_QUERY_PARAM.equals(name)) {
-                builder.append(name).append('=');
-                values.forEach((value) -> builder.append(value).append(','));
-                builder.append(';');
-            }
-        });
-        return builder.toString();
+        final String checksumParameter = parameters.get(CHECKSUM);
+        if (null == checksumParameter) {
+            return false;
+        }
+        final long expectedChecksum;
+        try {
+            expectedChecksum = Long.parseLong(checksumParameter, 36);
+        } catch (final NumberFormatException nfe) {
+            return false;
+        }
+        final int requestChecksum = parameters.checksum();
+        final boolean isRequestChecksumCorrect = expectedChecksum == requestChecksum;
+        if (!isRequestChecksumCorrect && logger.isDebugEnabled()) {
+            logger.debug("Checksum mismatch detected; expected {} but was {} for request string: {}",
+                    Long.toString(expectedChecksum, 36),
+                    Integer.toString(requestChecksum, 36),
+                    parameters.canonicalChecksumString());
+        }
+        return isRequestChecksumCorrect;
     }
 
     @Nullable
@@ -269,13 +249,15 @@ public final class ClientSideCookieEventHandler implements HttpHandler {
         }
     }
 
-    @Nullable
-    private static Integer tryParseBase36Int(final String input) {
+    private static Optional<Integer> optionalBase36Int(@Nullable final String input) {
+        if (null == input) {
+            return Optional.empty();
+        }
         try {
-            return Integer.valueOf(input, 36);
+            return Optional.of(Integer.parseInt(input, 36));
         } catch (final NumberFormatException ignored) {
-            // We expect parsing to fail; signal via null.
-            return null;
+            // We expect parsing to fail; signal via empty.
+            return Optional.empty();
         }
     }
 }
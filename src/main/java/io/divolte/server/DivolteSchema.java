@@ -18,13 +18,19 @@ package io.divolte.server;
 
 import com.google.common.base.MoreObjects;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Objects;
 import java.util.Optional;
 
 @ParametersAreNonnullByDefault
 public final class DivolteSchema {
+    // The most compact fingerprint encoding that is practical is Base64, using the URL encoding
+    // because that's safe for file names (which some registries might use to index schemas).
+    private final static Base64.Encoder FINGERPRINT_ENCODER = Base64.getUrlEncoder().withoutPadding();
 
     public final Schema avroSchema;
     public final Optional<Integer> confluentId;
@@ -34,6 +40,24 @@ public final class DivolteSchema {
         this.confluentId = Objects.requireNonNull(confluentId);
     }
 
+    /**
+     * Calculate the fingerprint of the Avro schema, as advertised to consumers by the sinks that
+     * support metadata. This is the SHA-256 digest of the normalized schema, encoded using the
+     * <code>base64url</code> encoding without padding.
+     *
+     * @return the fingerprint of the Avro schema.
+     */
+    public String fingerprint() {
+        final byte[] fingerprint;
+        // SHA-256 is on the list of mandatory JCE algorithms, so this shouldn't be an issue.
+        try {
+            fingerprint = SchemaNormalization.parsingFingerprint("SHA-256", avroSchema);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot calculate schema fingerprint; missing SHA-256 digest algorithm", e);
+        }
+        return FINGERPRINT_ENCODER.encodeToString(fingerprint);
+    }
+
     @Override
     public boolean equals(final Object other) {
         return this == other
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file holding the slots of the duplicate memory, so that they survive restarts.
+ * <p>
+ * The file starts with a small header describing its layout, followed by the slots
+ * of the memory. If the layout of an existing file doesn't match the configuration
+ * its contents are discarded, because signatures would end up in the wrong slots.
+ */
+@ParametersAreNonnullByDefault
+final class DuplicateMemoryFile {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateMemoryFile.class);
+
+    // "DVDM", followed by the version of the layout.
+    private static final int MAGIC = 0x4456444d;
+    private static final int VERSION = 2;
+    // Magic, version and slot count: padded to keep the slots 8-byte aligned.
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = Long.BYTES;
+
+    private DuplicateMemoryFile() {
+        // Prevent external instantiation.
+    }
+
+    /**
+     * Open (or create) a file holding a duplicate memory.
+     *
+     * @param file          the file to use.
+     * @param slotCount     the number of slots in the memory.
+     * @return a memory whose slots are stored in the file.
+     * @throws IOException if the file could not be opened or mapped.
+     */
+    static ShortTermDuplicateMemory open(final Path file, final int slotCount) throws IOException {
+        final long memorySize = (long) slotCount * SLOT_SIZE;
+        if (memorySize > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IllegalArgumentException("Duplicate memory too large to map: " + slotCount + " slots");
+        }
+        // Mappings remain valid after the channel has been closed.
+        try (final FileChannel channel = FileChannel.open(file,
+                                                          StandardOpenOption.CREATE,
+                                                          StandardOpenOption.READ,
+                                                          StandardOpenOption.WRITE)) {
+            if (hasLayout(channel, slotCount)) {
+                logger.info("Reloading duplicate memory from file: {}", file);
+            } else {
+                if (0 < channel.size()) {
+                    logger.warn("Duplicate memory file does not match configuration; discarding contents: {}", file);
+                }
+                writeLayout(channel, slotCount);
+            }
+            // Mapping beyond the end of the file extends it; the new slots are empty.
+            return new ShortTermDuplicateMemory(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, memorySize));
+        }
+    }
+
+    private static boolean hasLayout(final FileChannel channel, final int slotCount) throws IOException {
+        if (channel.size() != HEADER_SIZE + (long) slotCount * SLOT_SIZE) {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        return header.remaining() == HEADER_SIZE
+            && header.getInt() == MAGIC
+            && header.getInt() == VERSION
+            && header.getInt() == slotCount;
+    }
+
+    private static void writeLayout(final FileChannel channel, final int slotCount) throws IOException {
+        channel.truncate(0);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(0).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+}
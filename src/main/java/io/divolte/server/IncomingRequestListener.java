@@ -19,5 +19,5 @@ package io.divolte.server;
 import org.apache.avro.generic.GenericRecord;
 
 interface IncomingRequestListener {
-    void incomingRequest(DivolteEvent event, AvroRecordBuffer avroBuffer, GenericRecord avroRecord);
+    void incomingRequest(DivolteEvent event, boolean duplicate, AvroRecordBuffer avroBuffer, GenericRecord avroRecord);
 }
@@ -37,6 +37,8 @@ import io.divolte.server.processing.ProcessingPool;
 public final class IncomingRequestProcessingPool extends ProcessingPool<IncomingRequestProcessor, UndertowEvent> {
     private final static Logger logger = LoggerFactory.getLogger(IncomingRequestProcessingPool.class);
 
+    private final ShortTermDuplicateMemory duplicateMemory;
+
     public IncomingRequestProcessingPool(final ValidatedConfiguration vc,
                                          final SchemaRegistry schemaRegistry,
                                          final ImmutableMap<String, ProcessingPool<?, AvroRecordBuffer>> sinksByName,
@@ -56,11 +58,52 @@ public final class IncomingRequestProcessingPool extends ProcessingPool<Incoming
             final ImmutableMap<String, ProcessingPool<?, AvroRecordBuffer>> sinksByName,
             final Optional<LookupService> geoipLookupService,
             final IncomingRequestListener listener) {
+        this(
+                vc,
+                schemaRegistry,
+                sinksByName,
+                geoipLookupService,
+                duplicateMemoryFromConfig(vc),
+                listener
+                );
+    }
+
+    private IncomingRequestProcessingPool(
+            final ValidatedConfiguration vc,
+            final SchemaRegistry schemaRegistry,
+            final ImmutableMap<String, ProcessingPool<?, AvroRecordBuffer>> sinksByName,
+            final Optional<LookupService> geoipLookupService,
+            final ShortTermDuplicateMemory duplicateMemory,
+            final IncomingRequestListener listener) {
         super(
                 vc.configuration().global.mapper.threads,
                 vc.configuration().global.mapper.bufferSize,
+                vc.configuration().global.mapper.queueType,
                 "Incoming Request Processor",
-                () -> new IncomingRequestProcessor(vc, sinksByName, geoipLookupService, schemaRegistry, listener));
+                () -> new IncomingRequestProcessor(vc, sinksByName, geoipLookupService, schemaRegistry, listener, duplicateMemory));
+        this.duplicateMemory = duplicateMemory;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        // All processors have finished with the memory by now.
+        duplicateMemory.sync();
+    }
+
+    private static ShortTermDuplicateMemory duplicateMemoryFromConfig(final ValidatedConfiguration vc) {
+        // A single memory is shared by all mapper threads.
+        final int slotCount = vc.configuration().global.mapper.duplicateMemorySize;
+        return vc.configuration().global.mapper.duplicateMemoryFile
+            .map((path) -> {
+                try {
+                    return DuplicateMemoryFile.open(Paths.get(path), slotCount);
+                } catch (final IOException e) {
+                    logger.error("Failed to open duplicate memory file: " + path, e);
+                    throw new UncheckedIOException("Failed to configure duplicate memory.", e);
+                }
+            })
+            .orElseGet(() -> new ShortTermDuplicateMemory(slotCount));
     }
 
     private static Optional<LookupService> lookupServiceFromConfig(final ValidatedConfiguration vc) {
@@ -68,7 +111,7 @@ public final class IncomingRequestProcessingPool extends ProcessingPool<Incoming
         return vc.configuration().global.mapper.ip2geoDatabase
             .map((path) -> {
                 try {
-                    return new ExternalDatabaseLookupService(Paths.get(path));
+                    return new ExternalDatabaseLookupService(Paths.get(path), vc.configuration().global.mapper.ip2geoCacheSize);
                 } catch (final IOException e) {
                     logger.error("Failed to configure GeoIP database: " + path, e);
                     throw new UncheckedIOException("Failed to configure GeoIP lookup service.", e);
@@ -23,6 +23,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import org.slf4j.Logger;
@@ -34,31 +35,40 @@ import com.google.common.collect.Maps;
 
 import io.divolte.server.config.ValidatedConfiguration;
 import io.divolte.server.ip2geo.LookupService;
+import io.divolte.server.processing.AffinitySampler;
 import io.divolte.server.processing.Item;
 import io.divolte.server.processing.ItemProcessor;
 import io.divolte.server.processing.ProcessingPool;
-import io.undertow.util.AttachmentKey;
 
 @ParametersAreNonnullByDefault
 public final class IncomingRequestProcessor implements ItemProcessor<UndertowEvent> {
     private static final Logger logger = LoggerFactory.getLogger(IncomingRequestProcessor.class);
 
-    public static final AttachmentKey<Boolean> DUPLICATE_EVENT_KEY = AttachmentKey.create(Boolean.class);
-
+    // This is shared with the other processors in the pool.
     private final ShortTermDuplicateMemory memory;
 
     // Given a source index, which mappings do we need to apply.
     private final ImmutableList<ImmutableList<Mapping>> mappingsBySourceIndex;
-    // Given a mapping index, which sinks do we need to send it to.
-    private final ImmutableList<ImmutableList<ProcessingPool<?, AvroRecordBuffer>>> sinksByMappingIndex;
+    // Given a mapping index, which sinks do we need to send it to, grouped by their projection.
+    private final ImmutableList<ImmutableList<SinkGroup>> sinksByMappingIndex;
 
     public IncomingRequestProcessor(final ValidatedConfiguration vc,
                                     final ImmutableMap<String, ProcessingPool<?, AvroRecordBuffer>> sinksByName,
                                     final Optional<LookupService> geoipLookupService,
                                     final SchemaRegistry schemaRegistry,
                                     final IncomingRequestListener listener) {
+        this(vc, sinksByName, geoipLookupService, schemaRegistry, listener,
+             new ShortTermDuplicateMemory(vc.configuration().global.mapper.duplicateMemorySize));
+    }
+
+    IncomingRequestProcessor(final ValidatedConfiguration vc,
+                             final ImmutableMap<String, ProcessingPool<?, AvroRecordBuffer>> sinksByName,
+                             final Optional<LookupService> geoipLookupService,
+                             final SchemaRegistry schemaRegistry,
+                             final IncomingRequestListener listener,
+                             final ShortTermDuplicateMemory memory) {
 
-        memory = new ShortTermDuplicateMemory(vc.configuration().global.mapper.duplicateMemorySize);
+        this.memory = Objects.requireNonNull(memory);
 
         /*
          * Create all Mapping instances based on their config.
@@ -116,11 +126,15 @@ public final class IncomingRequestProcessor implements ItemProcessor<UndertowEve
          * we'll likely move to one pool per sink type (i.e. Kafka, HDFS) and leave
          * it to that pool to multiplex events to different sinks destinations (HDFS
          * files or Kafka topics), which should move this code elsewhere.
+         *
+         * Sinks that only keep a sample of the events are wrapped with their sampler.
+         * Sinks that receive the same projection of the mapped records are grouped,
+         * so that each projection is only serialized once per event.
          */
         // Temporary buffer into which we assemble results.
-        final ArrayList<ImmutableList<ProcessingPool<?,AvroRecordBuffer>>> mappingMappingResult =
+        final ArrayList<ImmutableList<SinkGroup>> mappingMappingResult =
                 IntStream.range(0, vc.configuration().mappings.size())
-                         .<ImmutableList<ProcessingPool<?,AvroRecordBuffer>>>mapToObj(ignored -> ImmutableList.of())
+                         .<ImmutableList<SinkGroup>>mapToObj(ignored -> ImmutableList.of())
                          .collect(Collectors.toCollection(ArrayList::new));
         vc.configuration()
             .mappings
@@ -131,12 +145,35 @@ public final class IncomingRequestProcessor implements ItemProcessor<UndertowEve
                                              .sinks
                                              .stream()
                                              .filter(sinksByName::containsKey)
-                                             .map(sinksByName::get)
+                                             .collect(Collectors.groupingBy(sinkName -> schemaRegistry.getProjectionBySinkName(sinkName)
+                                                                                                      .map(projection -> projection.schema),
+                                                                            LinkedHashMap::new,
+                                                                            Collectors.toList()))
+                                             .values()
+                                             .stream()
+                                             .map(sinkNames -> new SinkGroup(schemaRegistry.getProjectionBySinkName(sinkNames.get(0)),
+                                                                             sinkNames.stream()
+                                                                                      .map(sinkName -> new SinkTarget(sinksByName.get(sinkName),
+                                                                                                                      AffinitySampler.ofRate(vc.configuration().sinks.get(sinkName).sampleRate)))
+                                                                                      .collect(ImmutableList.toImmutableList())))
                                              .collect(ImmutableList.toImmutableList())))
             .forEach(kv -> mappingMappingResult.set(kv.getKey(), kv.getValue()));
         sinksByMappingIndex = ImmutableList.copyOf(mappingMappingResult);
     }
 
+    @Override
+    public ProcessingDirective process(final Queue<Item<UndertowEvent>> batch) {
+        final ProcessingDirective directive = ItemProcessor.super.process(batch);
+        memory.syncIfDue();
+        return directive;
+    }
+
+    @Override
+    public ProcessingDirective heartbeat() {
+        memory.syncIfDue();
+        return CONTINUE;
+    }
+
     @Override
     public ProcessingDirective process(final Item<UndertowEvent> item) {
         final DivolteEvent event;
@@ -147,8 +184,8 @@ public final class IncomingRequestProcessor implements ItemProcessor<UndertowEve
             return CONTINUE;
         }
 
+        // The flag is passed along with the event: the exchange can be shared by several events.
         final boolean duplicate = memory.isProbableDuplicate(event.partyId.value, event.sessionId.value, event.eventId);
-        event.exchange.putAttachment(DUPLICATE_EVENT_KEY, duplicate);
 
         mappingsBySourceIndex.get(item.sourceId)
                              .stream()
@@ -157,9 +194,48 @@ public final class IncomingRequestProcessor implements ItemProcessor<UndertowEve
                              .filter(Optional::isPresent)
                              // Filter discarded for duplication or corruption
                              .map(Optional::get)
-                             .forEach(bufferItem -> sinksByMappingIndex.get(bufferItem.sourceId)
-                                                                       // For each sink that applies to this mapping
-                                                                       .forEach(sink -> sink.enqueue(bufferItem)));
+                             .forEach(mapped -> sinksByMappingIndex.get(mapped.item.sourceId)
+                                                                   // For each group of sinks that applies to this mapping
+                                                                   .forEach(sinks -> sinks.enqueue(mapped)));
         return CONTINUE;
     }
+
+    @ParametersAreNonnullByDefault
+    private static final class SinkGroup {
+        private final Optional<RecordProjection> projection;
+        // Processors are confined to a single thread, so each projection has its own encoder.
+        private final AvroRecordEncoder encoder = new AvroRecordEncoder();
+        private final ImmutableList<SinkTarget> sinks;
+
+        SinkGroup(final Optional<RecordProjection> projection, final ImmutableList<SinkTarget> sinks) {
+            this.projection = Objects.requireNonNull(projection);
+            this.sinks = Objects.requireNonNull(sinks);
+        }
+
+        void enqueue(final Mapping.MappedRecord mapped) {
+            // Sampling happens here so that dropped events are never queued or serialized for the sink.
+            // (A projected record has the same affinity as the mapped record.)
+            @Nullable
+            Item<AvroRecordBuffer> item = null;
+            for (final SinkTarget sink : sinks) {
+                if (sink.sampler.accepts(mapped.item)) {
+                    if (null == item) {
+                        item = projection.isPresent() ? mapped.project(projection.get(), encoder) : mapped.item;
+                    }
+                    sink.pool.enqueue(item);
+                }
+            }
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class SinkTarget {
+        private final ProcessingPool<?, AvroRecordBuffer> pool;
+        private final AffinitySampler sampler;
+
+        SinkTarget(final ProcessingPool<?, AvroRecordBuffer> pool, final AffinitySampler sampler) {
+            this.pool = Objects.requireNonNull(pool);
+            this.sampler = Objects.requireNonNull(sampler);
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static io.divolte.server.HttpSource.*;
+import static io.divolte.server.JsonEventHandler.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import io.divolte.server.processing.Item;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handler for submitting many JSON events in a single request.
+ * <p>
+ * The request body is either a JSON array of events, or a sequence of events separated
+ * by whitespace (such as newline-delimited JSON). The body is parsed incrementally, and
+ * each event is validated and enqueued on its own so that it has its own affinity. The
+ * response is a JSON array with the outcome for each event, in the same order as the
+ * request.
+ * <p>
+ * Unlike single events, bulk events are parsed before the response is sent: this is
+ * necessary to report whether each was accepted.
+ */
+@ParametersAreNonnullByDefault
+public class JsonBulkEventHandler implements HttpHandler {
+    private static final Logger logger = LoggerFactory.getLogger(JsonBulkEventHandler.class);
+
+    private final IncomingRequestProcessingPool processingPool;
+    private final int sourceIndex;
+    private final String partyIdParameter;
+
+    private final AsyncRequestBodyReceiver receiver;
+
+    public JsonBulkEventHandler(final IncomingRequestProcessingPool processingPool,
+                                final int sourceIndex,
+                                final String partyIdParameter,
+                                final int maximumBodySize,
+                                final ChunkPool chunkPool) {
+        this.processingPool   = Objects.requireNonNull(processingPool);
+        this.sourceIndex      = sourceIndex;
+        this.partyIdParameter = Objects.requireNonNull(partyIdParameter);
+
+        receiver = new AsyncRequestBodyReceiver(maximumBodySize, chunkPool);
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) {
+        captureAndPersistSourceAddress(exchange);
+
+        receiver.receive((body, length) -> {
+            if (0 < length) {
+                final byte[] response = logEvents(exchange, body);
+                exchange.setStatusCode(StatusCodes.OK);
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+                exchange.getResponseSender().send(ByteBuffer.wrap(response));
+            } else {
+                // Empty body; bad by definition.
+                exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+                exchange.endExchange();
+            }
+        }, exchange);
+    }
+
+    private byte[] logEvents(final HttpServerExchange exchange, final InputStream body) {
+        final Instant requestTime = Instant.now();
+        // Events can specify their own party identifier; this is the default if they don't.
+        final Optional<DivolteIdentifier> requestPartyId =
+            queryParamFromExchange(exchange, partyIdParameter).flatMap(DivolteIdentifier::tryParse);
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        // Closing the parser also closes the body, releasing its buffers.
+        try (final JsonParser parser = OBJECT_MAPPER.getFactory().createParser(body);
+             final JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(response)) {
+            generator.writeStartArray();
+            try {
+                JsonToken token = parser.nextToken();
+                final boolean isArray = JsonToken.START_ARRAY == token;
+                if (isArray) {
+                    token = parser.nextToken();
+                }
+                while (null != token && !(isArray && JsonToken.END_ARRAY == token)) {
+                    final Optional<String> result;
+                    if (JsonToken.START_OBJECT == token) {
+                        // Buffer the tokens of the event so that a mapping error doesn't leave the parser mid-event.
+                        final TokenBuffer item = new TokenBuffer(parser);
+                        item.copyCurrentStructure(parser);
+                        result = logEvent(exchange, requestTime, requestPartyId, item);
+                    } else {
+                        parser.skipChildren();
+                        result = Optional.of("event must be a JSON object");
+                    }
+                    writeResult(generator, result);
+                    token = parser.nextToken();
+                }
+            } catch (final JsonProcessingException e) {
+                // Nothing further can be parsed; this is reported as a final rejected event.
+                logger.debug("Parsing failed for bulk request: {}", e.getOriginalMessage());
+                writeResult(generator, Optional.of("malformed JSON: " + e.getOriginalMessage()));
+            }
+            generator.writeEndArray();
+        } catch (final IOException e) {
+            // Both the body and response are in memory, so this is not expected.
+            throw new IllegalStateException("Error processing bulk request.", e);
+        }
+        return response.toByteArray();
+    }
+
+    private Optional<String> logEvent(final HttpServerExchange exchange,
+                                      final Instant requestTime,
+                                      final Optional<DivolteIdentifier> requestPartyId,
+                                      final TokenBuffer item) throws IOException {
+        final EventContainer container;
+        try (final JsonParser itemParser = item.asParser(OBJECT_MAPPER)) {
+            container = OBJECT_MAPPER.readValue(itemParser, EventContainer.class);
+        } catch (final JsonProcessingException e) {
+            return Optional.of("invalid event: " + e.getOriginalMessage());
+        }
+        final Optional<DivolteIdentifier> partyId = container.partyId.isPresent()
+            ? container.partyId.flatMap(DivolteIdentifier::tryParse)
+            : requestPartyId;
+        if (!partyId.isPresent()) {
+            return Optional.of("missing or invalid party identifier");
+        }
+        final DivolteEvent divolteEvent;
+        try {
+            divolteEvent = createEvent(exchange, partyId.get(), requestTime, container);
+        } catch (final IncompleteRequestException e) {
+            return Optional.of("invalid session identifier or client timestamp");
+        }
+        final UndertowEvent event = new ParsedJsonUndertowEvent(requestTime, exchange, partyId.get(), divolteEvent);
+        processingPool.enqueue(Item.of(sourceIndex, partyId.get().value, event));
+        return Optional.empty();
+    }
+
+    private static void writeResult(final JsonGenerator generator, final Optional<String> rejection) throws IOException {
+        generator.writeStartObject();
+        if (rejection.isPresent()) {
+            generator.writeStringField("status", "rejected");
+            generator.writeStringField("reason", rejection.get());
+        } else {
+            generator.writeStringField("status", "accepted");
+        }
+        generator.writeEndObject();
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class ParsedJsonUndertowEvent extends UndertowEvent {
+        private final DivolteEvent event;
+
+        private ParsedJsonUndertowEvent(final Instant requestTime,
+                                        final HttpServerExchange exchange,
+                                        final DivolteIdentifier partyId,
+                                        final DivolteEvent event) {
+            super(requestTime, exchange, partyId);
+            this.event = Objects.requireNonNull(event);
+        }
+
+        @Override
+        public DivolteEvent parseRequest() {
+            return event;
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package io.divolte.server;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HeaderValues;
@@ -30,10 +32,20 @@ import java.util.Objects;
 @ParametersAreNonnullByDefault
 public class JsonContentHandler implements HttpHandler {
 
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
     private final HttpHandler next;
+    private final ImmutableSet<String> contentTypes;
+    private final String unsupportedMessage;
 
     public JsonContentHandler(final HttpHandler next) {
+        this(next, ImmutableSet.of(JSON_CONTENT_TYPE));
+    }
+
+    public JsonContentHandler(final HttpHandler next, final ImmutableSet<String> contentTypes) {
         this.next = Objects.requireNonNull(next);
+        this.contentTypes = Objects.requireNonNull(contentTypes);
+        this.unsupportedMessage = "Content type must be " + Joiner.on(" or ").join(contentTypes) + '.';
     }
 
     @Override
@@ -41,14 +53,14 @@ public class JsonContentHandler implements HttpHandler {
         final HeaderValues contentType = exchange.getRequestHeaders().get(Headers.CONTENT_TYPE);
         if (null != contentType
                 && contentType.size() == 1
-                && contentType.getFirst().toLowerCase(Locale.ROOT).equals("application/json")) {
+                && contentTypes.contains(contentType.getFirst().toLowerCase(Locale.ROOT))) {
             next.handleRequest(exchange);
         } else {
             exchange.setStatusCode(StatusCodes.UNSUPPORTED_MEDIA_TYPE);
             exchange.getResponseHeaders()
                     .put(Headers.CONTENT_TYPE, "text/plain; charset=utf-8");
             exchange.getResponseSender()
-                    .send("Content type must be application/json.", StandardCharsets.UTF_8);
+                    .send(unsupportedMessage, StandardCharsets.UTF_8);
             exchange.endExchange();
         }
     }
@@ -20,7 +20,9 @@ import static io.divolte.server.HttpSource.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
@@ -34,12 +36,15 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.google.common.base.Suppliers;
 
 import io.divolte.server.processing.Item;
 import io.undertow.server.HttpHandler;
@@ -50,6 +55,16 @@ import io.undertow.util.StatusCodes;
 public class JsonEventHandler implements HttpHandler {
     private static final Logger logger = LoggerFactory.getLogger(JsonEventHandler.class);
 
+    static final ObjectMapper OBJECT_MAPPER;
+    static {
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+        // Support JDK8 parameter name discovery
+        mapper.registerModules(new ParameterNamesModule());
+        mapper.registerModule(new Jdk8Module());
+        OBJECT_MAPPER = mapper;
+    }
+
     private final IncomingRequestProcessingPool processingPool;
     private final int sourceIndex;
     private final String partyIdParameter;
@@ -59,12 +74,13 @@ public class JsonEventHandler implements HttpHandler {
     public JsonEventHandler(final IncomingRequestProcessingPool processingPool,
                             final int sourceIndex,
                             final String partyIdParameter,
-                            final int maximumBodySize) {
+                            final int maximumBodySize,
+                            final ChunkPool chunkPool) {
         this.processingPool   = Objects.requireNonNull(processingPool);
         this.sourceIndex      = sourceIndex;
         this.partyIdParameter = Objects.requireNonNull(partyIdParameter);
 
-        receiver = new AsyncRequestBodyReceiver(maximumBodySize);
+        receiver = new AsyncRequestBodyReceiver(maximumBodySize, chunkPool);
     }
 
     @Override
@@ -95,24 +111,55 @@ public class JsonEventHandler implements HttpHandler {
 
 
     private void logEvent(final HttpServerExchange exchange, final InputStream body) throws IncompleteRequestException {
-        final DivolteIdentifier partyId = queryParamFromExchange(exchange, partyIdParameter).flatMap(DivolteIdentifier::tryParse)
-                                                                                            .orElseThrow(IncompleteRequestException::new);
+        final Optional<DivolteIdentifier> maybePartyId = queryParamFromExchange(exchange, partyIdParameter).flatMap(DivolteIdentifier::tryParse);
+        if (!maybePartyId.isPresent()) {
+            // The body won't be parsed, so its buffers can be released immediately.
+            AsyncRequestBodyReceiver.closeQuietly(body);
+            throw new IncompleteRequestException();
+        }
+        final DivolteIdentifier partyId = maybePartyId.get();
         final UndertowEvent event = new JsonUndertowEvent(Instant.now(), exchange, partyId, body);
         processingPool.enqueue(Item.of(sourceIndex, partyId.value, event));
     }
 
-    @ParametersAreNonnullByDefault
-    private static final class JsonUndertowEvent extends UndertowEvent {
-        private static final ObjectMapper OBJECT_MAPPER;
-        static {
-            final ObjectMapper mapper = new ObjectMapper();
-            mapper.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
-            // Support JDK8 parameter name discovery
-            mapper.registerModules(new ParameterNamesModule());
-            mapper.registerModule(new Jdk8Module());
-            OBJECT_MAPPER = mapper;
+    static DivolteEvent createEvent(final HttpServerExchange exchange,
+                                    final DivolteIdentifier partyId,
+                                    final Instant requestTime,
+                                    final EventContainer container) throws IncompleteRequestException {
+        /*
+         * Parse the client provided timestamp as ISO offsetted date/time. We use the ofEpochSecond creator to
+         * obtain an Instant, as the Instant#from(TemporalAccessor) performs some additional checks unnecessary
+         * in our case.
+         */
+        final Instant clientTime;
+        try {
+            final TemporalAccessor parsed = DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(container.clientTimestampIso);
+            clientTime = Instant.from(parsed);
+        } catch (final DateTimeException e) {
+            logger.info("Invalid client timestamp for request: {}", e.getMessage());
+            throw new IncompleteRequestException();
         }
+        return DivolteEvent.createJsonEvent(
+                exchange, partyId,
+                DivolteIdentifier.tryParse(container.sessionId).orElseThrow(IncompleteRequestException::new),
+                container.eventId, JsonSource.EVENT_SOURCE_NAME, requestTime, clientTime,
+                container.isNewParty, container.isNewSession, container.eventType,
+                // Note that it's possible to send a JSON event without parameters.
+                Suppliers.memoize(() -> container.parameters.map(JsonEventHandler::materializeParameters)),
+                DivolteEvent.JsonEventData.EMPTY);
+    }
+
+    private static JsonNode materializeParameters(final TokenBuffer parameters) {
+        try (final JsonParser parser = parameters.asParser(OBJECT_MAPPER)) {
+            return OBJECT_MAPPER.readTree(parser);
+        } catch (final IOException e) {
+            // The tokens are in memory and were already parsed once, so this is not expected.
+            throw new UncheckedIOException("Could not materialize event parameters.", e);
+        }
+    }
 
+    @ParametersAreNonnullByDefault
+    private static final class JsonUndertowEvent extends UndertowEvent {
         private final InputStream requestBody;
 
         private JsonUndertowEvent(
@@ -127,8 +174,9 @@ public class JsonEventHandler implements HttpHandler {
         @Override
         public DivolteEvent parseRequest() throws IncompleteRequestException {
             final EventContainer container;
-            try {
-                container = OBJECT_MAPPER.readValue(requestBody, EventContainer.class);
+            // Closing the body releases its buffers.
+            try (final InputStream body = requestBody) {
+                container = OBJECT_MAPPER.readValue(body, EventContainer.class);
             } catch(final JsonMappingException me) {
                 logger.info("JSON mapping failed for request: {}", me.getMessage());
                 throw new IncompleteRequestException();
@@ -139,47 +187,43 @@ public class JsonEventHandler implements HttpHandler {
                 logger.warn("Parsing failed for request.", e);
                 throw new IncompleteRequestException();
             }
-
-            /*
-             * Parse the client provided timestamp as ISO offsetted date/time. We use the ofEpochSecond creator to
-             * obtain an Instant, as the Instant#from(TemporalAccessor) performs some additional checks unnecessary
-             * in our case.
-             */
-            final TemporalAccessor parsed = DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(container.clientTimestampIso);
-            final Instant clientTime = Instant.from(parsed);
-            final DivolteEvent event = DivolteEvent.createJsonEvent(
-                    exchange, partyId,
-                    DivolteIdentifier.tryParse(container.sessionId).orElseThrow(IncompleteRequestException::new),
-                    container.eventId, JsonSource.EVENT_SOURCE_NAME, requestTime, clientTime,
-                    container.isNewParty, container.isNewSession, container.eventType,
-                    () -> container.parameters, // Note that it's possible to send a JSON event without parameters
-                    DivolteEvent.JsonEventData.EMPTY);
-
-            return event;
+            if (container.partyId.isPresent()) {
+                // The party of a single event is the one it was enqueued with; only bulk events can specify their own.
+                logger.info("JSON event specified a party identifier; this is only supported for bulk events.");
+                throw new IncompleteRequestException();
+            }
+            return createEvent(exchange, partyId, requestTime, container);
         }
+    }
 
-        @ParametersAreNonnullByDefault
-        private final static class EventContainer {
-            public final Optional<String> eventType;
-            @JsonProperty(required=true) public final String sessionId;
-            @JsonProperty(required=true) public final String eventId;
-            @JsonProperty(required=true) public final boolean isNewParty;
-            @JsonProperty(required=true) public final boolean isNewSession;
-            @JsonProperty(required=true) public final String clientTimestampIso;
-            public final Optional<JsonNode> parameters;
-
-            @JsonCreator
-            public EventContainer(
-                    final Optional<String> eventType, final String sessionId, final String eventId, final boolean isNewParty,
-                    final boolean isNewSession, final String clientTimestampIso, final Optional<JsonNode> parameters) {
-                this.eventType          = Objects.requireNonNull(eventType);
-                this.sessionId          = Objects.requireNonNull(sessionId);
-                this.eventId            = Objects.requireNonNull(eventId);
-                this.isNewParty         = Objects.requireNonNull(isNewParty);
-                this.isNewSession       = Objects.requireNonNull(isNewSession);
-                this.clientTimestampIso = Objects.requireNonNull(clientTimestampIso);
-                this.parameters         = Objects.requireNonNull(parameters);
-            }
+    @ParametersAreNonnullByDefault
+    final static class EventContainer {
+        public final Optional<String> partyId;
+        public final Optional<String> eventType;
+        @JsonProperty(required=true) public final String sessionId;
+        @JsonProperty(required=true) public final String eventId;
+        @JsonProperty(required=true) public final boolean isNewParty;
+        @JsonProperty(required=true) public final boolean isNewSession;
+        @JsonProperty(required=true) public final String clientTimestampIso;
+        /*
+         * The parameters are captured as tokens rather than a tree. Building a tree is more expensive
+         * and only needed if a mapping refers to the parameters.
+         */
+        public final Optional<TokenBuffer> parameters;
+
+        @JsonCreator
+        public EventContainer(
+                final Optional<String> partyId, final Optional<String> eventType, final String sessionId, final String eventId,
+                final boolean isNewParty, final boolean isNewSession, final String clientTimestampIso,
+                final Optional<TokenBuffer> parameters) {
+            this.partyId            = Objects.requireNonNull(partyId);
+            this.eventType          = Objects.requireNonNull(eventType);
+            this.sessionId          = Objects.requireNonNull(sessionId);
+            this.eventId            = Objects.requireNonNull(eventId);
+            this.isNewParty         = Objects.requireNonNull(isNewParty);
+            this.isNewSession       = Objects.requireNonNull(isNewSession);
+            this.clientTimestampIso = Objects.requireNonNull(clientTimestampIso);
+            this.parameters         = Objects.requireNonNull(parameters);
         }
     }
 }
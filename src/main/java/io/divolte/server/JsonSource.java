@@ -16,6 +16,7 @@
 
 package io.divolte.server;
 
+import com.google.common.collect.ImmutableSet;
 import io.divolte.server.config.JsonSourceConfiguration;
 import io.divolte.server.config.ValidatedConfiguration;
 import io.undertow.server.HttpHandler;
@@ -25,35 +26,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
 
 @ParametersAreNonnullByDefault
 public class JsonSource extends HttpSource {
     private static final Logger logger = LoggerFactory.getLogger(JsonSource.class);
     public static final String EVENT_SOURCE_NAME = "json";
 
+    private static final ImmutableSet<String> BULK_CONTENT_TYPES = ImmutableSet.of("application/json", "application/x-ndjson");
+
     private final String eventPath;
     private final JsonEventHandler handler;
+    private final Optional<String> bulkEventPath;
+    private final JsonBulkEventHandler bulkHandler;
 
     public JsonSource(final ValidatedConfiguration vc,
                       final String sourceName,
                       final IncomingRequestProcessingPool processingPool) {
         this(sourceName,
-             vc.configuration().getSourceConfiguration(sourceName, JsonSourceConfiguration.class).eventPath,
+             vc.configuration().getSourceConfiguration(sourceName, JsonSourceConfiguration.class),
              processingPool,
              vc.configuration().sourceIndex(sourceName),
-             vc.configuration().getSourceConfiguration(sourceName, JsonSourceConfiguration.class).partyIdParameter,
-             vc.configuration().getSourceConfiguration(sourceName, JsonSourceConfiguration.class).maximumBodySize);
+             ChunkPool.forSource(vc.configuration().global.server, sourceName));
     }
 
     private JsonSource(final String sourceName,
-                         final String eventPath,
-                         final IncomingRequestProcessingPool processingPool,
-                         final int sourceIndex,
-                         final String partyIdParameter,
-                         final int maximumBodySize) {
+                       final JsonSourceConfiguration configuration,
+                       final IncomingRequestProcessingPool processingPool,
+                       final int sourceIndex,
+                       final ChunkPool chunkPool) {
         super(sourceName);
-        this.eventPath = eventPath;
-        this.handler = new JsonEventHandler(processingPool, sourceIndex, partyIdParameter, maximumBodySize);
+        this.eventPath = configuration.eventPath;
+        this.handler = new JsonEventHandler(processingPool, sourceIndex,
+                                            configuration.partyIdParameter, configuration.maximumBodySize, chunkPool);
+        this.bulkEventPath = configuration.bulkEventPath;
+        this.bulkHandler = new JsonBulkEventHandler(processingPool, sourceIndex,
+                                                    configuration.partyIdParameter, configuration.bulkMaximumBodySize, chunkPool);
     }
 
     @Override
@@ -62,6 +70,11 @@ public class JsonSource extends HttpSource {
         final HttpHandler onlyPostHandler = new AllowedMethodsHandler(onlyJsonHandler, Methods.POST);
         final PathHandler newPathHandler = pathHandler.addExactPath(eventPath, onlyPostHandler);
         logger.info("Registered source[{}] event handler: {}", sourceName, eventPath);
-        return newPathHandler;
+        return bulkEventPath.map(path -> {
+            final HttpHandler onlyBulkJsonHandler = new JsonContentHandler(bulkHandler, BULK_CONTENT_TYPES);
+            final HttpHandler onlyPostBulkHandler = new AllowedMethodsHandler(onlyBulkJsonHandler, Methods.POST);
+            logger.info("Registered source[{}] bulk event handler: {}", sourceName, path);
+            return newPathHandler.addExactPath(path, onlyPostBulkHandler);
+        }).orElse(newPathHandler);
     }
 }
@@ -16,8 +16,11 @@
 
 package io.divolte.server;
 
+import java.util.Objects;
 import java.util.Optional;
 
+import javax.annotation.ParametersAreNonnullByDefault;
+
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.slf4j.Logger;
@@ -39,6 +42,9 @@ public class Mapping {
     private final boolean keepCorrupted;
     private final boolean keepDuplicates;
     private final int mappingIndex;
+    private final Optional<Integer> confluentId;
+    // Mappings are confined to a single processing thread, so each has its own encoder.
+    private final AvroRecordEncoder encoder = new AvroRecordEncoder();
 
     private final IncomingRequestListener listener;
 
@@ -51,11 +57,14 @@ public class Mapping {
         this.listener = listener;
 
         final MappingConfiguration mappingConfiguration = vc.configuration().mappings.get(mappingName);
-        final Schema schema = schemaRegistry.getSchemaByMappingName(mappingName).avroSchema;
+        final DivolteSchema divolteSchema = schemaRegistry.getSchemaByMappingName(mappingName);
+        final Schema schema = divolteSchema.avroSchema;
 
         this.mappingIndex = vc.configuration().mappingIndex(mappingName);
         this.keepCorrupted = !mappingConfiguration.discardCorrupted;
         this.keepDuplicates = !mappingConfiguration.discardDuplicates;
+        // Reserving the header lets Confluent-compatible sinks use the encoded record without copying.
+        this.confluentId = divolteSchema.confluentId;
 
         this.mapper = mappingConfiguration.mappingScriptFile
             .map((mappingScriptFile) -> {
@@ -67,8 +76,8 @@ public class Mapping {
             });
     }
 
-    private DslRecordMapping defaultRecordMapping(final ValidatedConfiguration vc) {
-        final DslRecordMapping result = new DslRecordMapping(DefaultEventRecord.getClassSchema(), new UserAgentParserAndCache(vc), Optional.empty());
+    static DslRecordMapping defaultRecordMapping(final ValidatedConfiguration vc) {
+        final DslRecordMapping result = new DslRecordMapping(DefaultEventRecord.getClassSchema(), UserAgentParserAndCache.forConfiguration(vc), Optional.empty());
         result.map("detectedCorruption", result.corrupt());
         result.map("detectedDuplicate", result.duplicate());
         result.map("firstInSession", result.firstInSession());
@@ -99,29 +108,68 @@ public class Mapping {
         return result;
     }
 
-    public Optional<Item<AvroRecordBuffer>> map(final Item<UndertowEvent> originalIem,
+    public Optional<MappedRecord> map(final Item<UndertowEvent> originalIem,
                                                 final DivolteEvent parsedEvent,
                                                 final boolean duplicate) {
         if (
                 (keepDuplicates || !duplicate) &&
                 (keepCorrupted || !parsedEvent.corruptEvent)) {
-            final GenericRecord avroRecord = mapper.newRecordFromExchange(parsedEvent);
+            final GenericRecord avroRecord = mapper.newRecordFromExchange(parsedEvent, duplicate);
             final AvroRecordBuffer avroBuffer = AvroRecordBuffer.fromRecord(parsedEvent.partyId,
                                                                             parsedEvent.sessionId,
                                                                             parsedEvent.eventId,
+                                                                            parsedEvent.eventType,
                                                                             parsedEvent.requestStartTime,
-                                                                            avroRecord);
+                                                                            avroRecord,
+                                                                            confluentId,
+                                                                            encoder);
 
             /*
              * We should really think of a way to get rid of this and test the
              * mapping process in isolation of the server.
              * In the many-to-many setup, this call is potentially amplified.
              */
-            listener.incomingRequest(parsedEvent, avroBuffer, avroRecord);
+            listener.incomingRequest(parsedEvent, duplicate, avroBuffer, avroRecord);
 
-            return Optional.of(Item.withCopiedAffinity(mappingIndex, originalIem, avroBuffer));
+            return Optional.of(new MappedRecord(Item.withCopiedAffinity(mappingIndex, originalIem, avroBuffer), avroRecord));
         } else {
             return Optional.empty();
         }
     }
+
+    /**
+     * The result of mapping an event: the serialized record for sinks, along with the record itself
+     * so that it can be projected for sinks that only need some of its fields.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class MappedRecord {
+        public final Item<AvroRecordBuffer> item;
+        private final GenericRecord record;
+
+        MappedRecord(final Item<AvroRecordBuffer> item, final GenericRecord record) {
+            this.item = Objects.requireNonNull(item);
+            this.record = Objects.requireNonNull(record);
+        }
+
+        /**
+         * Serialize a projection of the mapped record. The result carries the same metadata and
+         * affinity as the record it was projected from.
+         *
+         * @param projection the projection to apply to the record.
+         * @param encoder    the encoder to serialize with; this must belong to the current thread.
+         * @return the serialized projection of the record.
+         */
+        public Item<AvroRecordBuffer> project(final RecordProjection projection, final AvroRecordEncoder encoder) {
+            final AvroRecordBuffer original = item.payload;
+            final AvroRecordBuffer projected = AvroRecordBuffer.fromRecord(original.getPartyId(),
+                                                                           original.getSessionId(),
+                                                                           original.getEventId(),
+                                                                           original.getEventType(),
+                                                                           original.getTimestamp(),
+                                                                           projection.project(record),
+                                                                           projection.schema.confluentId,
+                                                                           encoder);
+            return Item.withCopiedAffinity(item.sourceId, item, projected);
+        }
+    }
 }
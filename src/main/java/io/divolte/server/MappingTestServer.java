@@ -55,7 +55,6 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Optional;
 
-import static io.divolte.server.IncomingRequestProcessor.DUPLICATE_EVENT_KEY;
 
 @ParametersAreNonnullByDefault
 public class MappingTestServer {
@@ -111,7 +110,7 @@ public class MappingTestServer {
         return vc.configuration().global.mapper.ip2geoDatabase
                 .map((path) -> {
                     try {
-                        return new ExternalDatabaseLookupService(Paths.get(path));
+                        return new ExternalDatabaseLookupService(Paths.get(path), vc.configuration().global.mapper.ip2geoCacheSize);
                     } catch (final IOException e) {
                         throw new UncheckedIOException("Failed to configure GeoIP lookup service.", e);
                     }
@@ -165,10 +164,10 @@ public class MappingTestServer {
                     }
                 });
 
-            exchange.putAttachment(DUPLICATE_EVENT_KEY, get(payload, "duplicate", Boolean.class).orElse(false));
+            final boolean duplicate = get(payload, "duplicate", Boolean.class).orElse(false);
 
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-            exchange.getResponseChannel().write(ByteBuffer.wrap(mapper.newRecordFromExchange(divolteEvent).toString().getBytes(StandardCharsets.UTF_8)));
+            exchange.getResponseChannel().write(ByteBuffer.wrap(mapper.newRecordFromExchange(divolteEvent, duplicate).toString().getBytes(StandardCharsets.UTF_8)));
             exchange.endExchange();
         }
     }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Projects records produced by a mapping onto a schema with a subset of their fields.
+ * <p>
+ * A projection allows a sink to receive only some of the fields of the records produced by
+ * a mapping without the mapping having to run again for that sink. Each field of the
+ * projected schema must be present in the schema of the mapping, with an identical schema.
+ */
+@ParametersAreNonnullByDefault
+@ThreadSafe
+public final class RecordProjection {
+    public final DivolteSchema schema;
+    // For each field of the projected schema, the position of the field in the source records.
+    private final int[] sourcePositions;
+
+    private RecordProjection(final DivolteSchema schema, final int[] sourcePositions) {
+        this.schema = Objects.requireNonNull(schema);
+        this.sourcePositions = Objects.requireNonNull(sourcePositions);
+    }
+
+    /**
+     * Create a projection from records of one schema onto another.
+     *
+     * @param sourceSchema the schema of the records that will be projected.
+     * @param targetSchema the schema of the projected records.
+     * @return a projection between the two schemas.
+     * @throws IllegalArgumentException if the target schema is not a subset of the source schema.
+     */
+    public static RecordProjection between(final Schema sourceSchema, final DivolteSchema targetSchema) {
+        final Schema projectedSchema = targetSchema.avroSchema;
+        Preconditions.checkArgument(sourceSchema.getType() == Schema.Type.RECORD
+                                    && projectedSchema.getType() == Schema.Type.RECORD,
+                                    "Projections are only supported between record schemas.");
+        final List<String> incompatibleFields = new ArrayList<>();
+        final List<Schema.Field> fields = projectedSchema.getFields();
+        final int[] sourcePositions = new int[fields.size()];
+        for (final Schema.Field field : fields) {
+            final Schema.Field sourceField = sourceSchema.getField(field.name());
+            if (null == sourceField || !sourceField.schema().equals(field.schema())) {
+                incompatibleFields.add(field.name());
+            } else {
+                sourcePositions[field.pos()] = sourceField.pos();
+            }
+        }
+        Preconditions.checkArgument(incompatibleFields.isEmpty(),
+                                    "Projected schema %s is not a subset of schema %s; missing or different fields: %s",
+                                    projectedSchema.getFullName(), sourceSchema.getFullName(), incompatibleFields);
+        return new RecordProjection(targetSchema, sourcePositions);
+    }
+
+    /**
+     * Project a record onto the schema of this projection.
+     * <p>
+     * Field values are shared with the source record rather than copied.
+     *
+     * @param record a record with the source schema of this projection.
+     * @return a record with the projected schema.
+     */
+    public GenericRecord project(final GenericRecord record) {
+        final GenericData.Record projected = new GenericData.Record(schema.avroSchema);
+        for (int i = 0; i < sourcePositions.length; ++i) {
+            projected.put(i, record.get(sourcePositions[i]));
+        }
+        return projected;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("schema", schema)
+            .toString();
+    }
+}
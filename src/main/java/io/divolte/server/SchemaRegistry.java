@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import io.divolte.record.DefaultEventRecord;
 import io.divolte.server.config.MappingConfiguration;
+import io.divolte.server.config.ProjectionConfiguration;
 import io.divolte.server.config.ValidatedConfiguration;
 import org.apache.avro.Schema;
 import org.slf4j.Logger;
@@ -40,6 +41,7 @@ public class SchemaRegistry {
 
     private final ImmutableMap<String,DivolteSchema> schemasByMappingName;
     private final ImmutableMap<String,DivolteSchema> schemasBySinkName;
+    private final ImmutableMap<String,RecordProjection> projectionsBySinkName;
 
     public SchemaRegistry(final ValidatedConfiguration vc) {
         final ImmutableMap<String, MappingConfiguration> mappings = vc.configuration().mappings;
@@ -64,7 +66,7 @@ public class SchemaRegistry {
 
         // Also calculate an inverse mapping by sink name.
         // (Validation has ensured that multiple mappings for each sink have the same schema and confluent id.)
-        schemasBySinkName =
+        final ImmutableMap<String,DivolteSchema> mappingSchemasBySinkName =
                 mappings.entrySet()
                         .stream()
                         .flatMap(mapping -> {
@@ -75,6 +77,29 @@ public class SchemaRegistry {
                         })
                         .distinct()
                         .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        // Sinks with a projection receive a subset of the fields produced by their mappings. The projected
+        // schema is checked against the schema of the mappings up front, so that records can always be projected.
+        projectionsBySinkName =
+                vc.configuration()
+                  .sinks
+                  .entrySet()
+                  .stream()
+                  .filter(sink -> sink.getValue().projection.isPresent()
+                                  && mappingSchemasBySinkName.containsKey(sink.getKey()))
+                  .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey,
+                                                       sink -> loadProjection(sink.getKey(),
+                                                                              mappingSchemasBySinkName.get(sink.getKey()),
+                                                                              sink.getValue().projection.get())));
+        if (!projectionsBySinkName.isEmpty()) {
+            logger.info("Loaded projected schemas used for sinks: {}", projectionsBySinkName.keySet());
+        }
+
+        schemasBySinkName =
+                ImmutableMap.copyOf(Maps.transformEntries(mappingSchemasBySinkName,
+                                                          (sink, schema) -> Optional.ofNullable(projectionsBySinkName.get(sink))
+                                                                                    .map(projection -> projection.schema)
+                                                                                    .orElse(schema)));
         logger.info("Inferred schemas used for sinks: {}", schemasBySinkName.keySet());
     }
 
@@ -92,6 +117,30 @@ public class SchemaRegistry {
         return schema;
     }
 
+    /**
+     * Get the projection that applies to records written by a sink, if it has one. The
+     * projection is from the schema of the mappings that produce records for the sink.
+     *
+     * @param sinkName the name of the sink.
+     * @return the projection for the sink, or empty if it writes records as they are mapped.
+     */
+    public Optional<RecordProjection> getProjectionBySinkName(final String sinkName) {
+        return Optional.ofNullable(projectionsBySinkName.get(sinkName));
+    }
+
+    private static RecordProjection loadProjection(final String sinkName,
+                                                   final DivolteSchema mappingSchema,
+                                                   final ProjectionConfiguration projection) {
+        final DivolteSchema projectedSchema =
+                new DivolteSchema(loadSchema(Optional.of(projection.schemaFile)), projection.confluentId);
+        try {
+            return RecordProjection.between(mappingSchema.avroSchema, projectedSchema);
+        } catch (final IllegalArgumentException e) {
+            logger.error("Invalid projection for sink: {}", sinkName);
+            throw new IllegalArgumentException("Invalid projection for sink: " + sinkName, e);
+        }
+    }
+
     private static Schema loadSchema(final Optional<String> schemaLocation) {
         return schemaLocation
                 .map(filename -> {
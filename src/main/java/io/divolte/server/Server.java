@@ -58,7 +58,7 @@ public final class Server implements Runnable {
     private final Duration shutdownTimeout;
 
     public Server(final ValidatedConfiguration vc) {
-        this(vc, (e,b,r) -> {});
+        this(vc, (e,d,b,r) -> {});
     }
 
     Server(final ValidatedConfiguration vc, final IncomingRequestListener listener) {
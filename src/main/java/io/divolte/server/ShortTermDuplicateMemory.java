@@ -16,23 +16,24 @@
 
 package io.divolte.server;
 
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
-
 import javax.annotation.ParametersAreNonnullByDefault;
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 
 /**
  * Probabilistic detection of duplicate events in a stream with fixed memory overhead.
  * <p>
  * This class is used to detect duplicates in an event stream. An event
- * is identified by an array of strings that represent characteristics of the
- * event. (The same values indicate the same logical event.) Invoking
- * {@link #isProbableDuplicate(String...)} not only returns whether the event
+ * is identified by its party, session and event identifiers. (The same values
+ * indicate the same logical event.) Invoking
+ * {@link #isProbableDuplicate(String, String, String)} not only returns whether the event
  * is probably a duplicate or not, but also updates the internal state such
  * that the event has been 'seen'. (A second immediate invocation with the same
  * parameter will always return <code>true</code>.)
@@ -72,6 +73,11 @@ import javax.annotation.concurrent.NotThreadSafe;
  *     slot having the same signature. Signatures are 64-bits in length, meaning
  *     that the probability of two events having the same signature is 1/(2^32).</li>
  * </ul>
+ * <p>
+ * A single instance is shared by all mapper threads: slots are updated atomically, so
+ * duplicates are detected irrespective of which thread handles each event. The slots
+ * can be held on the heap, or in a memory-mapped file so that they survive restarts.
+ * (See {@link DuplicateMemoryFile}.)
  */
 /* TODO: These calculations need revising.
  *
@@ -104,11 +110,18 @@ import javax.annotation.concurrent.NotThreadSafe;
  * positives at a rate of 1000 events / second.
  */
 @ParametersAreNonnullByDefault
-@NotThreadSafe
+@ThreadSafe
 final class ShortTermDuplicateMemory {
-    private static final HashFunction HASHING_FUNCTION = Hashing.murmur3_128();
+    // MurmurHash3 (x64, 128-bit) mixing constants.
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
 
-    private final long[] memory;
+    // How often memory backed by a file is written to storage.
+    static final long SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Slots memory;
+    private final LongSupplier nanoClock;
+    private final AtomicLong nextSyncNanos;
 
     /**
      * Construct an instance with a specific number of slots.
@@ -119,61 +132,220 @@ final class ShortTermDuplicateMemory {
      * @param slotCount the number of slots to use for detecting duplicate events.
      */
     public ShortTermDuplicateMemory(final int slotCount) {
-        memory = new long[slotCount];
+        this(new HeapSlots(slotCount));
+    }
+
+    /**
+     * Construct an instance whose slots are stored in a memory-mapped region of a file.
+     * <p>
+     * Any signatures already present in the region are retained.
+     *
+     * @param mappedMemory the region to use; each slot occupies 8 bytes.
+     */
+    ShortTermDuplicateMemory(final MappedByteBuffer mappedMemory) {
+        this(new MappedSlots(mappedMemory));
+    }
+
+    ShortTermDuplicateMemory(final Slots memory) {
+        this(memory, System::nanoTime);
+    }
+
+    ShortTermDuplicateMemory(final Slots memory, final LongSupplier nanoClock) {
+        this.memory = Objects.requireNonNull(memory);
+        this.nanoClock = Objects.requireNonNull(nanoClock);
+        nextSyncNanos = new AtomicLong(nanoClock.getAsLong() + SYNC_INTERVAL_NANOS);
+    }
+
+    /**
+     * Write the slots to storage, if they are backed by a file.
+     */
+    public void sync() {
+        memory.sync();
+    }
+
+    /**
+     * Write the slots to storage if they are backed by a file and this hasn't happened
+     * recently. This can be invoked frequently by all threads using the memory.
+     */
+    public void syncIfDue() {
+        if (memory.isPersistent()) {
+            final long now = nanoClock.getAsLong();
+            final long nextSync = nextSyncNanos.get();
+            // Only one of the threads that notice the sync is due will perform it.
+            if (now - nextSync >= 0 && nextSyncNanos.compareAndSet(nextSync, now + SYNC_INTERVAL_NANOS)) {
+                memory.sync();
+            }
+        }
     }
 
     /**
-     * Query whether an event has been seen before or not, based on event properties.
-     * @param eventProperties   An array of values that are specific to the event.
+     * Query whether an event has been seen before or not, based on its identifiers.
+     * @param partyId   The party identifier of the event.
+     * @param sessionId The session identifier of the event.
+     * @param eventId   The event identifier.
      * @return <code>true</code> if we have probably seen this event previously, or
      *  false otherwise.
      */
-    public boolean isProbableDuplicate(final String... eventProperties) {
-        final Hasher hasher = HASHING_FUNCTION.newHasher();
-        for (final String eventProperty : eventProperties) {
-            hasher.putUnencodedChars(eventProperty);
+    public boolean isProbableDuplicate(final String partyId, final String sessionId, final String eventId) {
+        /*
+         * This is called for every event, so we avoid allocating anything here.
+         * The identifiers are hashed using the 128-bit variant of MurmurHash3 (x64),
+         * treating the concatenated identifiers as a sequence of little-endian UTF-16
+         * code units. (This matches Guava's murmur3_128().newHasher().putUnencodedChars(),
+         * which we previously used.) The hash is accumulated in two 64-bit lanes,
+         * consuming 8 characters per block.
+         */
+        long h1 = 0;
+        long h2 = 0;
+        long k1 = 0;
+        long k2 = 0;
+        int blockPosition = 0;
+        int length = 0;
+        for (int part = 0; part < 3; ++part) {
+            final String value = 0 == part ? partyId : 1 == part ? sessionId : eventId;
+            final int valueLength = value.length();
+            length += valueLength;
+            for (int i = 0; i < valueLength; ++i) {
+                final long c = value.charAt(i);
+                if (blockPosition < 4) {
+                    k1 |= c << (blockPosition << 4);
+                } else {
+                    k2 |= c << ((blockPosition - 4) << 4);
+                }
+                if (8 == ++blockPosition) {
+                    h1 ^= mixK1(k1);
+                    h1 = Long.rotateLeft(h1, 27);
+                    h1 += h2;
+                    h1 = h1 * 5 + 0x52dce729;
+                    h2 ^= mixK2(k2);
+                    h2 = Long.rotateLeft(h2, 31);
+                    h2 += h1;
+                    h2 = h2 * 5 + 0x38495ab5;
+                    k1 = 0;
+                    k2 = 0;
+                    blockPosition = 0;
+                }
+            }
+        }
+        if (0 < blockPosition) {
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+        }
+        // The length is in bytes; each character is 2 bytes.
+        h1 ^= 2L * length;
+        h2 ^= 2L * length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        // We use the low int of the first lane for the slot, and the second lane for
+        // the signature. (The byte-order reversal retains compatibility with memories
+        // persisted before we used lanes directly.)
+        final int slotSelector = Integer.reverseBytes((int) h1);
+        final long signature = Long.reverseBytes(h2);
+
+        final int slot = (slotSelector & Integer.MAX_VALUE) % memory.length();
+        return memory.getAndSet(slot, signature) == signature;
+    }
+
+    private static long mixK1(final long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(final long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix64(final long k) {
+        long h = k;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    interface Slots {
+        int length();
+        long getAndSet(int slot, long signature);
+        boolean isPersistent();
+        void sync();
+    }
+
+    @ThreadSafe
+    static final class HeapSlots implements Slots {
+        private final AtomicLongArray slots;
+
+        HeapSlots(final int slotCount) {
+            slots = new AtomicLongArray(slotCount);
+        }
+
+        @Override
+        public int length() {
+            return slots.length();
+        }
+
+        @Override
+        public long getAndSet(final int slot, final long signature) {
+            return slots.getAndSet(slot, signature);
+        }
+
+        @Override
+        public boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public void sync() {
+            // Nothing to do.
         }
-        return isProbablyDuplicate(hasher.hash());
     }
 
-    private boolean isProbablyDuplicate(final HashCode eventDigest) {
-        // Our hashing algorithm produces 8 bytes:
-        //  0: slot[0]
-        //  1: slot[1]
-        //  2: slot[2]
-        //  3: slot[3]
-        //  4:
-        //  5:
-        //  6:
-        //  7:
-        //  8: signature[0]
-        //  9:  ..
-        // 10:  ..
-        // 11:  ..
-        // 12:  ..
-        // 13:  ..
-        // 14:  ..
-        // 15: signature[7]
-        final byte[] hashBytes = eventDigest.asBytes();
-
-        // We use the low int for the slot.
-        final int slotSelector = Ints.fromBytes(hashBytes[0],
-                                                hashBytes[1],
-                                                hashBytes[2],
-                                                hashBytes[3]);
-        // We use the high long for the signature.
-        final long signature = Longs.fromBytes(hashBytes[8],
-                                               hashBytes[9],
-                                               hashBytes[10],
-                                               hashBytes[11],
-                                               hashBytes[12],
-                                               hashBytes[13],
-                                               hashBytes[14],
-                                               hashBytes[15]);
-
-        final int slot = (slotSelector & Integer.MAX_VALUE) % memory.length;
-        final boolean result = memory[slot] == signature;
-        memory[slot] = signature;
-        return result;
+    @ThreadSafe
+    static final class MappedSlots implements Slots {
+        // Buffers don't support atomic updates, so slots are guarded by a set of locks instead.
+        private static final int LOCK_STRIPES = 256;
+
+        private final MappedByteBuffer mappedMemory;
+        private final LongBuffer slots;
+        private final Object[] locks;
+
+        MappedSlots(final MappedByteBuffer mappedMemory) {
+            this.mappedMemory = mappedMemory;
+            // Native byte order avoids swapping on every access.
+            slots = mappedMemory.order(ByteOrder.nativeOrder()).asLongBuffer();
+            locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < LOCK_STRIPES; ++i) {
+                locks[i] = new Object();
+            }
+        }
+
+        @Override
+        public int length() {
+            return slots.capacity();
+        }
+
+        @Override
+        public long getAndSet(final int slot, final long signature) {
+            synchronized (locks[slot % LOCK_STRIPES]) {
+                final long previous = slots.get(slot);
+                slots.put(slot, signature);
+                return previous;
+            }
+        }
+
+        @Override
+        public boolean isPersistent() {
+            return true;
+        }
+
+        @Override
+        public void sync() {
+            mappedMemory.force();
+        }
     }
 }
@@ -41,6 +41,7 @@ import io.divolte.server.config.constraint.MappingSourceSinkReferencesMustExist;
 import io.divolte.server.config.constraint.MappingToConfluentSinksMustHaveSchemaId;
 import io.divolte.server.config.constraint.OneConfluentIdPerSink;
 import io.divolte.server.config.constraint.OneSchemaPerSink;
+import io.divolte.server.config.constraint.ProjectionsToConfluentSinksMustHaveSchemaId;
 import io.divolte.server.config.constraint.SourceAndSinkNamesCannotCollide;
 
 @ParametersAreNonnullByDefault
@@ -49,6 +50,7 @@ import io.divolte.server.config.constraint.SourceAndSinkNamesCannotCollide;
 @OneSchemaPerSink
 @MappingToConfluentSinksMustHaveSchemaId
 @OneConfluentIdPerSink
+@ProjectionsToConfluentSinksMustHaveSchemaId
 public final class DivolteConfiguration {
     @Valid public final GlobalConfiguration global;
 
@@ -168,9 +170,9 @@ public final class DivolteConfiguration {
     }
 
     private static ImmutableMap<String,SinkConfiguration> defaultSinkConfigurations() {
-        return ImmutableMap.of("hdfs", new HdfsSinkConfiguration((short) 1, FileStrategyConfiguration.DEFAULT_FILE_STRATEGY_CONFIGURATION),
-                               "kafka", new KafkaSinkConfiguration(null, KafkaSinkMode.NAKED),
-                               "gcps", new GoogleCloudPubSubSinkConfiguration(null, null, null));
+        return ImmutableMap.of("hdfs", new HdfsSinkConfiguration((short) 1, FileStrategyConfiguration.DEFAULT_FILE_STRATEGY_CONFIGURATION, null, null),
+                               "kafka", new KafkaSinkConfiguration(null, KafkaSinkMode.NAKED, null, null, null, null, null),
+                               "gcps", new GoogleCloudPubSubSinkConfiguration(null, null, null, null, null, null, null));
     }
 
     private static ImmutableMap<String,MappingConfiguration> defaultMappingConfigurations(final ImmutableSet<String> sourceNames,
@@ -248,7 +250,9 @@ public final class DivolteConfiguration {
 
     public Set<String> mappingsToConfluentSinksWithoutSchemaIds() {
         // First assemble the names of the sinks that are in confluent-mode.
-        final Set<String> confluentSinkNames = getConfluentSinkNames();
+        // (Sinks with a projection write records using the projected schema, which has its own id.)
+        final Set<String> confluentSinkNames = Sets.filter(getConfluentSinkNames(),
+                                                           sink -> !sinks.get(sink).projection.isPresent());
         // Next look at the mappings, filtering out those:
         //  a) Without a confluent id; and
         //  b) a sink in confluent mode.
@@ -260,6 +264,13 @@ public final class DivolteConfiguration {
             .collect(ImmutableSet.toImmutableSet());
     }
 
+    public Set<String> confluentSinksWithProjectionsWithoutSchemaIds() {
+        return getConfluentSinkNames()
+            .stream()
+            .filter(sink -> sinks.get(sink).projection.map(projection -> !projection.confluentId.isPresent()).orElse(false))
+            .collect(ImmutableSet.toImmutableSet());
+    }
+
     private Set<String> getConfluentSinkNames() {
         return sinks
             .entrySet()
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.avro.file.CodecFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+@ParametersAreNonnullByDefault
+public enum EnvelopeCodec {
+    @JsonProperty("null")
+    NULL(CodecFactory::nullCodec),
+    @JsonProperty("deflate")
+    DEFLATE(() -> CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL)),
+    @JsonProperty("snappy")
+    SNAPPY(CodecFactory::snappyCodec);
+
+    final Supplier<CodecFactory> codecFactory;
+
+    EnvelopeCodec(final Supplier<CodecFactory> codecFactory) {
+        this.codecFactory = Objects.requireNonNull(codecFactory);
+    }
+}
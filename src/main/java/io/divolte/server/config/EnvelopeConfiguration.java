@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.ParametersAreNullableByDefault;
+import javax.validation.constraints.Min;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@ParametersAreNonnullByDefault
+public class EnvelopeConfiguration {
+    private static final String DEFAULT_MAX_EVENTS = "100";
+    private static final String DEFAULT_MAX_BYTES = "262144";
+    private static final String DEFAULT_MAX_DELAY = "100 milliseconds";
+    private static final EnvelopeCodec DEFAULT_CODEC = EnvelopeCodec.DEFLATE;
+
+    @Min(1) public final int maxEvents;
+    @Min(1) public final int maxBytes;
+    public final Duration maxDelay;
+    public final EnvelopeCodec codec;
+
+    @JsonCreator
+    @ParametersAreNullableByDefault
+    EnvelopeConfiguration(@JsonProperty(defaultValue=DEFAULT_MAX_EVENTS) final Integer maxEvents,
+                          @JsonProperty(defaultValue=DEFAULT_MAX_BYTES) final Integer maxBytes,
+                          @JsonProperty(defaultValue=DEFAULT_MAX_DELAY) final Duration maxDelay,
+                          @JsonProperty final EnvelopeCodec codec) {
+        // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
+        this.maxEvents = Optional.ofNullable(maxEvents).orElseGet(() -> Integer.valueOf(DEFAULT_MAX_EVENTS));
+        this.maxBytes = Optional.ofNullable(maxBytes).orElseGet(() -> Integer.valueOf(DEFAULT_MAX_BYTES));
+        this.maxDelay = Optional.ofNullable(maxDelay).orElseGet(() -> DurationDeserializer.parseDuration(DEFAULT_MAX_DELAY));
+        this.codec = Optional.ofNullable(codec).orElse(DEFAULT_CODEC);
+    }
+
+    public Supplier<EnvelopeBuffer> bufferFactory(final DivolteSchema schema) {
+        return () -> new EnvelopeBuffer(schema, codec.codecFactory.get(), maxEvents, maxBytes, maxDelay);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("maxEvents", maxEvents)
+            .add("maxBytes", maxBytes)
+            .add("maxDelay", maxDelay)
+            .add("codec", codec)
+            .toString();
+    }
+}
@@ -29,7 +29,10 @@ public abstract class FileSinkConfiguration extends SinkConfiguration {
     @Valid public final FileStrategyConfiguration fileStrategy;
 
     @ParametersAreNullableByDefault
-    public FileSinkConfiguration(final FileStrategyConfiguration fileStrategy) {
+    public FileSinkConfiguration(final FileStrategyConfiguration fileStrategy,
+                                 final Double sampleRate,
+                                 final ProjectionConfiguration projection) {
+        super(sampleRate, projection);
         this.fileStrategy = Optional.ofNullable(fileStrategy).orElse(FileStrategyConfiguration.DEFAULT_FILE_STRATEGY_CONFIGURATION);
     }
 
@@ -30,7 +30,9 @@ import com.google.common.collect.Streams;
 import com.google.pubsub.v1.ProjectName;
 import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.Topic;
+import io.divolte.server.DivolteSchema;
 import io.divolte.server.IOExceptions;
+import io.divolte.server.SchemaRegistry;
 import io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubFlushingPool;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
@@ -53,25 +55,33 @@ public class GoogleCloudPubSubSinkConfiguration extends TopicSinkConfiguration {
         new GooglePubSubRetryConfiguration(null, null, null, null, null, null, null, null);
     static final GoogleBatchingConfiguration DEFAULT_BATCHING_SETTINGS =
         new GoogleBatchingConfiguration(null, null, null);
+    private static final String DEFAULT_MAX_IN_FLIGHT = "0";
 
     @Valid public final GooglePubSubRetryConfiguration retrySettings;
     @Valid public final GoogleBatchingConfiguration batchingSettings;
+    public final int maxInFlight;
 
     @JsonCreator
     @ParametersAreNullableByDefault
     GoogleCloudPubSubSinkConfiguration(@JsonProperty(defaultValue=DEFAULT_TOPIC) final String topic,
                                        final GooglePubSubRetryConfiguration retrySettings,
-                                       final GoogleBatchingConfiguration batchingSettings) {
-        super(topic);
+                                       final GoogleBatchingConfiguration batchingSettings,
+                                       @JsonProperty(defaultValue=DEFAULT_MAX_IN_FLIGHT) final Integer maxInFlight,
+                                       final EnvelopeConfiguration envelope,
+                                       @JsonProperty(defaultValue=DEFAULT_SAMPLE_RATE) final Double sampleRate,
+                                       final ProjectionConfiguration projection) {
+        super(topic, envelope, sampleRate, projection);
         this.retrySettings = Optional.ofNullable(retrySettings).orElse(DEFAULT_RETRY_SETTINGS);
         this.batchingSettings = Optional.ofNullable(batchingSettings).orElse(DEFAULT_BATCHING_SETTINGS);
+        this.maxInFlight = Optional.ofNullable(maxInFlight).orElseGet(() -> Integer.valueOf(DEFAULT_MAX_IN_FLIGHT));
     }
 
     @Override
     protected MoreObjects.ToStringHelper toStringHelper() {
         return super.toStringHelper()
             .add("retrySettings", retrySettings)
-            .add("batchingSettings", batchingSettings);
+            .add("batchingSettings", batchingSettings)
+            .add("maxInFlight", maxInFlight);
     }
 
     @Override
@@ -93,12 +103,7 @@ public class GoogleCloudPubSubSinkConfiguration extends TopicSinkConfiguration {
                          .setRetrySettings(retrySettings)
                          .setBatchingSettings(batchingSettings);
             final Publisher publisher = IOExceptions.wrap(builder::build).get();
-            return new GoogleCloudPubSubFlushingPool(sinkName,
-                                                     vc.configuration().global.gcps.threads,
-                                                     vc.configuration().global.gcps.bufferSize,
-                                                     publisher,
-                                                     Optional.empty(),
-                                                     registry.getSchemaBySinkName(sinkName));
+            return createFlushingPool(vc, sinkName, registry, publisher, Optional.empty());
         };
     }
 
@@ -129,15 +134,26 @@ public class GoogleCloudPubSubSinkConfiguration extends TopicSinkConfiguration {
                          .setChannelProvider(channelProvider)
                          .setCredentialsProvider(NoCredentialsProvider.create());
             final Publisher publisher = IOExceptions.wrap(builder::build).get();
-            return new GoogleCloudPubSubFlushingPool(sinkName,
-                                                     vc.configuration().global.gcps.threads,
-                                                     vc.configuration().global.gcps.bufferSize,
-                                                     publisher,
-                                                     Optional.of(channel),
-                                                     registry.getSchemaBySinkName(sinkName));
+            return createFlushingPool(vc, sinkName, registry, publisher, Optional.of(channel));
         };
     }
 
+    GoogleCloudPubSubFlushingPool createFlushingPool(final ValidatedConfiguration vc,
+                                                     final String sinkName,
+                                                     final SchemaRegistry registry,
+                                                     final Publisher publisher,
+                                                     final Optional<ManagedChannel> channel) {
+        final DivolteSchema schema = registry.getSchemaBySinkName(sinkName);
+        return new GoogleCloudPubSubFlushingPool(sinkName,
+                                                 vc.configuration().global.gcps.threads,
+                                                 vc.configuration().global.gcps.bufferSize,
+                                                 publisher,
+                                                 channel,
+                                                 schema,
+                                                 maxInFlight,
+                                                 envelope.map(e -> e.bufferFactory(schema)));
+    }
+
     private static void createTopic(final String hostPort,
                                     final TransportChannelProvider channelProvider,
                                     final ProjectTopicName topic) {
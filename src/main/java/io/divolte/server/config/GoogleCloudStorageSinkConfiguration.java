@@ -42,8 +42,10 @@ public class GoogleCloudStorageSinkConfiguration extends FileSinkConfiguration {
     @JsonCreator
     GoogleCloudStorageSinkConfiguration(@Nullable final FileStrategyConfiguration fileStrategy,
                                         @JsonProperty(required=true) final String bucket,
-                                        @Nullable final GoogleCloudStorageRetryConfiguration retrySettings) {
-        super(fileStrategy);
+                                        @Nullable final GoogleCloudStorageRetryConfiguration retrySettings,
+                                        @Nullable @JsonProperty(defaultValue=DEFAULT_SAMPLE_RATE) final Double sampleRate,
+                                        @Nullable final ProjectionConfiguration projection) {
+        super(fileStrategy, sampleRate, projection);
         this.bucket = Objects.requireNonNull(bucket);
         this.retrySettings = Optional.ofNullable(retrySettings).orElse(DEFAULT_RETRY_SETTINGS);
     }
@@ -39,8 +39,10 @@ public class HdfsSinkConfiguration extends FileSinkConfiguration {
     @JsonCreator
     @ParametersAreNullableByDefault
     HdfsSinkConfiguration(@JsonProperty(defaultValue=DEFAULT_REPLICATION) final Short replication,
-                          final FileStrategyConfiguration fileStrategy) {
-        super(fileStrategy);
+                          final FileStrategyConfiguration fileStrategy,
+                          @JsonProperty(defaultValue=DEFAULT_SAMPLE_RATE) final Double sampleRate,
+                          final ProjectionConfiguration projection) {
+        super(fileStrategy, sampleRate, projection);
         // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
         this.replication = Optional.ofNullable(replication).orElseGet(() -> Short.valueOf(DEFAULT_REPLICATION));
     }
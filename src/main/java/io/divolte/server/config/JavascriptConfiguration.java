@@ -36,13 +36,15 @@ public final class JavascriptConfiguration {
     private static final String DEFAULT_DEBUG = "false";
     private static final String DEFAULT_AUTO_PAGE_VIEW_EVENT = "true";
     private static final String DEFAULT_EVENT_TIMEOUT = "750 milliseconds";
+    private static final String DEFAULT_BATCH_EVENTS = "false";
 
     static final JavascriptConfiguration DEFAULT_JAVASCRIPT_CONFIGURATION =
             new JavascriptConfiguration(DEFAULT_NAME,
                                         Boolean.parseBoolean(DEFAULT_LOGGING),
                                         Boolean.parseBoolean(DEFAULT_DEBUG),
                                         Boolean.parseBoolean(DEFAULT_AUTO_PAGE_VIEW_EVENT),
-                                        DurationDeserializer.parseDuration(DEFAULT_EVENT_TIMEOUT));
+                                        DurationDeserializer.parseDuration(DEFAULT_EVENT_TIMEOUT),
+                                        Boolean.parseBoolean(DEFAULT_BATCH_EVENTS));
 
     @NotNull @NotEmpty @Pattern(regexp="^[A-Za-z0-9_-]+\\.js$")
     public final String name;
@@ -51,6 +53,7 @@ public final class JavascriptConfiguration {
     public final boolean debug;
     public final boolean autoPageViewEvent;
     public final Duration eventTimeout;
+    public final boolean batchEvents;
 
     @JsonCreator
     @ParametersAreNullableByDefault
@@ -58,13 +61,15 @@ public final class JavascriptConfiguration {
                             @JsonProperty(defaultValue=DEFAULT_LOGGING) final Boolean logging,
                             @JsonProperty(defaultValue=DEFAULT_DEBUG) final Boolean debug,
                             @JsonProperty(defaultValue=DEFAULT_AUTO_PAGE_VIEW_EVENT) final Boolean autoPageViewEvent,
-                            @JsonProperty(defaultValue=DEFAULT_EVENT_TIMEOUT) final Duration eventTimeout) {
+                            @JsonProperty(defaultValue=DEFAULT_EVENT_TIMEOUT) final Duration eventTimeout,
+                            @JsonProperty(defaultValue=DEFAULT_BATCH_EVENTS) final Boolean batchEvents) {
         // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
         this.name = Optional.ofNullable(name).orElse(DEFAULT_NAME);
         this.logging = Optional.ofNullable(logging).orElseGet(() -> Boolean.valueOf(DEFAULT_LOGGING));
         this.debug = Optional.ofNullable(debug).orElseGet(() -> Boolean.valueOf(DEFAULT_DEBUG));
         this.autoPageViewEvent = Optional.ofNullable(autoPageViewEvent).orElseGet(() -> Boolean.valueOf(DEFAULT_AUTO_PAGE_VIEW_EVENT));
         this.eventTimeout = Optional.ofNullable(eventTimeout).orElseGet(() -> DurationDeserializer.parseDuration(DEFAULT_EVENT_TIMEOUT));
+        this.batchEvents = Optional.ofNullable(batchEvents).orElseGet(() -> Boolean.valueOf(DEFAULT_BATCH_EVENTS));
     }
 
     @Override
@@ -75,6 +80,7 @@ public final class JavascriptConfiguration {
                 .add("debug", debug)
                 .add("autoPageViewEvent", autoPageViewEvent)
                 .add("eventTimeout", eventTimeout)
+                .add("batchEvents", batchEvents)
                 .toString();
     }
 }
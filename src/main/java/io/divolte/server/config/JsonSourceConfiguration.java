@@ -24,8 +24,10 @@ import io.divolte.server.HttpSource;
 import io.divolte.server.IncomingRequestProcessingPool;
 import io.divolte.server.JsonSource;
 
+import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.ParametersAreNullableByDefault;
+import java.util.Objects;
 import java.util.Optional;
 
 @ParametersAreNonnullByDefault
@@ -33,21 +35,28 @@ public class JsonSourceConfiguration extends SourceConfiguration {
     private final static String DEFAULT_EVENT_PATH = "/";
     private final static String DEFAULT_PARTY_ID_PARAMETER = "p";
     public final static String DEFAULT_MAXIMUM_BODY_SIZE = "4096";
+    public final static String DEFAULT_BULK_MAXIMUM_BODY_SIZE = "1048576";
 
     public final String eventPath;
     public final String partyIdParameter;
     public final int maximumBodySize;
+    public final Optional<String> bulkEventPath;
+    public final int bulkMaximumBodySize;
 
     @JsonCreator
     @ParametersAreNullableByDefault
     JsonSourceConfiguration(
             @JsonProperty(defaultValue=DEFAULT_EVENT_PATH) final String eventPath,
             @JsonProperty(defaultValue=DEFAULT_PARTY_ID_PARAMETER) final String partyIdParameter,
-            @JsonProperty(defaultValue=DEFAULT_MAXIMUM_BODY_SIZE) final Integer maximumBodySize) {
+            @JsonProperty(defaultValue=DEFAULT_MAXIMUM_BODY_SIZE) final Integer maximumBodySize,
+            @Nonnull final Optional<String> bulkEventPath,
+            @JsonProperty(defaultValue=DEFAULT_BULK_MAXIMUM_BODY_SIZE) final Integer bulkMaximumBodySize) {
         // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
         this.eventPath = Optional.ofNullable(eventPath).orElse(DEFAULT_EVENT_PATH);
         this.partyIdParameter = Optional.ofNullable(partyIdParameter).orElse(DEFAULT_PARTY_ID_PARAMETER);
         this.maximumBodySize = Optional.ofNullable(maximumBodySize).orElseGet(() -> Integer.valueOf(DEFAULT_MAXIMUM_BODY_SIZE));
+        this.bulkEventPath = Objects.requireNonNull(bulkEventPath);
+        this.bulkMaximumBodySize = Optional.ofNullable(bulkMaximumBodySize).orElseGet(() -> Integer.valueOf(DEFAULT_BULK_MAXIMUM_BODY_SIZE));
     }
 
     @Override
@@ -55,7 +64,9 @@ public class JsonSourceConfiguration extends SourceConfiguration {
         return super.toStringHelper()
             .add("eventPath", eventPath)
             .add("partyIdParameter", partyIdParameter)
-            .add("maximumBodySize", maximumBodySize);
+            .add("maximumBodySize", maximumBodySize)
+            .add("bulkEventPath", bulkEventPath)
+            .add("bulkMaximumBodySize", bulkMaximumBodySize);
     }
 
     @Override
@@ -27,43 +27,77 @@ import com.google.common.base.MoreObjects;
 
 import io.divolte.server.AvroRecordBuffer;
 import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
 import io.divolte.server.topicsinks.kafka.KafkaFlushingPool;
+import io.divolte.server.topicsinks.kafka.KafkaRecordFactory;
 import io.divolte.server.topicsinks.kafka.Serializers;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 
 @ParametersAreNonnullByDefault
 public class KafkaSinkConfiguration extends TopicSinkConfiguration {
     private static final KafkaSinkMode DEFAULT_SINK_MODE = KafkaSinkMode.NAKED;
+    private static final String DEFAULT_MAX_IN_FLIGHT = "0";
+    private static final String DEFAULT_INCLUDE_HEADERS = "false";
 
     public final KafkaSinkMode mode;
+    public final int maxInFlight;
+    public final boolean includeHeaders;
 
     @JsonCreator
     @ParametersAreNullableByDefault
     KafkaSinkConfiguration(@JsonProperty(defaultValue=DEFAULT_TOPIC) final String topic,
-                           @JsonProperty final KafkaSinkMode mode) {
+                           @JsonProperty final KafkaSinkMode mode,
+                           @JsonProperty(defaultValue=DEFAULT_MAX_IN_FLIGHT) final Integer maxInFlight,
+                           @JsonProperty(defaultValue=DEFAULT_INCLUDE_HEADERS) final Boolean includeHeaders,
+                           @JsonProperty final EnvelopeConfiguration envelope,
+                           @JsonProperty(defaultValue=DEFAULT_SAMPLE_RATE) final Double sampleRate,
+                           @JsonProperty final ProjectionConfiguration projection) {
         // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
-        super(topic);
+        super(topic, envelope, sampleRate, projection);
         this.mode = Optional.ofNullable(mode).orElse(DEFAULT_SINK_MODE);
+        this.maxInFlight = Optional.ofNullable(maxInFlight).orElseGet(() -> Integer.valueOf(DEFAULT_MAX_IN_FLIGHT));
+        this.includeHeaders = Optional.ofNullable(includeHeaders).orElseGet(() -> Boolean.valueOf(DEFAULT_INCLUDE_HEADERS));
     }
 
     @Override
     protected MoreObjects.ToStringHelper toStringHelper() {
         return super.toStringHelper()
-            .add("mode", mode);
+            .add("mode", mode)
+            .add("maxInFlight", maxInFlight)
+            .add("includeHeaders", includeHeaders);
     }
 
     @Override
     public SinkFactory getFactory() {
         return (vc, sink, registry) -> {
+            final DivolteSchema schema = registry.getSchemaBySinkName(sink);
+            if (envelope.isPresent()) {
+                // Envelopes are Avro object containers, whatever the mode.
+                final KafkaProducer<DivolteIdentifier, byte[]> producer =
+                    new KafkaProducer<>(vc.configuration().global.kafka.producer,
+                                        Serializers.createKeySerializer(),
+                                        new ByteArraySerializer());
+                return new KafkaFlushingPool(sink,
+                                             vc.configuration().global.kafka.threads,
+                                             vc.configuration().global.kafka.bufferSize,
+                                             topic,
+                                             producer,
+                                             envelope.get().bufferFactory(schema));
+            }
             final KafkaProducer<DivolteIdentifier, AvroRecordBuffer> producer =
                 new KafkaProducer<>(vc.configuration().global.kafka.producer,
                                     Serializers.createKeySerializer(),
-                                    mode.serializerFactory.apply(registry.getSchemaBySinkName(sink)));
+                                    mode.serializerFactory.apply(schema));
+            final KafkaRecordFactory recordFactory = includeHeaders
+                ? KafkaRecordFactory.withHeaders(topic, schema, vc.configuration().mappings.keySet().asList())
+                : KafkaRecordFactory.withoutHeaders(topic);
             return new KafkaFlushingPool(sink,
                                          vc.configuration().global.kafka.threads,
                                          vc.configuration().global.kafka.bufferSize,
-                                         topic,
-                                         producer
+                                         recordFactory,
+                                         producer,
+                                         maxInFlight
             );
         };
     }
@@ -18,6 +18,7 @@ package io.divolte.server.config;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.google.common.base.MoreObjects;
+import io.divolte.server.processing.QueueType;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Objects;
@@ -27,21 +28,30 @@ import java.util.Optional;
 public class MapperConfiguration {
     public final int bufferSize;
     public final int threads;
+    public final QueueType queueType;
     public final int duplicateMemorySize;
+    public final Optional<String> duplicateMemoryFile;
     public final UserAgentParserConfiguration userAgentParser;
     public final Optional<String> ip2geoDatabase;
+    public final int ip2geoCacheSize;
 
     @JsonCreator
     MapperConfiguration(final int bufferSize,
                         final int threads,
+                        final QueueType queueType,
                         final int duplicateMemorySize,
+                        final Optional<String> duplicateMemoryFile,
                         final UserAgentParserConfiguration userAgentParser,
-                        final Optional<String> ip2geoDatabase) {
+                        final Optional<String> ip2geoDatabase,
+                        final int ip2geoCacheSize) {
         this.bufferSize = bufferSize;
         this.threads = threads;
+        this.queueType = Objects.requireNonNull(queueType);
         this.duplicateMemorySize = duplicateMemorySize;
+        this.duplicateMemoryFile = Objects.requireNonNull(duplicateMemoryFile);
         this.userAgentParser = Objects.requireNonNull(userAgentParser);
         this.ip2geoDatabase = Objects.requireNonNull(ip2geoDatabase);
+        this.ip2geoCacheSize = ip2geoCacheSize;
     }
 
     @Override
@@ -49,9 +59,12 @@ public class MapperConfiguration {
         return MoreObjects.toStringHelper(this)
                 .add("bufferSize", bufferSize)
                 .add("threads", threads)
+                .add("queueType", queueType)
                 .add("duplicateMemorySize", duplicateMemorySize)
+                .add("duplicateMemoryFile", duplicateMemoryFile)
                 .add("userAgentParser", userAgentParser)
                 .add("ip2geoDatabase", ip2geoDatabase)
+                .add("ip2geoCacheSize", ip2geoCacheSize)
                 .toString();
     }
 }
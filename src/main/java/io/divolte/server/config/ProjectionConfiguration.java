@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Objects;
+import java.util.Optional;
+
+@ParametersAreNonnullByDefault
+public class ProjectionConfiguration {
+    public final String schemaFile;
+    public final Optional<Integer> confluentId;
+
+    @JsonCreator
+    ProjectionConfiguration(@JsonProperty(required = true) final String schemaFile,
+                            final Optional<Integer> confluentId) {
+        this.schemaFile = Objects.requireNonNull(schemaFile);
+        this.confluentId = Objects.requireNonNull(confluentId);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("schemaFile", schemaFile)
+            .add("confluentId", confluentId)
+            .toString();
+    }
+}
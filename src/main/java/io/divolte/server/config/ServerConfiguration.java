@@ -35,6 +35,8 @@ public final class ServerConfiguration {
     public final boolean debugRequests;
     public final Duration shutdownDelay;
     public final Duration shutdownTimeout;
+    public final int requestBufferPoolSize;
+    public final boolean requestBufferPoolDirect;
 
     @JsonCreator
     ServerConfiguration(final Optional<String> host,
@@ -43,7 +45,9 @@ public final class ServerConfiguration {
                         final boolean serveStaticResources,
                         final boolean debugRequests,
                         final Duration shutdownDelay,
-                        final Duration shutdownTimeout) {
+                        final Duration shutdownTimeout,
+                        final int requestBufferPoolSize,
+                        final boolean requestBufferPoolDirect) {
         this.host = Objects.requireNonNull(host);
         this.port = port;
         this.useXForwardedFor = useXForwardedFor;
@@ -51,6 +55,8 @@ public final class ServerConfiguration {
         this.debugRequests = debugRequests;
         this.shutdownDelay = shutdownDelay;
         this.shutdownTimeout = shutdownTimeout;
+        this.requestBufferPoolSize = requestBufferPoolSize;
+        this.requestBufferPoolDirect = requestBufferPoolDirect;
     }
 
     @Override
@@ -63,6 +69,8 @@ public final class ServerConfiguration {
                 .add("debugRequests", debugRequests)
                 .add("shutdownDelay", shutdownDelay)
                 .add("shutdownTimeout", shutdownTimeout)
+                .add("requestBufferPoolSize", requestBufferPoolSize)
+                .add("requestBufferPoolDirect", requestBufferPoolDirect)
                 .toString();
     }
 }
@@ -16,8 +16,14 @@
 
 package io.divolte.server.config;
 
+import java.util.Optional;
+
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.ParametersAreNullableByDefault;
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -37,9 +43,23 @@ import io.divolte.server.processing.ProcessingPool;
 })
 @ParametersAreNonnullByDefault
 public abstract class SinkConfiguration {
+    protected static final String DEFAULT_SAMPLE_RATE = "1.0";
+
+    @DecimalMin("0.0") @DecimalMax("1.0") public final double sampleRate;
+    @Valid public final Optional<ProjectionConfiguration> projection;
+
+    @ParametersAreNullableByDefault
+    SinkConfiguration(final Double sampleRate, final ProjectionConfiguration projection) {
+        // TODO: register a custom deserializer with Jackson that uses the defaultValue property from the annotation to fix this
+        this.sampleRate = Optional.ofNullable(sampleRate).orElseGet(() -> Double.valueOf(DEFAULT_SAMPLE_RATE));
+        this.projection = Optional.ofNullable(projection);
+    }
+
     @OverridingMethodsMustInvokeSuper
     protected MoreObjects.ToStringHelper toStringHelper() {
-        return MoreObjects.toStringHelper(this);
+        return MoreObjects.toStringHelper(this)
+            .add("sampleRate", sampleRate)
+            .add("projection", projection);
     }
 
     @Override
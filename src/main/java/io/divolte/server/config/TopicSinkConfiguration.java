@@ -21,6 +21,7 @@ import com.google.common.base.MoreObjects;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.ParametersAreNullableByDefault;
+import javax.validation.Valid;
 import java.util.Optional;
 
 @ParametersAreNonnullByDefault
@@ -28,16 +29,23 @@ public abstract class TopicSinkConfiguration extends SinkConfiguration {
     protected static final String DEFAULT_TOPIC = "divolte";
 
     public final String topic;
+    @Valid public final Optional<EnvelopeConfiguration> envelope;
 
     @JsonCreator
     @ParametersAreNullableByDefault
-    TopicSinkConfiguration(final String topic) {
+    TopicSinkConfiguration(final String topic,
+                           final EnvelopeConfiguration envelope,
+                           final Double sampleRate,
+                           final ProjectionConfiguration projection) {
+        super(sampleRate, projection);
         this.topic = Optional.ofNullable(topic).orElse(DEFAULT_TOPIC);
+        this.envelope = Optional.ofNullable(envelope);
     }
 
     @Override
     protected MoreObjects.ToStringHelper toStringHelper() {
         return super.toStringHelper()
-            .add("topic", topic);
+            .add("topic", topic)
+            .add("envelope", envelope);
     }
 }
@@ -33,6 +33,23 @@ public final class UserAgentParserConfiguration {
         this.cacheSize = cacheSize;
     }
 
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof UserAgentParserConfiguration)) {
+            return false;
+        }
+        final UserAgentParserConfiguration that = (UserAgentParserConfiguration) other;
+        return type == that.type && cacheSize == that.cacheSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, cacheSize);
+    }
+
     @Override
     public String toString() {
         return "UserAgentParserConfiguration [type=" + type + ", cacheSize=" + cacheSize + "]";
@@ -42,7 +59,8 @@ public final class UserAgentParserConfiguration {
     public enum ParserType {
         NON_UPDATING,
         ONLINE_UPDATING,
-        CACHING_AND_UPDATING;
+        CACHING_AND_UPDATING,
+        PRECOMPILED;
 
         // Ensure that enumeration names are case-insensitive when parsing JSON.
         @JsonCreator
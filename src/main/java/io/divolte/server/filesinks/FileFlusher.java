@@ -132,6 +132,32 @@ public class FileFlusher implements ItemProcessor<AvroRecordBuffer> {
                 .orElseGet(() -> nanoTime - lastFixAttemptNanoTime > reconnectDelayNanos ? attemptRecovery(nanoTime) : PAUSE);
     }
 
+    @Override
+    public long nanosUntilHeartbeat() {
+        final long nanoTime = System.nanoTime();
+        return currentTrackedFile
+                .map(trackedFile -> {
+                    // Files are rolled once the projected close time has passed.
+                    final long nanosUntilRoll = trackedFile.projectedCloseNanoTime - nanoTime + 1;
+                    return trackedFile.recordsSinceLastSync > 0
+                            ? Math.min(nanosUntilRoll, trackedFile.lastSyncNanoTime + syncEveryNanos - nanoTime)
+                            : nanosUntilRoll;
+                })
+                .orElseGet(() -> nanosUntilRecoveryAttempt(nanoTime));
+    }
+
+    @Override
+    public long pauseBackoffNanos(final int attempt) {
+        // Recovery is only attempted once the reconnect delay has passed, so there's no point waking earlier.
+        return currentTrackedFile.isPresent()
+                ? ItemProcessor.super.pauseBackoffNanos(attempt)
+                : nanosUntilRecoveryAttempt(System.nanoTime());
+    }
+
+    private long nanosUntilRecoveryAttempt(final long nanoTime) {
+        return lastFixAttemptNanoTime + reconnectDelayNanos - nanoTime + 1;
+    }
+
     private ProcessingDirective handleHeartbeatWithHealthyFileSystem(final long nanoTime) {
         try {
             possiblySyncAndOrRoll(nanoTime);
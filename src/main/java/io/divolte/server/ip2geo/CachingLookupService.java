@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.ip2geo;
+
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import com.maxmind.geoip2.model.CityResponse;
+
+/**
+ * A lookup service that caches the results of another lookup service.
+ * <p>
+ * Addresses tend to repeat: a visitor sends many events during a session, and returns
+ * later from the same address. Caching the results avoids traversing the database and
+ * building a new response for each of these events. Addresses that could not be found
+ * are cached as well.
+ * <p>
+ * The cache is tied to the lifetime of the underlying service: when a database is
+ * replaced, the replacement should be wrapped in a new instance.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CachingLookupService implements LookupService {
+    private final LookupService delegate;
+    private final StatsCounter statsCounter;
+    private final Cache<InetAddress, Optional<CityResponse>> cache;
+
+    public CachingLookupService(final LookupService delegate, final int cacheSize) {
+        this(delegate, cacheSize, new ConcurrentStatsCounter());
+    }
+
+    /**
+     * Construct a caching lookup service that records its statistics with a supplied counter.
+     * This allows the statistics of successive caches to be accumulated.
+     *
+     * @param delegate      the service whose results should be cached.
+     * @param cacheSize     the maximum number of results to cache.
+     * @param statsCounter  the counter with which to record cache statistics.
+     */
+    public CachingLookupService(final LookupService delegate, final int cacheSize, final StatsCounter statsCounter) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.statsCounter = Objects.requireNonNull(statsCounter);
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(cacheSize)
+                             .recordStats(() -> statsCounter)
+                             .build();
+    }
+
+    @Override
+    public Optional<CityResponse> lookup(final InetAddress address) throws ClosedServiceException {
+        final Optional<CityResponse> cachedResult = cache.getIfPresent(address);
+        if (null != cachedResult) {
+            return cachedResult;
+        }
+        // Concurrent misses for the same address can both end up here; that's harmless.
+        final Optional<CityResponse> result = delegate.lookup(address);
+        cache.put(address, result);
+        return result;
+    }
+
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void close() throws Exception {
+        cache.invalidateAll();
+        delegate.close();
+    }
+}
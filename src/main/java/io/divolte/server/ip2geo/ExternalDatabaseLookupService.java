@@ -17,6 +17,7 @@
 package io.divolte.server.ip2geo;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
@@ -31,32 +32,56 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.maxmind.geoip2.model.CityResponse;
 
 @ParametersAreNonnullByDefault
-public class ExternalDatabaseLookupService implements LookupService {
+public class ExternalDatabaseLookupService implements LookupService, LookupCacheMXBean {
     private static final Logger logger = LoggerFactory.getLogger(ExternalDatabaseLookupService.class);
 
+    private static final String CACHE_MBEAN_NAME = "io.divolte.server:type=GeoIpCache";
+
     private final ExecutorService backgroundWatcher = Executors.newSingleThreadExecutor();
     private final WatchService watcher;
     private final Path location;
+    private final int cacheSize;
+    // Shared by the caches of successive databases, so that statistics survive a reload.
+    private final StatsCounter cacheStats = new ConcurrentStatsCounter();
 
     // The reference may be null if we don't have a delegate service yet.
-    private final AtomicReference<DatabaseLookupService> databaseLookupService;
+    private final AtomicReference<LookupService> databaseLookupService;
 
     public ExternalDatabaseLookupService(final Path location) throws IOException {
+        this(location, 0);
+    }
+
+    /**
+     * Construct a lookup service for a database that is reloaded whenever it changes.
+     *
+     * @param location  the location of the database.
+     * @param cacheSize the number of lookup results to cache, or 0 to disable caching.
+     *                  The cache is discarded when the database is reloaded.
+     * @throws IOException if the database could not be loaded.
+     */
+    public ExternalDatabaseLookupService(final Path location, final int cacheSize) throws IOException {
         final Path absoluteLocation = location.toAbsolutePath();
         final Path locationParent = absoluteLocation.getParent();
         if (null == locationParent) {
             throw new IllegalArgumentException("Could not determine parent directory of GeoIP2 database: " + absoluteLocation);
         }
         this.location = absoluteLocation;
+        this.cacheSize = cacheSize;
         // Do this first, so that if it fails we don't need to clean up resources.
-        databaseLookupService = new AtomicReference<>(new DatabaseLookupService(absoluteLocation));
+        databaseLookupService = new AtomicReference<>(openDatabase());
 
         // Set things up so that we can reload the database if it changes.
         watcher = FileSystems.getDefault().newWatchService();
@@ -64,6 +89,31 @@ public class ExternalDatabaseLookupService implements LookupService {
         locationParent.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
         // The database will be loaded in the background.
         backgroundWatcher.execute(this::processWatchEvents);
+
+        if (0 < cacheSize) {
+            registerCacheStatistics();
+        }
+    }
+
+    private LookupService openDatabase() throws IOException {
+        final DatabaseLookupService service = new DatabaseLookupService(location);
+        return 0 < cacheSize ? new CachingLookupService(service, cacheSize, cacheStats) : service;
+    }
+
+    private void registerCacheStatistics() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(CACHE_MBEAN_NAME);
+            try {
+                mBeanServer.registerMBean(this, name);
+            } catch (final InstanceAlreadyExistsException e) {
+                // Another lookup service within the same JVM; the newest wins.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(this, name);
+            }
+        } catch (final JMException e) {
+            logger.warn("Could not register GeoIP cache statistics.", e);
+        }
     }
 
     private void processWatchEvents() {
@@ -115,12 +165,13 @@ public class ExternalDatabaseLookupService implements LookupService {
 
     private void reloadDatabase() {
         try {
-            final DatabaseLookupService newService = new DatabaseLookupService(location);
-            final DatabaseLookupService oldService = databaseLookupService.getAndSet(newService);
+            // Any cached results are discarded along with the previous database.
+            final LookupService newService = openDatabase();
+            final LookupService oldService = databaseLookupService.getAndSet(newService);
             logger.info("Reloaded database: {}", location);
             try {
                 oldService.close();
-            } catch (final IOException e) {
+            } catch (final Exception e) {
                 logger.warn("Could not close previous database: " + location, e);
             }
         } catch (final IOException e) {
@@ -130,7 +181,7 @@ public class ExternalDatabaseLookupService implements LookupService {
 
     @Override
     public Optional<CityResponse> lookup(final InetAddress address) throws ClosedServiceException {
-        final DatabaseLookupService service = databaseLookupService.get();
+        final LookupService service = databaseLookupService.get();
         if (null == service) {
             throw new ClosedServiceException(this);
         }
@@ -144,10 +195,30 @@ public class ExternalDatabaseLookupService implements LookupService {
     }
 
     @Override
-    public void close() throws IOException {
+    public long getHits() {
+        return cacheStats.snapshot().hitCount();
+    }
+
+    @Override
+    public long getMisses() {
+        return cacheStats.snapshot().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cacheStats.snapshot().hitRate();
+    }
+
+    @Override
+    public long getEvictions() {
+        return cacheStats.snapshot().evictionCount();
+    }
+
+    @Override
+    public void close() throws Exception {
         backgroundWatcher.shutdown();
         watcher.close();
-        final DatabaseLookupService service = databaseLookupService.getAndSet(null);
+        final LookupService service = databaseLookupService.getAndSet(null);
         if (null != service) {
             service.close();
         }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.ip2geo;
+
+/**
+ * Management interface for monitoring the cache of GeoIP lookup results.
+ */
+public interface LookupCacheMXBean {
+    /** @return the number of lookups that were answered from the cache. */
+    long getHits();
+    /** @return the number of lookups that had to be performed against the database. */
+    long getMisses();
+    /** @return the fraction of lookups answered from the cache, or 1 if there were none. */
+    double getHitRate();
+    /** @return the number of lookup results that were evicted from the cache. */
+    long getEvictions();
+}
@@ -58,6 +58,7 @@ public class TrackingJavaScriptResource extends JavaScriptResource {
         builder.put("AUTO_PAGE_VIEW_EVENT", browserSourceConfiguration.javascript.autoPageViewEvent);
         builder.put("EVENT_TIMEOUT_SECONDS", browserSourceConfiguration.javascript.eventTimeout.getSeconds() +
                                              browserSourceConfiguration.javascript.eventTimeout.getNano() / (double)NANOS_PER_SECOND);
+        builder.put("BATCH_EVENTS", browserSourceConfiguration.javascript.batchEvents);
         return builder.build();
     }
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Deterministically samples items based on their affinity hash.
+ * <p>
+ * All items with the same affinity (such as the events of a party) are either kept
+ * or dropped together. Samplers are also nested: an item kept by a sampler is kept
+ * by every sampler with a higher rate.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class AffinitySampler {
+    private static final AffinitySampler ALL = new AffinitySampler(1L << 31);
+
+    // Affinity hashes are non-negative; items are kept if their hash is below this.
+    private final long threshold;
+
+    private AffinitySampler(final long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Obtain a sampler that keeps a given fraction of the affinity hashes.
+     *
+     * @param rate  the fraction of items to keep, between 0 and 1.
+     * @return a sampler for the given rate.
+     */
+    public static AffinitySampler ofRate(final double rate) {
+        Preconditions.checkArgument(0.0 <= rate && rate <= 1.0, "Sample rate must be between 0 and 1: %s", rate);
+        // The threshold is on the magnitude of the hash so it is independent of
+        // the queue assignment, which uses the hash modulo the number of queues.
+        return 1.0 == rate ? ALL : new AffinitySampler((long) (rate * (1L << 31)));
+    }
+
+    public boolean accepts(final Item<?> item) {
+        return item.affinityHash < threshold;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A processing queue backed by an {@link ArrayBlockingQueue}. A single lock is
+ * shared by the producers and the consumer.
+ */
+@ParametersAreNonnullByDefault
+final class BlockingProcessingQueue<E> implements ProcessingQueue<E> {
+    private final BlockingQueue<E> queue;
+
+    BlockingProcessingQueue(final int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(final E item) {
+        return queue.offer(item);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> target, final int maxItems) {
+        return queue.drainTo(target, maxItems);
+    }
+
+    @Nullable
+    @Override
+    public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+}
@@ -19,8 +19,12 @@ package io.divolte.server.processing;
 import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.*;
 
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 public interface ItemProcessor<E> {
+    long DEFAULT_HEARTBEAT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    long MINIMUM_PAUSE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
     ProcessingDirective process(Item<E> e);
 
     default ProcessingDirective process(final Queue<Item<E>> batch) {
@@ -38,6 +42,25 @@ public interface ItemProcessor<E> {
         return CONTINUE;
     }
 
+    /*
+     * The time until the next heartbeat is due if no items arrive. Processors
+     * with time-based duties can override this to be woken exactly when those
+     * are due instead of at the default interval.
+     */
+    default long nanosUntilHeartbeat() {
+        return DEFAULT_HEARTBEAT_INTERVAL_NANOS;
+    }
+
+    /*
+     * The time to wait before the next heartbeat after processing has been
+     * paused. The attempt is the number of heartbeats so far that also
+     * paused. By default this backs off exponentially, so that a processor
+     * that recovers quickly isn't left idle.
+     */
+    default long pauseBackoffNanos(final int attempt) {
+        return Math.min(DEFAULT_HEARTBEAT_INTERVAL_NANOS, MINIMUM_PAUSE_BACKOFF_NANOS << Math.min(attempt, 20));
+    }
+
     default void cleanup() {
         // noop, override to implement cleanup
     }
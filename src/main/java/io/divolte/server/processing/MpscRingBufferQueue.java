@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free processing queue for multiple producers and a single consumer.
+ * <p>
+ * The queue is a ring buffer where each slot has a sequence number indicating
+ * whether it is free for the producer claiming that position, or holds an item
+ * for the consumer. Producers claim a position by advancing a shared counter.
+ * Only the consumer ever blocks: while waiting it registers itself, and producers
+ * wake it after publishing an item.
+ * <p>
+ * The capacity is rounded up to the nearest power of 2.
+ */
+@ParametersAreNonnullByDefault
+@ThreadSafe
+final class MpscRingBufferQueue<E> implements ProcessingQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong producerPosition = new AtomicLong();
+    // Only accessed by the consumer.
+    private long consumerPosition;
+
+    @Nullable
+    private volatile Thread waitingConsumer;
+
+    MpscRingBufferQueue(final int capacity) {
+        Preconditions.checkArgument(0 < capacity && capacity <= 1 << 30, "Invalid queue capacity: %s", capacity);
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(final E item) {
+        long position = producerPosition.get();
+        for (;;) {
+            final int index = (int) position & mask;
+            final long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    items.lazySet(index, item);
+                    // Publishes the item to the consumer.
+                    sequences.set(index, position + 1);
+                    final Thread consumer = waitingConsumer;
+                    if (null != consumer) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+                position = producerPosition.get();
+            } else if (available < 0) {
+                // The consumer hasn't released this slot yet: the queue is full.
+                return false;
+            } else {
+                // Another producer claimed this position; try again.
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    @Nullable
+    private E poll() {
+        final long position = consumerPosition;
+        final int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        final E item = items.get(index);
+        items.lazySet(index, null);
+        // Releases the slot for the producer that wraps around to it.
+        sequences.lazySet(index, position + mask + 1);
+        consumerPosition = position + 1;
+        return item;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> target, final int maxItems) {
+        int count = 0;
+        E item;
+        while (count < maxItems && null != (item = poll())) {
+            target.add(item);
+            ++count;
+        }
+        return count;
+    }
+
+    @Nullable
+    @Override
+    public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        E item = poll();
+        if (null == item) {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            // Register before checking again, so that a producer publishing in the
+            // meantime is guaranteed to see us and wake us up.
+            waitingConsumer = Thread.currentThread();
+            try {
+                while (null == (item = poll())) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waitingConsumer = null;
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sequences.get((int) consumerPosition & mask) != consumerPosition + 1;
+    }
+}
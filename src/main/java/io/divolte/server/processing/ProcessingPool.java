@@ -23,8 +23,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -49,8 +47,11 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
 
     private static final int MAX_BATCH_SIZE = 128;
 
+    // Threads never wait longer than this, so they notice promptly when the pool stops.
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final ExecutorService executorService;
-    private final List<BlockingQueue<Item<E>>> queues;
+    private final List<ProcessingQueue<Item<E>>> queues;
 
     private volatile boolean running;
 
@@ -62,6 +63,15 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
             final int maxQueueSize,
             final String threadBaseName,
             final Supplier<T> processorSupplier) {
+        this(numThreads, maxQueueSize, QueueType.BLOCKING, threadBaseName, processorSupplier);
+    }
+
+    public ProcessingPool(
+            final int numThreads,
+            final int maxQueueSize,
+            final QueueType queueType,
+            final String threadBaseName,
+            final Supplier<T> processorSupplier) {
 
         running = true;
 
@@ -72,8 +82,8 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
         final ThreadFactory factory = createThreadFactory(threadGroup, threadBaseName + " - %d");
         executorService = Executors.newFixedThreadPool(numThreads, factory);
 
-        this.queues = Stream.<ArrayBlockingQueue<Item<E>>>
-                generate(() -> new ArrayBlockingQueue<>(maxQueueSize))
+        this.queues = Stream.<ProcessingQueue<Item<E>>>
+                generate(() -> queueType.create(maxQueueSize))
                 .limit(numThreads)
                 .collect(Collectors.toCollection(() -> new ArrayList<>(numThreads)));
 
@@ -85,7 +95,7 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
     }
 
     public void enqueue(final Item<E> item) {
-        final BlockingQueue<Item<E>> queue = queues.get(item.affinityHash % queues.size());
+        final ProcessingQueue<Item<E>> queue = queues.get(item.affinityHash % queues.size());
         if (!queue.offer(item)) {
             logger.warn("Failed to enqueue item. Dropping event.");
         }
@@ -102,7 +112,7 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
         }
     }
 
-    private void scheduleQueueReader(final ExecutorService es, final BlockingQueue<Item<E>> queue, final ItemProcessor<E> processor) {
+    private void scheduleQueueReader(final ExecutorService es, final ProcessingQueue<Item<E>> queue, final ItemProcessor<E> processor) {
         CompletableFuture.runAsync(microBatchingQueueDrainerWithHeartBeat(queue, processor), es).whenComplete((voidValue, error) -> {
             processor.cleanup();
 
@@ -116,7 +126,7 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
     }
 
     private Runnable microBatchingQueueDrainerWithHeartBeat(
-            final BlockingQueue<Item<E>> queue,
+            final ProcessingQueue<Item<E>> queue,
             final ItemProcessor<E> processor) {
         return () -> {
             // The default item processor implementation removes items one-by-one as they
@@ -128,9 +138,9 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
                 do {
                     queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
                     if (batch.isEmpty()) {
-                        // If the batch was empty, block on the queue for some time
-                        // until something is available.
-                        directive = Optional.ofNullable(pollQuietly(queue, 1, TimeUnit.SECONDS))
+                        // If the batch was empty, block on the queue until something is
+                        // available or the processor is due a heartbeat.
+                        directive = Optional.ofNullable(pollQuietly(queue, boundedWait(processor.nanosUntilHeartbeat()), TimeUnit.NANOSECONDS))
                                             .map((p) -> {
                                                 batch.add(p);
                                                 return CONTINUE;
@@ -141,23 +151,27 @@ public class ProcessingPool<T extends ItemProcessor<E>, E> {
                     }
                 } while (directive == CONTINUE && running);
 
-                while (directive == PAUSE && running) {
-                    sleepOneSecond();
+                for (int attempt = 0; directive == PAUSE && running; ++attempt) {
+                    sleepQuietly(boundedWait(processor.pauseBackoffNanos(attempt)));
                     directive = processor.heartbeat();
                 }
             }
         };
     }
 
-    private static void sleepOneSecond() {
+    private static long boundedWait(final long nanos) {
+        return Math.max(0, Math.min(nanos, MAX_WAIT_NANOS));
+    }
+
+    private static void sleepQuietly(final long nanos) {
         try {
-            Thread.sleep(1000);
+            TimeUnit.NANOSECONDS.sleep(nanos);
         } catch(final InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
-    private static <E> E pollQuietly(final BlockingQueue<E> queue, final long timeout, final TimeUnit unit) {
+    private static <E> E pollQuietly(final ProcessingQueue<E> queue, final long timeout, final TimeUnit unit) {
         try {
             return queue.poll(timeout, unit);
         } catch (final InterruptedException e) {
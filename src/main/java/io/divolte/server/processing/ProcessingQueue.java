@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of items waiting to be processed by a single thread.
+ * <p>
+ * Items can be offered by any thread, but only the thread that processes the
+ * items may remove them or check whether the queue is empty.
+ */
+@ParametersAreNonnullByDefault
+interface ProcessingQueue<E> {
+    /**
+     * Add an item to the queue, if there is space.
+     * @return <code>true</code> if the item was added, or <code>false</code> if the queue was full.
+     */
+    boolean offer(E item);
+
+    /**
+     * Remove available items from the queue, without waiting.
+     * @return the number of items that were added to the target.
+     */
+    int drainTo(Collection<? super E> target, int maxItems);
+
+    /**
+     * Remove the next item from the queue, waiting for one to become available if necessary.
+     * @return the item, or <code>null</code> if no item became available before the timeout expired.
+     */
+    @Nullable
+    E poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    boolean isEmpty();
+}
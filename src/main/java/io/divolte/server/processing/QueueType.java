@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Locale;
+
+/**
+ * The kind of queue used to hand items to the threads of a {@link ProcessingPool}.
+ */
+@ParametersAreNonnullByDefault
+public enum QueueType {
+    /**
+     * A queue guarded by a single lock shared between producers and the consumer.
+     */
+    BLOCKING {
+        @Override
+        <E> ProcessingQueue<E> create(final int capacity) {
+            return new BlockingProcessingQueue<>(capacity);
+        }
+    },
+    /**
+     * A lock-free ring buffer. Producers never block each other or the consumer.
+     */
+    RING_BUFFER {
+        @Override
+        <E> ProcessingQueue<E> create(final int capacity) {
+            return new MpscRingBufferQueue<>(capacity);
+        }
+    };
+
+    abstract <E> ProcessingQueue<E> create(int capacity);
+
+    // Ensure that enumeration names are case-insensitive when parsing JSON.
+    @JsonCreator
+    static QueueType fromJson(final String value) {
+        return QueueType.valueOf(value.toUpperCase(Locale.ROOT));
+    }
+}
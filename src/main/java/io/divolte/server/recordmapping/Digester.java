@@ -66,7 +66,7 @@ public final class Digester<T> {
         return new BytesValueProducer(identifier, this::calculateDigest);
     }
 
-    private Optional<ByteBuffer> calculateDigest(final DivolteEvent e, final Map<String,Optional<?>> context) {
+    private Optional<ByteBuffer> calculateDigest(final DivolteEvent e, final MappingContext context) {
         final T messageDigest = digestFactory.get();
         final Consumer<ByteBuffer> digestUpdater = digestUpdaterFactory.apply(messageDigest);
         final Supplier<byte[]> digestFinalizer = digestFinalizerFactory.apply(messageDigest);
@@ -16,7 +16,6 @@
 
 package io.divolte.server.recordmapping;
 
-import com.google.common.collect.Maps;
 import groovy.lang.Binding;
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
@@ -25,9 +24,10 @@ import io.divolte.server.config.ValidatedConfiguration;
 import io.divolte.server.ip2geo.LookupService;
 import io.divolte.server.recordmapping.DslRecordMapping.MappingAction;
 import io.divolte.server.recordmapping.DslRecordMapping.MappingAction.MappingResult;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +46,16 @@ public class DslRecordMapper {
     private final static Logger logger = LoggerFactory.getLogger(DslRecordMapper.class);
 
     private final Schema schema;
-    private final List<DslRecordMapping.MappingAction> actions;
+    private final MappingAction[] actions;
+    private final MappingContext context;
+
+    /*
+     * Fields that aren't mapped are set to their default value. These are
+     * resolved up front; for fields without a default the value is null
+     * and the field must be mapped.
+     */
+    private final Object[] defaultValues;
+    private final boolean[] defaultValueIsMutable;
 
     public DslRecordMapper(final ValidatedConfiguration vc, final String groovyFile, final Schema schema, final Optional<LookupService> geoipService) {
         this.schema = Objects.requireNonNull(schema);
@@ -54,7 +63,7 @@ public class DslRecordMapper {
         logger.info("Using mapping from script file: {}", groovyFile);
 
         try {
-            final DslRecordMapping mapping = new DslRecordMapping(schema, new UserAgentParserAndCache(vc), geoipService);
+            final DslRecordMapping mapping = new DslRecordMapping(schema, UserAgentParserAndCache.forConfiguration(vc), geoipService);
 
             final GroovyCodeSource groovySource = new GroovyCodeSource(new File(groovyFile), StandardCharsets.UTF_8.name());
 
@@ -66,26 +75,76 @@ public class DslRecordMapper {
 
             final GroovyShell shell = new GroovyShell(binding, compilerConfig);
             shell.evaluate(groovySource);
-            actions = mapping.actions();
+            actions = compile(mapping);
+            context = mapping.newContext();
         } catch (final IOException e) {
             throw new UncheckedIOException("Could not load mapping script file: " + groovyFile, e);
         }
+        defaultValues = defaultValues(schema);
+        defaultValueIsMutable = defaultValueIsMutable(defaultValues);
     }
 
     public DslRecordMapper(final Schema schema, final DslRecordMapping mapping) {
         this.schema = schema;
-        actions = mapping.actions();
+        actions = compile(mapping);
+        context = mapping.newContext();
+        defaultValues = defaultValues(schema);
+        defaultValueIsMutable = defaultValueIsMutable(defaultValues);
+    }
+
+    private static MappingAction[] compile(final DslRecordMapping mapping) {
+        return mapping.actions().toArray(new MappingAction[0]);
+    }
+
+    private static Object[] defaultValues(final Schema schema) {
+        final GenericData data = GenericData.get();
+        return schema.getFields()
+                     .stream()
+                     .map(field -> null != field.defaultVal() ? data.getDefaultValue(field) : null)
+                     .toArray();
+    }
+
+    private static boolean[] defaultValueIsMutable(final Object[] defaultValues) {
+        final boolean[] result = new boolean[defaultValues.length];
+        for (int i = 0; i < defaultValues.length; ++i) {
+            final Object value = defaultValues[i];
+            result[i] = null != value && !(value instanceof Boolean || value instanceof Number);
+        }
+        return result;
     }
 
     public GenericRecord newRecordFromExchange(final DivolteEvent event) {
-        final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-        final Map<String,Optional<?>> context = Maps.newHashMapWithExpectedSize(20);
+        return newRecordFromExchange(event, false);
+    }
+
+    public GenericRecord newRecordFromExchange(final DivolteEvent event, final boolean duplicate) {
+        final GenericData.Record record = new GenericData.Record(schema);
+        context.reset();
+        context.setDuplicate(duplicate);
 
-        for (final Iterator<MappingAction> itr = actions.iterator();
-             itr.hasNext() && itr.next().perform(event, context, builder) == MappingResult.CONTINUE;) {
+        for (int i = 0;
+             i < actions.length && actions[i].perform(event, context, record) == MappingResult.CONTINUE;
+             ++i) {
             // Nothing needed in here.
         }
 
-        return builder.build();
+        applyDefaults(record);
+        return record;
+    }
+
+    private void applyDefaults(final GenericData.Record record) {
+        // Mapped values are never null, so anything still null was not mapped.
+        for (int i = 0; i < defaultValues.length; ++i) {
+            if (null == record.get(i)) {
+                final Object defaultValue = defaultValues[i];
+                if (null != defaultValue) {
+                    record.put(i, defaultValueIsMutable[i]
+                            ? GenericData.get().deepCopy(schema.getFields().get(i).schema(), defaultValue)
+                            : defaultValue);
+                } else if (null == schema.getFields().get(i).defaultVal()) {
+                    throw new AvroRuntimeException("Field " + schema.getFields().get(i) + " not set and has no default value");
+                }
+            }
+        }
     }
 }
@@ -43,7 +43,7 @@ import net.sf.uadetector.ReadableUserAgent;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
-import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,12 +57,13 @@ import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static io.divolte.server.IncomingRequestProcessor.DUPLICATE_EVENT_KEY;
 
 @ParametersAreNonnullByDefault
 @NotThreadSafe
@@ -89,6 +90,8 @@ public final class DslRecordMapping {
     private final UserAgentParserAndCache uaParser;
     private final Optional<LookupService> geoIpService;
     private final AvroGenericRecordMapper jsonMapper = JacksonSupport.createAvroMapper();
+    // Slots for memoized values, shared by the contexts of all mappers using this mapping.
+    private final Map<String,Integer> memoizationSlots = new HashMap<>();
 
     public DslRecordMapping(final Schema schema, final UserAgentParserAndCache uaParser, final Optional<LookupService> geoIpService) {
         this.schema = Objects.requireNonNull(schema);
@@ -112,10 +115,12 @@ public final class DslRecordMapping {
             throw new SchemaMappingException("Cannot map the result of %s onto field %s: %s",
                                              producer.identifier, fieldName, validationError.get().message);
         }
+        final int position = field.pos();
+        final Schema fieldSchema = field.schema();
         stack.getLast().add((e,c,r) -> {
             producer.produce(e,c)
-                    .flatMap(v -> producer.mapToGenericRecord(v, field.schema()))
-                    .ifPresent(v -> r.set(field, v));
+                    .flatMap(v -> producer.mapToGenericRecord(v, fieldSchema))
+                    .ifPresent(v -> r.put(position, v));
             return MappingAction.MappingResult.CONTINUE;
         });
     }
@@ -135,8 +140,9 @@ public final class DslRecordMapping {
             throw new SchemaMappingException("Type mismatch. Cannot map literal %s of type %s onto a field of type %s (type of value and schema of field do not match).", literal.toString(), literal.getClass(), field.schema());
         }
 
+        final int position = field.pos();
         stack.getLast().add((e,c,r) -> {
-            r.set(field, literal);
+            r.put(position, literal);
             return MappingAction.MappingResult.CONTINUE;
         });
     }
@@ -148,7 +154,7 @@ public final class DslRecordMapping {
         stack.add(ImmutableList.builder());
         closure.run();
 
-        final List<MappingAction> actions = stack.removeLast().build();
+        final MappingAction[] actions = stack.removeLast().build().toArray(new MappingAction[0]);
         stack.getLast().add((e,c,r) -> {
            if (condition.produce(e, c).orElse(false)) {
                for (final MappingAction action : actions) {
@@ -169,7 +175,7 @@ public final class DslRecordMapping {
         stack.add(ImmutableList.builder());
         closure.run();
 
-        final List<MappingAction> actions = stack.removeLast().build();
+        final MappingAction[] actions = stack.removeLast().build().toArray(new MappingAction[0]);
         stack.getLast().add((e,c,r) -> {
            for (final MappingAction action : actions) {
                switch (action.perform(e, c, r)) {
@@ -209,6 +215,13 @@ public final class DslRecordMapping {
         return stack.getLast().build();
     }
 
+    /*
+     * A new context for evaluating the mapping actions, which can be reused between events.
+     */
+    MappingContext newContext() {
+        return new MappingContext(memoizationSlots);
+    }
+
     /*
      * Casting and conversion
      */
@@ -270,7 +283,7 @@ public final class DslRecordMapping {
     }
 
     public BooleanValueProducer duplicate() {
-        return new BooleanValueProducer("duplicate()", (e,c) -> Optional.ofNullable(e.exchange.getAttachment(DUPLICATE_EVENT_KEY)));
+        return new BooleanValueProducer("duplicate()", (e,c) -> Optional.of(c.isDuplicate()));
     }
 
     public ValueProducer<Long> timestamp() {
@@ -412,16 +425,104 @@ public final class DslRecordMapping {
     }
 
     public final static class MatcherValueProducer extends ValueProducer<Matcher> {
+        private final ValueProducer<String> source;
+        private final Optional<Predicate<String>> literalMatcher;
+
         MatcherValueProducer(final ValueProducer<String> source, final String regex) {
+            this(source, regex, compilePattern(regex));
+        }
+
+        private MatcherValueProducer(final ValueProducer<String> source, final String regex, final Pattern pattern) {
             super("match(" + regex + " against " + source.identifier + ")",
                   Matcher.class,
-                  (e, c) -> source.produce(e, c).map((s) -> Pattern.compile(regex).matcher(s)),
+                  (e, c) -> source.produce(e, c).map(pattern::matcher),
                   true);
+            this.source = source;
+            this.literalMatcher = literalMatcher(regex);
+        }
+
+        private static Pattern compilePattern(final String regex) {
+            try {
+                return Pattern.compile(regex);
+            } catch (final PatternSyntaxException e) {
+                final SchemaMappingException exception = new SchemaMappingException("Invalid regular expression: %s", regex);
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+
+        /*
+         * Many expressions in mappings only check for a literal prefix, suffix or
+         * value. For these we can determine whether there is a match without
+         * involving the regular expression engine.
+         */
+        private static Optional<Predicate<String>> literalMatcher(final String regex) {
+            final int start = regex.startsWith("^") ? 1 : 0;
+            final int end = regex.endsWith("$") && !isEscaped(regex, regex.length() - 1) ? regex.length() - 1 : regex.length();
+            if (end < start) {
+                return Optional.empty();
+            }
+            final String body = regex.substring(start, end);
+            final Optional<Predicate<String>> result;
+            if (body.endsWith(".*") && !isEscaped(body, body.length() - 2)) {
+                result = unescapeLiteral(body.substring(0, body.length() - 2))
+                    .map(prefix -> s -> s.startsWith(prefix) && !containsLineTerminator(s, prefix.length(), s.length()));
+            } else if (body.startsWith(".*")) {
+                result = unescapeLiteral(body.substring(2))
+                    .map(suffix -> s -> s.endsWith(suffix) && !containsLineTerminator(s, 0, s.length() - suffix.length()));
+            } else {
+                result = unescapeLiteral(body).map(literal -> literal::equals);
+            }
+            return result;
+        }
+
+        private static boolean isEscaped(final String regex, final int index) {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; --i) {
+                ++backslashes;
+            }
+            return backslashes % 2 == 1;
+        }
+
+        private static Optional<String> unescapeLiteral(final String regex) {
+            final StringBuilder literal = new StringBuilder(regex.length());
+            for (int i = 0; i < regex.length(); ++i) {
+                final char c = regex.charAt(i);
+                if (c == '\\') {
+                    // Only escaped punctuation is literal; things like \d or \Q are not.
+                    if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+                        return Optional.empty();
+                    }
+                    literal.append(regex.charAt(i));
+                } else if ("[](){}.*+?^$|".indexOf(c) != -1) {
+                    return Optional.empty();
+                } else {
+                    literal.append(c);
+                }
+            }
+            return Optional.of(literal.toString());
+        }
+
+        // These are the characters that '.' does not match by default.
+        private static boolean containsLineTerminator(final String s, final int from, final int to) {
+            for (int i = from; i < to; ++i) {
+                switch (s.charAt(i)) {
+                    case '\n':
+                    case '\r':
+                    case '\u0085':
+                    case '\u2028':
+                    case '\u2029':
+                        return true;
+                }
+            }
+            return false;
         }
 
         public BooleanValueProducer matches() {
             return new BooleanValueProducer(identifier + ".matches()",
-                                            (e,c) -> produce(e, c).map(Matcher::matches));
+                                            literalMatcher.<FieldSupplier<Boolean>>map(
+                                                predicate -> (e,c) -> source.produce(e, c).map(predicate::test))
+                                                          .orElse((e,c) -> produce(e, c).map(Matcher::matches)));
         }
 
         // Note: matches() must be called on a Matcher prior to calling group
@@ -1025,13 +1126,16 @@ public final class DslRecordMapping {
 
         protected interface FieldSupplier<T> {
             Optional<T> apply(DivolteEvent eventData,
-                              Map<String,Optional<?>> context);
+                              MappingContext context);
         }
 
         protected final String identifier;
         public final TypeToken<T> producerType;
         private final FieldSupplier<T> supplier;
         private final boolean memoize;
+        // The slot for memoizing the value, valid for the slot assignments it was resolved against.
+        private Object memoizationSlotAssignments;
+        private int memoizationSlot;
 
         ValueProducer(final String identifier, final TypeToken<T> producerType, final FieldSupplier<T> supplier, final boolean memoize) {
             this.identifier   = Objects.requireNonNull(identifier);
@@ -1046,19 +1150,18 @@ public final class DslRecordMapping {
 
         @SuppressWarnings("unchecked")
         final Optional<T> produce(final DivolteEvent divolteEvent,
-                                  final Map<String,Optional<?>> context) {
+                                  final MappingContext context) {
             final Optional<T> result;
             if (memoize) {
-                // We can't use context.computeIfAbsent(): in Java 9 they've made it clear that the supplier
-                // isn't allowed to modify the mapping being modified, and doing so will (often) throw
-                // ConcurrentModificationException.
-                // This makes memoization slightly more expensive since the first reference will incur an extra
-                // lookup (for the put).
+                if (memoizationSlotAssignments != context.slotAssignments()) {
+                    memoizationSlot = context.slot(identifier);
+                    memoizationSlotAssignments = context.slotAssignments();
+                }
                 // Note that recursive producers will trigger an infinite loop.
-                final Optional<?> candidate = context.get(identifier);
+                final Optional<?> candidate = context.get(memoizationSlot);
                 if (null == candidate) {
                     result = supplier.apply(divolteEvent, context);
-                    context.put(identifier, result);
+                    context.put(memoizationSlot, result);
                 } else {
                     result = (Optional<T>) candidate;
                 }
@@ -1229,7 +1332,7 @@ public final class DslRecordMapping {
             STOP, EXIT, CONTINUE
         }
         MappingResult perform(DivolteEvent divolteEvent,
-                              Map<String,Optional<?>> context,
-                              GenericRecordBuilder record);
+                              MappingContext context,
+                              GenericData.Record record);
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Finds which of a fixed set of literals occur in a text, in a single pass over the text.
+ * <p>
+ * This is an Aho-Corasick automaton: the literals are compiled into a trie with failure
+ * links, so the cost of matching is proportional to the length of the text and does not
+ * depend on the number of literals. Matching is ASCII case-insensitive; the literals
+ * must be supplied in lower case.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class LiteralMatcher {
+    private static final int ROOT = 0;
+
+    private final int literalCount;
+    // For each state, the characters with a transition (sorted) and the target states.
+    private final char[][] transitionCharacters;
+    private final int[][] transitionTargets;
+    private final int[] failures;
+    // For each state, the literals that end there (including those via the failure links).
+    private final int[][] outputs;
+
+    LiteralMatcher(final List<String> literals) {
+        literalCount = literals.size();
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<List<Integer>> stateOutputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        stateOutputs.add(new ArrayList<>());
+        for (int i = 0; i < literals.size(); ++i) {
+            int state = ROOT;
+            for (final char c : literals.get(i).toCharArray()) {
+                final Integer next = trie.get(state).get(c);
+                if (null == next) {
+                    trie.get(state).put(c, trie.size());
+                    state = trie.size();
+                    trie.add(new TreeMap<>());
+                    stateOutputs.add(new ArrayList<>());
+                } else {
+                    state = next;
+                }
+            }
+            stateOutputs.get(state).add(i);
+        }
+
+        final int stateCount = trie.size();
+        transitionCharacters = new char[stateCount][];
+        transitionTargets = new int[stateCount][];
+        for (int state = 0; state < stateCount; ++state) {
+            final Map<Character, Integer> transitions = trie.get(state);
+            transitionCharacters[state] = new char[transitions.size()];
+            transitionTargets[state] = new int[transitions.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                transitionCharacters[state][i] = transition.getKey();
+                transitionTargets[state][i] = transition.getValue();
+                ++i;
+            }
+        }
+
+        // Failure links are calculated breadth-first, so that the failure state of a
+        // state's parent is always complete before the state itself is processed.
+        failures = new int[stateCount];
+        outputs = new int[stateCount][];
+        outputs[ROOT] = new int[0];
+        final Deque<Integer> pending = new ArrayDeque<>();
+        for (final int child : transitionTargets[ROOT]) {
+            failures[child] = ROOT;
+            outputs[child] = toArray(stateOutputs.get(child));
+            pending.add(child);
+        }
+        while (!pending.isEmpty()) {
+            final int state = pending.remove();
+            for (int i = 0; i < transitionCharacters[state].length; ++i) {
+                final char c = transitionCharacters[state][i];
+                final int child = transitionTargets[state][i];
+                int failure = failures[state];
+                while (ROOT != failure && 0 > transition(failure, c)) {
+                    failure = failures[failure];
+                }
+                final int failureTarget = transition(failure, c);
+                failures[child] = 0 > failureTarget ? ROOT : failureTarget;
+                final List<Integer> childOutputs = new ArrayList<>(stateOutputs.get(child));
+                for (final int output : outputs[failures[child]]) {
+                    childOutputs.add(output);
+                }
+                outputs[child] = toArray(childOutputs);
+                pending.add(child);
+            }
+        }
+    }
+
+    private static int[] toArray(final List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int transition(final int state, final char c) {
+        final int index = Arrays.binarySearch(transitionCharacters[state], c);
+        return 0 > index ? -1 : transitionTargets[state][index];
+    }
+
+    /**
+     * Find the literals that occur in a text.
+     *
+     * @param text the text to search.
+     * @return the indexes (into the list supplied on construction) of the literals that occur.
+     */
+    BitSet find(final CharSequence text) {
+        final BitSet found = new BitSet(literalCount);
+        int state = ROOT;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = toLowerCase(text.charAt(i));
+            int next = transition(state, c);
+            while (0 > next && ROOT != state) {
+                state = failures[state];
+                next = transition(state, c);
+            }
+            state = 0 > next ? ROOT : next;
+            for (final int output : outputs[state]) {
+                found.set(output);
+            }
+        }
+        return found;
+    }
+
+    static char toLowerCase(final char c) {
+        // Only ASCII, to match the case-insensitive matching of regular expressions.
+        return 'A' <= c && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
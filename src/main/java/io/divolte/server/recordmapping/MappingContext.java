@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-event state while mapping, holding the values of memoized producers.
+ * <p>
+ * Each memoized producer is assigned an integer slot, keyed on its identifier so
+ * that equivalent producers share their value. The slot is resolved once and
+ * cached by the producer, after which memoization is a plain array access. A
+ * context is reused between events; {@link #reset()} must be called before
+ * each event is mapped.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+final class MappingContext {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String,Integer> slotsByIdentifier;
+    private Optional<?>[] values;
+    private int highWaterMark;
+    // A property of the event rather than the request: a request can carry several events.
+    private boolean duplicate;
+
+    MappingContext() {
+        this(new HashMap<>());
+    }
+
+    MappingContext(final Map<String,Integer> slotsByIdentifier) {
+        this.slotsByIdentifier = slotsByIdentifier;
+        values = new Optional<?>[Math.max(INITIAL_CAPACITY, slotsByIdentifier.size())];
+    }
+
+    /*
+     * The slot assignments, which producers use to check whether a slot they
+     * have cached is valid for this context.
+     */
+    Object slotAssignments() {
+        return slotsByIdentifier;
+    }
+
+    int slot(final String identifier) {
+        return slotsByIdentifier.computeIfAbsent(identifier, ignored -> slotsByIdentifier.size());
+    }
+
+    Optional<?> get(final int slot) {
+        return slot < highWaterMark ? values[slot] : null;
+    }
+
+    void put(final int slot, final Optional<?> value) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+        }
+        values[slot] = value;
+        highWaterMark = Math.max(highWaterMark, slot + 1);
+    }
+
+    void reset() {
+        Arrays.fill(values, 0, highWaterMark, null);
+        highWaterMark = 0;
+        duplicate = false;
+    }
+
+    boolean isDuplicate() {
+        return duplicate;
+    }
+
+    void setDuplicate(final boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Strings;
+
+import net.sf.uadetector.DeviceCategory;
+import net.sf.uadetector.ReadableDeviceCategory.Category;
+import net.sf.uadetector.ReadableUserAgent;
+import net.sf.uadetector.UserAgent;
+import net.sf.uadetector.UserAgentStringParser;
+import net.sf.uadetector.UserAgentType;
+import net.sf.uadetector.VersionNumber;
+import net.sf.uadetector.internal.data.Data;
+import net.sf.uadetector.internal.data.domain.Browser;
+import net.sf.uadetector.internal.data.domain.BrowserPattern;
+import net.sf.uadetector.internal.data.domain.Device;
+import net.sf.uadetector.internal.data.domain.DevicePattern;
+import net.sf.uadetector.internal.data.domain.OperatingSystem;
+import net.sf.uadetector.internal.data.domain.OperatingSystemPattern;
+import net.sf.uadetector.internal.data.domain.Robot;
+import net.sf.uadetector.parser.UserAgentStringParserImpl;
+import net.sf.uadetector.service.UADetectorServiceFactory;
+
+/**
+ * A user agent parser that produces the same results as the UADetector parsers, but
+ * precompiles the user agent database so that parsing a user agent is cheaper.
+ * <p>
+ * UADetector tries the regular expressions in its database one at a time until one of them
+ * matches. Most user agents only match late in the list, so parsing involves thousands of
+ * regular expression evaluations. This parser instead extracts from each regular expression
+ * a literal that any match must contain. All the literals are searched for in a single pass
+ * over the user agent, after which only the regular expressions whose literal occurs need to
+ * be evaluated. These are still evaluated in the original order, so the first match is the
+ * same. Robots are identified by their exact user agent, and are looked up directly.
+ * <p>
+ * The database is the one from the UADetector resource module; it does not update.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class PrecompiledUserAgentStringParser implements UserAgentStringParser {
+    private final String dataVersion;
+    private final Map<String, Robot> robotsByUserAgent;
+    private final LiteralMatcher literalMatcher;
+    private final PatternIndex<Browser> browsers;
+    private final PatternIndex<OperatingSystem> operatingSystems;
+    private final PatternIndex<Device> devices;
+    private final Map<Category, DeviceCategory> deviceCategories;
+
+    PrecompiledUserAgentStringParser(final Data data) {
+        dataVersion = data.getVersion();
+
+        final Map<String, Robot> robots = new HashMap<>();
+        // The first robot with a given user agent is the one that matches.
+        data.getRobots().forEach(robot -> robots.putIfAbsent(robot.getUserAgentString(), robot));
+        robotsByUserAgent = robots;
+
+        final Map<String, Integer> literals = new LinkedHashMap<>();
+        browsers = new PatternIndex<>(data.getPatternToBrowserMap(), BrowserPattern::getPattern, literals);
+        operatingSystems = new PatternIndex<>(data.getPatternToOperatingSystemMap(), OperatingSystemPattern::getPattern, literals);
+        devices = new PatternIndex<>(data.getPatternToDeviceMap(), DevicePattern::getPattern, literals);
+        literalMatcher = new LiteralMatcher(new ArrayList<>(literals.keySet()));
+
+        final Map<Category, DeviceCategory> categories = new EnumMap<>(Category.class);
+        for (final Device device : data.getDevices()) {
+            final Category category = Category.evaluate(device.getName());
+            categories.putIfAbsent(category, new DeviceCategory(category, device.getIcon(), device.getInfoUrl(), device.getName()));
+        }
+        deviceCategories = categories;
+    }
+
+    /**
+     * Obtain the parser for the database from the UADetector resource module. The database
+     * is only precompiled once.
+     *
+     * @return the parser.
+     */
+    static PrecompiledUserAgentStringParser getInstance() {
+        return ResourceModuleParserHolder.INSTANCE;
+    }
+
+    private static final class ResourceModuleParserHolder {
+        private static final PrecompiledUserAgentStringParser INSTANCE =
+                new PrecompiledUserAgentStringParser(resourceModuleData());
+
+        private static Data resourceModuleData() {
+            final UserAgentStringParser parser = UADetectorServiceFactory.getResourceModuleParser();
+            if (!(parser instanceof UserAgentStringParserImpl)) {
+                throw new IllegalStateException("Cannot obtain the user agent database from: " + parser.getClass());
+            }
+            return ((UserAgentStringParserImpl<?>) parser).getDataStore().getData();
+        }
+    }
+
+    @Override
+    public String getDataVersion() {
+        return dataVersion;
+    }
+
+    @Override
+    public ReadableUserAgent parse(final String userAgent) {
+        final UserAgent.Builder builder = new UserAgent.Builder(userAgent);
+        final BitSet literalsPresent = literalMatcher.find(userAgent);
+
+        // The steps below mirror those of the UADetector parsers.
+        final Robot robot = robotsByUserAgent.get(userAgent);
+        if (null != robot) {
+            robot.copyTo(builder);
+            builder.setVersionNumber(VersionNumber.parseLastVersionNumber(robot.getName()));
+        } else {
+            final Match<Browser> match = browsers.firstMatch(userAgent, literalsPresent);
+            if (null != match) {
+                match.value.copyTo(builder);
+                builder.setVersionNumber(0 < match.matcher.groupCount()
+                                         ? VersionNumber.parseVersion(Strings.nullToEmpty(match.matcher.group(1)))
+                                         : VersionNumber.UNKNOWN);
+            }
+        }
+
+        if (net.sf.uadetector.OperatingSystem.EMPTY.equals(builder.getOperatingSystem())) {
+            final Match<OperatingSystem> match = operatingSystems.firstMatch(userAgent, literalsPresent);
+            if (null != match) {
+                match.value.copyTo(builder);
+            }
+        }
+
+        builder.setDeviceCategory(deviceCategory(builder.getType(), userAgent, literalsPresent));
+        return builder.build();
+    }
+
+    private DeviceCategory deviceCategory(final UserAgentType type, final String userAgent, final BitSet literalsPresent) {
+        if (UserAgentType.ROBOT == type) {
+            return deviceCategory(Category.OTHER);
+        }
+        final Match<Device> match = devices.firstMatch(userAgent, literalsPresent);
+        if (null != match) {
+            return deviceCategory(Category.evaluate(match.value.getName()));
+        }
+        switch (type) {
+            case UNKNOWN:
+                return DeviceCategory.EMPTY;
+            case OTHER:
+            case LIBRARY:
+            case VALIDATOR:
+            case USERAGENT_ANONYMIZER:
+                return deviceCategory(Category.OTHER);
+            case MOBILE_BROWSER:
+            case WAP_BROWSER:
+                return deviceCategory(Category.SMARTPHONE);
+            default:
+                return deviceCategory(Category.PERSONAL_COMPUTER);
+        }
+    }
+
+    private DeviceCategory deviceCategory(final Category category) {
+        return deviceCategories.getOrDefault(category, DeviceCategory.EMPTY);
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to do: the database never updates.
+    }
+
+    /**
+     * Extract a literal that must occur in any text matched by a regular expression.
+     * <p>
+     * The extraction is conservative: only literal characters outside of groups are
+     * considered, and expressions with top-level alternation or inline flags are
+     * rejected. The literal is returned in lower case, for case-insensitive matching.
+     *
+     * @param pattern the regular expression.
+     * @return the longest literal that could be found, if any.
+     */
+    static Optional<String> requiredLiteral(final Pattern pattern) {
+        if (0 != (pattern.flags() & (Pattern.COMMENTS | Pattern.LITERAL | Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS))) {
+            return Optional.empty();
+        }
+        final String regex = pattern.pattern();
+        final StringBuilder run = new StringBuilder();
+        String longest = "";
+        int depth = 0;
+        for (int i = 0; i < regex.length(); ++i) {
+            final char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (regex.length() == i + 1 || 'Q' == regex.charAt(i + 1)) {
+                        return Optional.empty();
+                    }
+                    final char escaped = regex.charAt(++i);
+                    if (isMultiCharacterEscape(escaped)) {
+                        // Rather than working out where these end, we give up.
+                        return Optional.empty();
+                    }
+                    if (0 == depth && escaped < 0x80 && !Character.isLetterOrDigit(escaped)) {
+                        run.append(escaped);
+                    } else {
+                        longest = longest(longest, run);
+                    }
+                    break;
+                case '[':
+                    longest = longest(longest, run);
+                    i = endOfCharacterClass(regex, i);
+                    break;
+                case '(':
+                    if (regex.length() > i + 1 && '?' == regex.charAt(i + 1)) {
+                        return Optional.empty();
+                    }
+                    longest = longest(longest, run);
+                    ++depth;
+                    break;
+                case ')':
+                    longest = longest(longest, run);
+                    --depth;
+                    break;
+                case '|':
+                    if (0 == depth) {
+                        return Optional.empty();
+                    }
+                    break;
+                case '{':
+                    // The preceding character may be repeated any number of times, including none.
+                    final int end = regex.indexOf('}', i);
+                    i = 0 > end ? regex.length() : end;
+                    longest = longest(longest, dropLast(run));
+                    break;
+                case '?':
+                case '*':
+                    // The preceding character is optional.
+                    longest = longest(longest, dropLast(run));
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    longest = longest(longest, run);
+                    break;
+                default:
+                    if (0 == depth && c < 0x80) {
+                        run.append(LiteralMatcher.toLowerCase(c));
+                    } else {
+                        longest = longest(longest, run);
+                    }
+            }
+        }
+        longest = longest(longest, run);
+        return longest.isEmpty() ? Optional.empty() : Optional.of(longest);
+    }
+
+    private static boolean isMultiCharacterEscape(final char escaped) {
+        switch (escaped) {
+            // Hexadecimal, unicode and control characters, named back-references,
+            // character properties and named characters.
+            case 'x':
+            case 'u':
+            case 'c':
+            case 'k':
+            case 'p':
+            case 'P':
+            case 'N':
+                return true;
+            default:
+                // Octal characters and numbered back-references.
+                return '0' <= escaped && escaped <= '9';
+        }
+    }
+
+    private static String longest(final String longest, final StringBuilder run) {
+        final String result = run.length() > longest.length() ? run.toString() : longest;
+        run.setLength(0);
+        return result;
+    }
+
+    private static StringBuilder dropLast(final StringBuilder run) {
+        if (0 < run.length()) {
+            run.setLength(run.length() - 1);
+        }
+        return run;
+    }
+
+    private static int endOfCharacterClass(final String regex, final int start) {
+        int i = start + 1;
+        if (regex.length() > i && '^' == regex.charAt(i)) {
+            ++i;
+        }
+        if (regex.length() > i && ']' == regex.charAt(i)) {
+            ++i;
+        }
+        int depth = 1;
+        for (; i < regex.length(); ++i) {
+            switch (regex.charAt(i)) {
+                case '\\':
+                    ++i;
+                    break;
+                case '[':
+                    ++depth;
+                    break;
+                case ']':
+                    if (0 == --depth) {
+                        return i;
+                    }
+                    break;
+                default:
+            }
+        }
+        return i;
+    }
+
+    private static final class Match<T> {
+        final T value;
+        final Matcher matcher;
+
+        Match(final T value, final Matcher matcher) {
+            this.value = value;
+            this.matcher = matcher;
+        }
+    }
+
+    private static final class PatternIndex<T> {
+        private final Pattern[] patterns;
+        private final List<T> values;
+        // The literal that must be present for each pattern to match, or -1 if there isn't one.
+        private final int[] literals;
+
+        <P> PatternIndex(final SortedMap<P, T> patternToValue,
+                         final Function<P, Pattern> patternOf,
+                         final Map<String, Integer> literalIndex) {
+            patterns = new Pattern[patternToValue.size()];
+            values = new ArrayList<>(patternToValue.size());
+            literals = new int[patternToValue.size()];
+            int i = 0;
+            for (final Map.Entry<P, T> entry : patternToValue.entrySet()) {
+                patterns[i] = patternOf.apply(entry.getKey());
+                values.add(entry.getValue());
+                literals[i] = requiredLiteral(patterns[i])
+                        .map(literal -> literalIndex.computeIfAbsent(literal, l -> literalIndex.size()))
+                        .orElse(-1);
+                ++i;
+            }
+        }
+
+        @Nullable
+        Match<T> firstMatch(final String userAgent, final BitSet literalsPresent) {
+            for (int i = 0; i < patterns.length; ++i) {
+                if (0 <= literals[i] && !literalsPresent.get(literals[i])) {
+                    continue;
+                }
+                final Matcher matcher = patterns[i].matcher(userAgent);
+                if (matcher.find()) {
+                    return new Match<>(values.get(i), matcher);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+/**
+ * Management interface for monitoring the cache of parsed user agents.
+ */
+public interface UserAgentCacheMXBean {
+    /** @return the number of user agents that were found in the cache. */
+    long getHits();
+    /** @return the number of user agents that had to be parsed because they were not cached. */
+    long getMisses();
+    /** @return the fraction of lookups satisfied by the cache, or 1 if there were none. */
+    double getHitRate();
+    /** @return the number of parsed user agents that were evicted from the cache. */
+    long getEvictions();
+    /** @return the approximate number of parsed user agents currently cached. */
+    long getSize();
+}
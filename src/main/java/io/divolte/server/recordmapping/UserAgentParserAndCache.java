@@ -19,9 +19,10 @@ package io.divolte.server.recordmapping;
 import io.divolte.server.config.UserAgentParserConfiguration;
 import io.divolte.server.config.ValidatedConfiguration;
 
+import java.lang.management.ManagementFactory;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.uadetector.ReadableUserAgent;
 import net.sf.uadetector.UserAgentStringParser;
@@ -30,34 +31,112 @@ import net.sf.uadetector.service.UADetectorServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
+/**
+ * Parses user agent strings, caching the results.
+ * <p>
+ * A single instance is shared by all mappings that use the same parser configuration,
+ * so that the cache warms up once for the whole process instead of once per mapping on
+ * each processing thread. Statistics are available via JMX so that the effectiveness of
+ * the cache can be measured.
+ */
+@ThreadSafe
 @ParametersAreNonnullByDefault
-public final class UserAgentParserAndCache {
+public final class UserAgentParserAndCache implements UserAgentCacheMXBean {
     private final static Logger logger = LoggerFactory.getLogger(UserAgentParserAndCache.class);
 
+    private static final ConcurrentMap<UserAgentParserConfiguration, UserAgentParserAndCache> sharedInstances =
+            new ConcurrentHashMap<>();
+
     private final LoadingCache<String,ReadableUserAgent> cache;
 
-    public UserAgentParserAndCache(final ValidatedConfiguration vc) {
-        final UserAgentStringParser parser = parserBasedOnTypeConfig(vc.configuration().global.mapper.userAgentParser.type);
-        this.cache = sizeBoundCacheFromLoadingFunction(parser::parse, vc.configuration().global.mapper.userAgentParser.cacheSize);
+    UserAgentParserAndCache(final UserAgentParserConfiguration configuration) {
+        final UserAgentStringParser parser = parserBasedOnTypeConfig(configuration.type);
+        // Caffeine's admission policy keeps popular user agents cached even when a
+        // burst of one-off user agents passes through.
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(configuration.cacheSize)
+                             .initialCapacity(configuration.cacheSize)
+                             .recordStats()
+                             .build(parser::parse);
         logger.info("User agent parser data version: {}", parser.getDataVersion());
     }
 
+    /**
+     * Obtain the parser and cache for a configuration. Instances are shared process-wide
+     * by all callers with an equivalent user agent parser configuration.
+     *
+     * @param vc the validated configuration.
+     * @return the shared parser and cache.
+     */
+    public static UserAgentParserAndCache forConfiguration(final ValidatedConfiguration vc) {
+        return sharedInstances.computeIfAbsent(vc.configuration().global.mapper.userAgentParser, configuration -> {
+            final UserAgentParserAndCache parserAndCache = new UserAgentParserAndCache(configuration);
+            parserAndCache.register();
+            return parserAndCache;
+        });
+    }
+
+    private void register() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName("io.divolte.server:type=UserAgentCache");
+            try {
+                mBeanServer.registerMBean(this, name);
+            } catch (final InstanceAlreadyExistsException e) {
+                // A different parser configuration within the same JVM; the newest wins.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(this, name);
+            }
+        } catch (final JMException e) {
+            logger.warn("Could not register user agent cache statistics.", e);
+        }
+    }
+
     public Optional<ReadableUserAgent> tryParse(final String userAgentString) {
         try {
-            return Optional.of(cache.get(userAgentString));
-        } catch (final ExecutionException e) {
+            return Optional.ofNullable(cache.get(userAgentString));
+        } catch (final RuntimeException e) {
             logger.debug("Failed to parse user agent string for: " + userAgentString);
             return Optional.empty();
         }
     }
 
-    private static UserAgentStringParser parserBasedOnTypeConfig(UserAgentParserConfiguration.ParserType type) {
+    @Override
+    public long getHits() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMisses() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictions() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    static UserAgentStringParser parserBasedOnTypeConfig(final UserAgentParserConfiguration.ParserType type) {
         switch (type) {
         case CACHING_AND_UPDATING:
             logger.info("Using caching and updating user agent parser.");
@@ -68,21 +147,11 @@ public final class UserAgentParserAndCache {
         case NON_UPDATING:
             logger.info("Using non-updating (resource module based) user agent parser.");
             return UADetectorServiceFactory.getResourceModuleParser();
+        case PRECOMPILED:
+            logger.info("Using precompiled (resource module based) user agent parser.");
+            return PrecompiledUserAgentStringParser.getInstance();
         default:
-            throw new IllegalArgumentException("Invalid user agent parser type. Valid values are: caching_and_updating, online_updating, non_updating.");
+            throw new IllegalArgumentException("Invalid user agent parser type. Valid values are: caching_and_updating, online_updating, non_updating, precompiled.");
         }
     }
-
-    private static <K,V> LoadingCache<K, V> sizeBoundCacheFromLoadingFunction(Function<K, V> loader, int size) {
-        return CacheBuilder
-                .newBuilder()
-                .maximumSize(size)
-                .initialCapacity(size)
-                .build(new CacheLoader<K, V>() {
-                    @Override
-                    public V load(K key) throws Exception {
-                        return loader.apply(key);
-                    }
-                });
-    }
 }
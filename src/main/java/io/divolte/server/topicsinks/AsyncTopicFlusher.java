@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.processing.Item;
+import io.divolte.server.processing.ItemProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.PAUSE;
+
+/**
+ * A topic flusher that sends messages asynchronously, without waiting for each batch to be
+ * acknowledged.
+ * <p>
+ * Unlike {@link TopicFlusher} the outcome of each send is handled by a callback. Messages that
+ * fail with an error that may be transient are queued and sent again.
+ * <p>
+ * The number of messages that have been sent but not yet acknowledged is bounded by a window
+ * shared with the other flushers of the sink. While the window is full, or messages are waiting
+ * to be retried, processing is paused so that back-pressure reaches the queue feeding this
+ * flusher.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public abstract class AsyncTopicFlusher<T> implements ItemProcessor<AvroRecordBuffer> {
+    private final static Logger logger = LoggerFactory.getLogger(AsyncTopicFlusher.class);
+
+    private final Semaphore inFlightWindow;
+    // Added to by the callbacks of the sink, and drained by this flusher's thread.
+    private final Queue<T> retries = new ConcurrentLinkedQueue<>();
+
+    protected AsyncTopicFlusher(final Semaphore inFlightWindow) {
+        this.inFlightWindow = Objects.requireNonNull(inFlightWindow);
+    }
+
+    @Override
+    public final ProcessingDirective process(final Item<AvroRecordBuffer> item) {
+        final T record = buildRecord(item);
+        if (!sendRetries() || !inFlightWindow.tryAcquire()) {
+            // The item has already been removed from its queue, so hold on to it ourselves.
+            retries.add(record);
+            return PAUSE;
+        }
+        send(record);
+        return CONTINUE;
+    }
+
+    @Override
+    public final ProcessingDirective process(final Queue<Item<AvroRecordBuffer>> batch) {
+        if (!sendRetries()) {
+            return PAUSE;
+        }
+        while (!batch.isEmpty()) {
+            if (!inFlightWindow.tryAcquire()) {
+                // The window is full; the rest of the batch stays queued until there's room.
+                logger.debug("In-flight window is full; pausing with {} event(s) in the batch.", batch.size());
+                return PAUSE;
+            }
+            send(buildRecord(batch.remove()));
+        }
+        return CONTINUE;
+    }
+
+    @Override
+    public final ProcessingDirective heartbeat() {
+        return sendRetries() ? CONTINUE : PAUSE;
+    }
+
+    /*
+     * Send any messages that are waiting to be retried, for as long as the window allows.
+     * Returns whether there are no messages left waiting.
+     */
+    private boolean sendRetries() {
+        T record;
+        while (null != (record = retries.peek())) {
+            if (!inFlightWindow.tryAcquire()) {
+                return false;
+            }
+            retries.remove();
+            logger.debug("Re-sending event ({}) that previously failed.", describeRecord(record));
+            send(record);
+        }
+        return true;
+    }
+
+    /*
+     * Send a message. The caller must have acquired a permit from the window, which is
+     * released when the outcome is known.
+     */
+    private void send(final T record) {
+        try {
+            sendAsync(record, new SendCallback() {
+                @Override
+                public void onSuccess() {
+                    inFlightWindow.release();
+                }
+
+                @Override
+                public void onFailure(final Throwable cause) {
+                    inFlightWindow.release();
+                    if (isRetryable(cause)) {
+                        // A retry may succeed.
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Transient error sending event (" + describeRecord(record) + "). Will retry.", cause);
+                        }
+                        retries.add(record);
+                    } else {
+                        // Fatal error.
+                        logger.error("Error sending event (" + describeRecord(record) + "); abandoning.", cause);
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            // The callback will not be invoked.
+            inFlightWindow.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public final void cleanup() {
+        if (!retries.isEmpty()) {
+            logger.warn("Abandoning {} event(s) that could not be sent.", retries.size());
+        }
+    }
+
+    protected abstract T buildRecord(final Item<AvroRecordBuffer> item);
+
+    /**
+     * Start sending a message. Unless this throws, the callback must eventually be invoked
+     * exactly once with the outcome, possibly from another thread.
+     */
+    protected abstract void sendAsync(final T record, final SendCallback callback);
+
+    /**
+     * Whether a failure to send a message may be transient, so that sending it again may succeed.
+     */
+    protected abstract boolean isRetryable(final Throwable cause);
+
+    /**
+     * Identify a message in log messages.
+     */
+    protected abstract String describeRecord(final T record);
+
+    protected interface SendCallback {
+        void onSuccess();
+        void onFailure(final Throwable cause);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import io.divolte.server.DivolteIdentifier;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A sealed envelope: several events encoded together as an Avro object container.
+ */
+@ParametersAreNonnullByDefault
+public final class Envelope {
+    /** The party identifier of the first event in the envelope. */
+    public final DivolteIdentifier partyId;
+    /** The timestamp of the first event in the envelope. */
+    public final Instant timestamp;
+    public final int eventCount;
+
+    private final byte[] bytes;
+
+    Envelope(final DivolteIdentifier partyId, final Instant timestamp, final int eventCount, final byte[] bytes) {
+        this.partyId = Objects.requireNonNull(partyId);
+        this.timestamp = Objects.requireNonNull(timestamp);
+        this.eventCount = eventCount;
+        this.bytes = Objects.requireNonNull(bytes);
+    }
+
+    /**
+     * Obtain the encoded envelope as a byte array.
+     * <p>
+     * The internal array is returned instead of a copy: callers must not modify it.
+     *
+     * @return an array containing the Avro object container.
+     */
+    public byte[] toBytes() {
+        return bytes;
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return "Envelope[partyId=" + partyId + ", timestamp=" + timestamp + ", eventCount=" + eventCount + ", size=" + bytes.length + ']';
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteSchema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Accumulates events for an envelope until it is due to be sealed.
+ * <p>
+ * An envelope is due once it holds the maximum number of events, once the next event would
+ * take the size of the (uncompressed) records past the maximum, or once its first event has
+ * waited for the maximum delay. Sealing encodes the events as a single block of an Avro
+ * object container. The container metadata includes the schema fingerprint under the
+ * <code>divolte.schema.fingerprint</code> key.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class EnvelopeBuffer {
+    public static final String METADATA_SCHEMA_FINGERPRINT = "divolte.schema.fingerprint";
+
+    // The bounds that Avro places on the sync interval.
+    private static final int MIN_SYNC_INTERVAL = 32;
+    private static final int MAX_SYNC_INTERVAL = 1 << 30;
+
+    private final DivolteSchema schema;
+    private final String schemaFingerprint;
+    private final CodecFactory codec;
+    private final int maxEvents;
+    private final int maxBytes;
+    private final long maxDelayNanos;
+
+    private final List<AvroRecordBuffer> records;
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private int recordBytes;
+    private long firstEventNanoTime;
+
+    public EnvelopeBuffer(final DivolteSchema schema,
+                          final CodecFactory codec,
+                          final int maxEvents,
+                          final int maxBytes,
+                          final Duration maxDelay) {
+        this.schema = Objects.requireNonNull(schema);
+        this.schemaFingerprint = schema.fingerprint();
+        this.codec = Objects.requireNonNull(codec);
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.records = new ArrayList<>(maxEvents);
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Check whether an event can be added without exceeding the size of the envelope.
+     * An empty envelope accepts any event.
+     */
+    public boolean fits(final AvroRecordBuffer record) {
+        return records.isEmpty() || recordBytes + record.getByteBuffer().remaining() <= maxBytes;
+    }
+
+    public void add(final AvroRecordBuffer record, final long nanoTime) {
+        if (records.isEmpty()) {
+            firstEventNanoTime = nanoTime;
+        }
+        records.add(record);
+        recordBytes += record.getByteBuffer().remaining();
+    }
+
+    public boolean isFull() {
+        return maxEvents <= records.size() || maxBytes <= recordBytes;
+    }
+
+    public boolean isDue(final long nanoTime) {
+        return !records.isEmpty() && (isFull() || nanosUntilDue(nanoTime) <= 0);
+    }
+
+    public long nanosUntilDue(final long nanoTime) {
+        return firstEventNanoTime + maxDelayNanos - nanoTime;
+    }
+
+    /**
+     * Encode the events accumulated so far into an envelope, and start a new one.
+     *
+     * @return the sealed envelope.
+     * @throws IllegalStateException if no events have been added.
+     */
+    public Envelope seal() {
+        if (records.isEmpty()) {
+            throw new IllegalStateException("Cannot seal an empty envelope.");
+        }
+        stream.reset();
+        try (final DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema.avroSchema))) {
+            // The sync interval bounds the block size; a single block holds everything.
+            writer.setCodec(codec)
+                  .setSyncInterval(Math.min(Math.max(recordBytes + 1, MIN_SYNC_INTERVAL), MAX_SYNC_INTERVAL))
+                  .setMeta(METADATA_SCHEMA_FINGERPRINT, schemaFingerprint)
+                  .create(schema.avroSchema, stream);
+            for (final AvroRecordBuffer record : records) {
+                writer.appendEncoded(record.getByteBuffer());
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Error encoding envelope.", e);
+        }
+        final AvroRecordBuffer first = records.get(0);
+        final Envelope envelope = new Envelope(first.getPartyId(), first.getTimestamp(), records.size(), stream.toByteArray());
+        records.clear();
+        recordBytes = 0;
+        return envelope;
+    }
+}
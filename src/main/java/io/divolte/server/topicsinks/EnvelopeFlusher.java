@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import com.google.common.collect.ImmutableList;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.processing.Item;
+import io.divolte.server.processing.ItemProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.PAUSE;
+
+/**
+ * A topic flusher that packs several events into each message, instead of sending a message
+ * per event.
+ * <p>
+ * Events are accumulated in an {@link EnvelopeBuffer} and a message is sent for each envelope
+ * once it is sealed. As with {@link TopicFlusher}, messages that could not be sent are retried
+ * while processing is paused.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public abstract class EnvelopeFlusher<T> implements ItemProcessor<AvroRecordBuffer> {
+    private final static Logger logger = LoggerFactory.getLogger(EnvelopeFlusher.class);
+
+    private final EnvelopeBuffer envelopeBuffer;
+
+    // On failure, we store the list of messages that are still pending here.
+    private ImmutableList<T> pendingMessages = ImmutableList.of();
+
+    protected EnvelopeFlusher(final EnvelopeBuffer envelopeBuffer) {
+        this.envelopeBuffer = Objects.requireNonNull(envelopeBuffer);
+    }
+
+    @Override
+    public final ProcessingDirective process(final Item<AvroRecordBuffer> item) {
+        final List<T> messages = new ArrayList<>(2);
+        add(item.payload, System.nanoTime(), messages);
+        return messages.isEmpty() ? CONTINUE : flush(messages);
+    }
+
+    @Override
+    public final ProcessingDirective process(final Queue<Item<AvroRecordBuffer>> batch) {
+        final List<T> messages = new ArrayList<>();
+        final long nanoTime = System.nanoTime();
+        while (!batch.isEmpty()) {
+            add(batch.remove().payload, nanoTime, messages);
+        }
+        if (envelopeBuffer.isDue(nanoTime)) {
+            messages.add(buildRecord(envelopeBuffer.seal()));
+        }
+        return messages.isEmpty() ? CONTINUE : flush(messages);
+    }
+
+    private void add(final AvroRecordBuffer record, final long nanoTime, final List<T> messages) {
+        if (!envelopeBuffer.fits(record)) {
+            messages.add(buildRecord(envelopeBuffer.seal()));
+        }
+        envelopeBuffer.add(record, nanoTime);
+        if (envelopeBuffer.isDue(nanoTime)) {
+            messages.add(buildRecord(envelopeBuffer.seal()));
+        }
+    }
+
+    @Override
+    public final ProcessingDirective heartbeat() {
+        if (!pendingMessages.isEmpty()) {
+            logger.debug("Trying to re-send {} pending envelope(s) that previously failed.", pendingMessages.size());
+            if (PAUSE == flush(pendingMessages)) {
+                return PAUSE;
+            }
+        }
+        return envelopeBuffer.isDue(System.nanoTime())
+            ? flush(ImmutableList.of(buildRecord(envelopeBuffer.seal())))
+            : CONTINUE;
+    }
+
+    @Override
+    public final long nanosUntilHeartbeat() {
+        return envelopeBuffer.isEmpty()
+            ? DEFAULT_HEARTBEAT_INTERVAL_NANOS
+            : Math.min(DEFAULT_HEARTBEAT_INTERVAL_NANOS, envelopeBuffer.nanosUntilDue(System.nanoTime()));
+    }
+
+    @Override
+    public final void cleanup() {
+        // Make a last attempt to send anything we're still holding on to.
+        final List<T> messages = new ArrayList<>(pendingMessages);
+        if (!envelopeBuffer.isEmpty()) {
+            messages.add(buildRecord(envelopeBuffer.seal()));
+        }
+        if (!messages.isEmpty() && PAUSE == flush(messages)) {
+            logger.warn("Abandoning {} envelope(s) that could not be sent.", pendingMessages.size());
+        }
+    }
+
+    private ProcessingDirective flush(final List<T> batch) {
+        try {
+            final ImmutableList<T> remaining = sendBatch(batch);
+            pendingMessages = remaining;
+            return remaining.isEmpty() ? CONTINUE : PAUSE;
+        } catch (final InterruptedException e) {
+            // This should only occur during shutdown.
+            logger.warn("Flushing interrupted. Not all envelopes in batch (size={}) may have been flushed.", batch.size());
+            // Preserve thread interruption invariant.
+            Thread.currentThread().interrupt();
+            return CONTINUE;
+        }
+    }
+
+    protected abstract T buildRecord(final Envelope envelope);
+    protected abstract ImmutableList<T> sendBatch(final List<T> batch) throws InterruptedException;
+}
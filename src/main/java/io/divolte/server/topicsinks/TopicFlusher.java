@@ -43,9 +43,8 @@ public abstract class TopicFlusher<T> implements ItemProcessor<AvroRecordBuffer>
 
     @Override
     public final ProcessingDirective process(final Item<AvroRecordBuffer> item) {
-        final AvroRecordBuffer record = item.payload;
-        logger.debug("Processing individual event: {}", record);
-        return flush(ImmutableList.of(buildRecord(record)));
+        logger.debug("Processing individual event: {}", item.payload);
+        return flush(ImmutableList.of(buildRecord(item)));
     }
 
     @Override
@@ -64,7 +63,6 @@ public abstract class TopicFlusher<T> implements ItemProcessor<AvroRecordBuffer>
             logger.debug("Processing batch of {} events.", batchSize);
             final List<T> messages =
                     batch.stream()
-                         .map(i -> i.payload)
                          .map(this::buildRecord)
                          .collect(Collectors.toCollection(() -> new ArrayList<>(batchSize)));
             // Clear the messages now; on failure they'll be retried as part of our
@@ -100,6 +98,6 @@ public abstract class TopicFlusher<T> implements ItemProcessor<AvroRecordBuffer>
         }
     }
 
-    protected abstract T buildRecord(final AvroRecordBuffer record);
+    protected abstract T buildRecord(final Item<AvroRecordBuffer> item);
     protected abstract ImmutableList<T> sendBatch(final List<T> batch) throws InterruptedException;
 }
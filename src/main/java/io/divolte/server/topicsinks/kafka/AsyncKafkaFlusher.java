@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.processing.Item;
+import io.divolte.server.topicsinks.AsyncTopicFlusher;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A Kafka flusher that sends records asynchronously, without waiting for each batch to be
+ * acknowledged.
+ * <p>
+ * Unlike {@link KafkaFlusher} this never forces the producer to flush, so that the producer's
+ * own batching (<code>linger.ms</code> and <code>batch.size</code>) is effective. Records that
+ * fail with a {@link RetriableException} are sent again.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class AsyncKafkaFlusher extends AsyncTopicFlusher<ProducerRecord<DivolteIdentifier, AvroRecordBuffer>> {
+    private final static Logger logger = LoggerFactory.getLogger(AsyncKafkaFlusher.class);
+
+    private final KafkaRecordFactory recordFactory;
+    private final Producer<DivolteIdentifier, AvroRecordBuffer> producer;
+
+    AsyncKafkaFlusher(final KafkaRecordFactory recordFactory,
+                      final Producer<DivolteIdentifier, AvroRecordBuffer> producer,
+                      final Semaphore inFlightWindow) {
+        super(inFlightWindow);
+        this.recordFactory = Objects.requireNonNull(recordFactory);
+        this.producer = Objects.requireNonNull(producer);
+    }
+
+    @Override
+    protected ProducerRecord<DivolteIdentifier, AvroRecordBuffer> buildRecord(final Item<AvroRecordBuffer> item) {
+        return recordFactory.buildRecord(item);
+    }
+
+    @Override
+    protected void sendAsync(final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record,
+                             final SendCallback callback) {
+        producer.send(record, (metadata, exception) -> {
+            if (null == exception) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Finished sending event (partyId={}) to Kafka: topic/partition/offset = {}/{}/{}",
+                                 record.key(), metadata.topic(), metadata.partition(), metadata.offset());
+                }
+                callback.onSuccess();
+            } else {
+                callback.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    protected boolean isRetryable(final Throwable cause) {
+        return cause instanceof RetriableException;
+    }
+
+    @Override
+    protected String describeRecord(final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record) {
+        return "partyId=" + record.key();
+    }
+}
@@ -20,7 +20,6 @@ import io.divolte.server.AvroRecordBuffer;
 import org.apache.kafka.common.serialization.Serializer;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.nio.ByteBuffer;
 import java.util.Map;
 
 @ParametersAreNonnullByDefault
@@ -32,12 +31,8 @@ class AvroRecordBufferSerializer implements Serializer<AvroRecordBuffer> {
 
     @Override
     public byte[] serialize(final String topic, final AvroRecordBuffer data) {
-        // Extract the AVRO record as a byte array.
-        // (There's no way to do this without copying the array.)
-        final ByteBuffer avroBuffer = data.getByteBuffer();
-        final byte[] avroBytes = new byte[avroBuffer.remaining()];
-        avroBuffer.get(avroBytes);
-        return avroBytes;
+        // Records without a header are already encoded into an array we can hand over as-is.
+        return data.toNakedBytes();
     }
 
     @Override
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import com.google.common.collect.ImmutableList;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.topicsinks.Envelope;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
+import io.divolte.server.topicsinks.EnvelopeFlusher;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A Kafka flusher that sends envelopes of events. The key of each record is the party
+ * identifier of the first event in the envelope.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class KafkaEnvelopeFlusher extends EnvelopeFlusher<ProducerRecord<DivolteIdentifier, byte[]>> {
+    private final String topic;
+    private final Producer<DivolteIdentifier, byte[]> producer;
+
+    KafkaEnvelopeFlusher(final String topic,
+                         final Producer<DivolteIdentifier, byte[]> producer,
+                         final EnvelopeBuffer envelopeBuffer) {
+        super(envelopeBuffer);
+        this.topic = Objects.requireNonNull(topic);
+        this.producer = Objects.requireNonNull(producer);
+    }
+
+    @Override
+    protected ProducerRecord<DivolteIdentifier, byte[]> buildRecord(final Envelope envelope) {
+        return new ProducerRecord<>(topic, null, envelope.timestamp.toEpochMilli(), envelope.partyId, envelope.toBytes());
+    }
+
+    @Override
+    protected ImmutableList<ProducerRecord<DivolteIdentifier, byte[]>> sendBatch(final List<ProducerRecord<DivolteIdentifier, byte[]>> batch) throws InterruptedException {
+        return KafkaFlusher.sendBatch(producer, batch);
+    }
+}
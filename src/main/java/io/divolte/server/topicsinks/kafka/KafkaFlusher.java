@@ -19,6 +19,7 @@ package io.divolte.server.topicsinks.kafka;
 import com.google.common.collect.ImmutableList;
 import io.divolte.server.AvroRecordBuffer;
 import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.processing.Item;
 import io.divolte.server.topicsinks.TopicFlusher;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -41,21 +42,30 @@ import java.util.stream.Collectors;
 public final class KafkaFlusher extends TopicFlusher<ProducerRecord<DivolteIdentifier, AvroRecordBuffer>> {
     private final static Logger logger = LoggerFactory.getLogger(KafkaFlusher.class);
 
-    private final String topic;
+    private final KafkaRecordFactory recordFactory;
     private final Producer<DivolteIdentifier, AvroRecordBuffer> producer;
 
-    KafkaFlusher(final String topic, final Producer<DivolteIdentifier, AvroRecordBuffer> producer) {
-        this.topic = Objects.requireNonNull(topic);
+    KafkaFlusher(final KafkaRecordFactory recordFactory, final Producer<DivolteIdentifier, AvroRecordBuffer> producer) {
+        this.recordFactory = Objects.requireNonNull(recordFactory);
         this.producer = Objects.requireNonNull(producer);
     }
 
     @Override
-    protected ProducerRecord<DivolteIdentifier, AvroRecordBuffer> buildRecord(final AvroRecordBuffer record) {
-        return new ProducerRecord<>(topic, null, record.getTimestamp().toEpochMilli(), record.getPartyId(), record);
+    protected ProducerRecord<DivolteIdentifier, AvroRecordBuffer> buildRecord(final Item<AvroRecordBuffer> item) {
+        return recordFactory.buildRecord(item);
     }
 
     @Override
     protected ImmutableList<ProducerRecord<DivolteIdentifier,AvroRecordBuffer>> sendBatch(final List<ProducerRecord<DivolteIdentifier, AvroRecordBuffer>> batch) throws InterruptedException {
+        return sendBatch(producer, batch);
+    }
+
+    /*
+     * Send a batch of records, flush the producer and wait for the outcome. Returns the
+     * records that failed with an error that may be transient.
+     */
+    static <V> ImmutableList<ProducerRecord<DivolteIdentifier, V>> sendBatch(final Producer<DivolteIdentifier, V> producer,
+                                                                              final List<ProducerRecord<DivolteIdentifier, V>> batch) throws InterruptedException {
         // First start sending the messages.
         // (This will serialize them, determine the partition and then assign them to a per-partition buffer.)
         final int batchSize = batch.size();
@@ -72,19 +82,19 @@ public final class KafkaFlusher extends TopicFlusher<ProducerRecord<DivolteIdent
         //  - An error occurred, but a retry may succeed.
         //  - A fatal error occurred.
         // (In addition, we can be interrupted due to shutdown.)
-        final ImmutableList.Builder<ProducerRecord<DivolteIdentifier, AvroRecordBuffer>> remaining = ImmutableList.builder();
+        final ImmutableList.Builder<ProducerRecord<DivolteIdentifier, V>> remaining = ImmutableList.builder();
         for (int i = 0; i < batchSize; ++i) {
             final Future<RecordMetadata> result = sendResults.get(i);
             try {
                 final RecordMetadata metadata = result.get();
                 if (logger.isDebugEnabled()) {
-                    final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record = batch.get(i);
+                    final ProducerRecord<DivolteIdentifier, V> record = batch.get(i);
                     logger.debug("Finished sending event (partyId={}) to Kafka: topic/partition/offset = {}/{}/{}",
                                  record.key(), metadata.topic(), metadata.partition(), metadata.offset());
                 }
             } catch (final ExecutionException e) {
                 final Throwable cause = e.getCause();
-                final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record = batch.get(i);
+                final ProducerRecord<DivolteIdentifier, V> record = batch.get(i);
                 if (cause instanceof RetriableException) {
                     // A retry may succeed.
                     if (logger.isDebugEnabled()) {
@@ -18,29 +18,82 @@ package io.divolte.server.topicsinks.kafka;
 
 import io.divolte.server.AvroRecordBuffer;
 import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.processing.ItemProcessor;
 import io.divolte.server.processing.ProcessingPool;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
 import org.apache.kafka.clients.producer.Producer;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 @ParametersAreNonnullByDefault
-public class KafkaFlushingPool extends ProcessingPool<KafkaFlusher, AvroRecordBuffer> {
+public class KafkaFlushingPool extends ProcessingPool<ItemProcessor<AvroRecordBuffer>, AvroRecordBuffer> {
 
-    private final Producer<DivolteIdentifier, AvroRecordBuffer> producer;
+    private final Producer<?, ?> producer;
 
     public KafkaFlushingPool(final String name,
                              final int numThreads,
                              final int maxWriteQueue,
                              final String topic,
                              final Producer<DivolteIdentifier, AvroRecordBuffer> producer ) {
+        this(name, numThreads, maxWriteQueue, KafkaRecordFactory.withoutHeaders(topic), producer, 0);
+    }
+
+    /**
+     * Construct a pool of flushers for a Kafka sink.
+     *
+     * @param recordFactory builds the Kafka record for each event.
+     * @param maxInFlight if positive, the flushers send asynchronously with at most this many
+     *                    events awaiting acknowledgement across the pool. Otherwise each batch is
+     *                    flushed and acknowledged before the next is sent.
+     */
+    public KafkaFlushingPool(final String name,
+                             final int numThreads,
+                             final int maxWriteQueue,
+                             final KafkaRecordFactory recordFactory,
+                             final Producer<DivolteIdentifier, AvroRecordBuffer> producer,
+                             final int maxInFlight) {
+        this(name, numThreads, maxWriteQueue, flusherSupplier(recordFactory, producer, maxInFlight), producer);
+    }
+
+    /**
+     * Construct a pool of flushers for a Kafka sink that sends envelopes of events.
+     *
+     * @param envelopeBuffers supplies the buffer for each flusher's envelopes.
+     */
+    public KafkaFlushingPool(final String name,
+                             final int numThreads,
+                             final int maxWriteQueue,
+                             final String topic,
+                             final Producer<DivolteIdentifier, byte[]> producer,
+                             final Supplier<EnvelopeBuffer> envelopeBuffers) {
+        this(name, numThreads, maxWriteQueue, () -> new KafkaEnvelopeFlusher(topic, producer, envelopeBuffers.get()), producer);
+    }
+
+    private KafkaFlushingPool(final String name,
+                              final int numThreads,
+                              final int maxWriteQueue,
+                              final Supplier<ItemProcessor<AvroRecordBuffer>> flusherSupplier,
+                              final Producer<?, ?> producer) {
         super(numThreads,
               maxWriteQueue,
               String.format("Kafka Flusher [%s]", Objects.requireNonNull(name)),
-              () -> new KafkaFlusher(topic, producer));
+              flusherSupplier);
         this.producer = Objects.requireNonNull(producer);
     }
 
+    private static Supplier<ItemProcessor<AvroRecordBuffer>> flusherSupplier(final KafkaRecordFactory recordFactory,
+                                                                             final Producer<DivolteIdentifier, AvroRecordBuffer> producer,
+                                                                             final int maxInFlight) {
+        if (0 < maxInFlight) {
+            final Semaphore inFlightWindow = new Semaphore(maxInFlight);
+            return () -> new AsyncKafkaFlusher(recordFactory, producer, inFlightWindow);
+        }
+        return () -> new KafkaFlusher(recordFactory, producer);
+    }
+
     @Override
     public void stop() {
         super.stop();
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import com.google.common.collect.ImmutableList;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Builds the Kafka records for the events of a sink, optionally with headers that
+ * describe each event.
+ * <p>
+ * The headers allow consumers to route or filter events without decoding the Avro
+ * record. They mirror the attributes of Pub/Sub messages. All values are UTF-8 strings:
+ * <ul>
+ *     <li><code>partyIdentifier</code>: the party identifier of the event.</li>
+ *     <li><code>eventIdentifier</code>: the identifier of the event.</li>
+ *     <li><code>eventType</code>: the type of the event, if it has one.</li>
+ *     <li><code>mapping</code>: the name of the mapping that produced the record.</li>
+ *     <li><code>schemaFingerprint</code>: the fingerprint of the Avro schema.</li>
+ *     <li><code>schemaConfluentId</code>: the Confluent identifier of the Avro schema, if it has one.</li>
+ * </ul>
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class KafkaRecordFactory {
+    private final static String HEADER_PARTYID = "partyIdentifier";
+    private final static String HEADER_EVENTID = "eventIdentifier";
+    private final static String HEADER_EVENTTYPE = "eventType";
+    private final static String HEADER_MAPPING = "mapping";
+    private final static String HEADER_SCHEMA_FINGERPRINT = "schemaFingerprint";
+    private final static String HEADER_SCHEMA_CONFLUENT_ID = "schemaConfluentId";
+
+    private final String topic;
+    private final boolean includeHeaders;
+    // The values of the headers that don't vary per event are encoded once, up front.
+    private final byte[] schemaFingerprint;
+    private final Optional<byte[]> schemaConfluentId;
+    // Indexed by mapping, which is the source of the items that a sink receives.
+    private final ImmutableList<byte[]> mappingNames;
+
+    private KafkaRecordFactory(final String topic,
+                               final boolean includeHeaders,
+                               final byte[] schemaFingerprint,
+                               final Optional<byte[]> schemaConfluentId,
+                               final ImmutableList<byte[]> mappingNames) {
+        this.topic = Objects.requireNonNull(topic);
+        this.includeHeaders = includeHeaders;
+        this.schemaFingerprint = Objects.requireNonNull(schemaFingerprint);
+        this.schemaConfluentId = Objects.requireNonNull(schemaConfluentId);
+        this.mappingNames = Objects.requireNonNull(mappingNames);
+    }
+
+    public static KafkaRecordFactory withoutHeaders(final String topic) {
+        return new KafkaRecordFactory(topic, false, new byte[0], Optional.empty(), ImmutableList.of());
+    }
+
+    /**
+     * Create a factory for records with headers.
+     *
+     * @param topic         the topic the records are for.
+     * @param schema        the schema of the records.
+     * @param mappingNames  the names of all mappings, in configuration order.
+     * @return a factory for records that include headers.
+     */
+    public static KafkaRecordFactory withHeaders(final String topic,
+                                                 final DivolteSchema schema,
+                                                 final List<String> mappingNames) {
+        return new KafkaRecordFactory(topic,
+                                      true,
+                                      utf8(schema.fingerprint()),
+                                      schema.confluentId.map(id -> utf8("0x" + Integer.toHexString(id))),
+                                      mappingNames.stream()
+                                                  .map(KafkaRecordFactory::utf8)
+                                                  .collect(ImmutableList.toImmutableList()));
+    }
+
+    private static byte[] utf8(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public ProducerRecord<DivolteIdentifier, AvroRecordBuffer> buildRecord(final Item<AvroRecordBuffer> item) {
+        final AvroRecordBuffer buffer = item.payload;
+        final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record =
+            new ProducerRecord<>(topic, null, buffer.getTimestamp().toEpochMilli(), buffer.getPartyId(), buffer);
+        if (includeHeaders) {
+            final Headers headers = record.headers();
+            headers.add(HEADER_PARTYID, utf8(buffer.getPartyId().toString()))
+                   .add(HEADER_EVENTID, utf8(buffer.getEventId()));
+            buffer.getEventType().ifPresent(eventType -> headers.add(HEADER_EVENTTYPE, utf8(eventType)));
+            if (item.sourceId < mappingNames.size()) {
+                headers.add(HEADER_MAPPING, mappingNames.get(item.sourceId));
+            }
+            headers.add(HEADER_SCHEMA_FINGERPRINT, schemaFingerprint);
+            schemaConfluentId.ifPresent(id -> headers.add(HEADER_SCHEMA_CONFLUENT_ID, id));
+        }
+        return record;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.pubsub;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.pubsub.v1.PubsubMessage;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import io.divolte.server.topicsinks.AsyncTopicFlusher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+import static io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_EVENTID;
+import static io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_PARTYID;
+
+/**
+ * A Pub/Sub flusher that publishes messages asynchronously, without waiting for each batch
+ * to be acknowledged.
+ * <p>
+ * Unlike {@link GoogleCloudPubSubFlusher} this doesn't block on the outcome of each message
+ * before taking the next batch. The Pub/Sub publisher internally has a retry policy, but
+ * outside that messages that fail with a retryable {@link ApiException} are published again.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class AsyncGoogleCloudPubSubFlusher extends AsyncTopicFlusher<PubsubMessage> {
+    private final static Logger logger = LoggerFactory.getLogger(AsyncGoogleCloudPubSubFlusher.class);
+
+    private final Publisher publisher;
+    private final GoogleCloudPubSubMessageFactory messageFactory;
+
+    AsyncGoogleCloudPubSubFlusher(final Publisher publisher,
+                                  final DivolteSchema schema,
+                                  final Semaphore inFlightWindow) {
+        super(inFlightWindow);
+        this.publisher = Objects.requireNonNull(publisher);
+        this.messageFactory = new GoogleCloudPubSubMessageFactory(schema);
+    }
+
+    @Override
+    protected PubsubMessage buildRecord(final Item<AvroRecordBuffer> item) {
+        return messageFactory.buildMessage(item.payload);
+    }
+
+    @Override
+    protected void sendAsync(final PubsubMessage message, final SendCallback callback) {
+        ApiFutures.addCallback(publisher.publish(message), new ApiFutureCallback<String>() {
+            @Override
+            public void onSuccess(final String messageId) {
+                logger.debug("Finished sending event ({}) to Pub/Sub: messageId = {}",
+                             describeRecord(message), messageId);
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onFailure(final Throwable cause) {
+                callback.onFailure(cause);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    protected boolean isRetryable(final Throwable cause) {
+        return cause instanceof ApiException && ((ApiException) cause).isRetryable();
+    }
+
+    @Override
+    protected String describeRecord(final PubsubMessage message) {
+        return "partyId=" + message.getAttributesOrDefault(MESSAGE_ATTRIBUTE_PARTYID, "N/A")
+             + ", eventId=" + message.getAttributesOrDefault(MESSAGE_ATTRIBUTE_EVENTID, "N/A");
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.pubsub;
+
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.common.collect.ImmutableList;
+import com.google.pubsub.v1.PubsubMessage;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.topicsinks.Envelope;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
+import io.divolte.server.topicsinks.EnvelopeFlusher;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A Pub/Sub flusher that publishes envelopes of events.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+public final class GoogleCloudPubSubEnvelopeFlusher extends EnvelopeFlusher<PubsubMessage> {
+    private final Publisher publisher;
+    private final GoogleCloudPubSubMessageFactory messageFactory;
+
+    GoogleCloudPubSubEnvelopeFlusher(final Publisher publisher,
+                                     final DivolteSchema schema,
+                                     final EnvelopeBuffer envelopeBuffer) {
+        super(envelopeBuffer);
+        this.publisher = Objects.requireNonNull(publisher);
+        this.messageFactory = new GoogleCloudPubSubMessageFactory(schema);
+    }
+
+    @Override
+    protected PubsubMessage buildRecord(final Envelope envelope) {
+        return messageFactory.buildMessage(envelope);
+    }
+
+    @Override
+    protected ImmutableList<PubsubMessage> sendBatch(final List<PubsubMessage> batch) throws InterruptedException {
+        return GoogleCloudPubSubFlusher.sendBatch(publisher, batch);
+    }
+}
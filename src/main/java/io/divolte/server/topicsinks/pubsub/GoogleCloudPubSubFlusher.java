@@ -20,76 +20,52 @@ import com.google.api.core.ApiFuture;
 import com.google.api.gax.rpc.ApiException;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.common.collect.ImmutableList;
-import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 import io.divolte.server.AvroRecordBuffer;
 import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
 import io.divolte.server.topicsinks.TopicFlusher;
-import org.apache.avro.Schema;
-import org.apache.avro.SchemaNormalization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.NotThreadSafe;
-import java.security.NoSuchAlgorithmException;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
+import static io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_EVENTID;
+import static io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_PARTYID;
+
 @ParametersAreNonnullByDefault
 @NotThreadSafe
 public final class GoogleCloudPubSubFlusher extends TopicFlusher<PubsubMessage> {
     private final static Logger logger = LoggerFactory.getLogger(GoogleCloudPubSubFlusher.class);
-    private final static String MESSAGE_ATTRIBUTE_PARTYID = "partyIdentifier";
-    private final static String MESSAGE_ATTRIBUTE_EVENTID = "eventIdentifier";
-    private final static String MESSAGE_ATTRIBUTE_TIMESTAMP = "timestamp";
-    private final static String MESSAGE_ATTRIBUTE_SCHEMA_CONFLUENT_ID = "schemaConfluentId";
-    private final static String MESSAGE_ATTRIBUTE_SCHEMA_FINGERPRINT = "schemaFingerprint";
-
-    // The most compact fingerprint encoding that is practical is Base64, using the URL encoding
-    // because that's safe for file names (which some registries might use to index schemas).
-    private final static Base64.Encoder FINGERPRINT_ENCODER = Base64.getUrlEncoder().withoutPadding();
 
     private final Publisher publisher;
-    private final String schemaFingerprint;
-    private final Optional<String> schemaConfluentId;
+    private final GoogleCloudPubSubMessageFactory messageFactory;
 
     GoogleCloudPubSubFlusher(final Publisher publisher, final DivolteSchema schema) {
         this.publisher = Objects.requireNonNull(publisher);
-        this.schemaFingerprint = schemaFingerprint(schema);
-        this.schemaConfluentId = schema.confluentId.map(i -> "0x" + Integer.toHexString(i));
-    }
-
-    private static String schemaFingerprint(final DivolteSchema schema) {
-        final Schema avroSchema = schema.avroSchema;
-        final byte[] fingerprint;
-        // SHA-256 is on the list of mandatory JCE algorithms, so this shouldn't be an issue.
-        try {
-            fingerprint = SchemaNormalization.parsingFingerprint("SHA-256", avroSchema);
-        } catch (final NoSuchAlgorithmException e) {
-            throw new RuntimeException("Cannot calculate schema fingerprint; missing SHA-256 digest algorithm", e);
-        }
-        return FINGERPRINT_ENCODER.encodeToString(fingerprint);
+        this.messageFactory = new GoogleCloudPubSubMessageFactory(schema);
     }
 
     @Override
-    protected PubsubMessage buildRecord(final AvroRecordBuffer record) {
-        final PubsubMessage.Builder builder = PubsubMessage.newBuilder()
-            .putAttributes(MESSAGE_ATTRIBUTE_SCHEMA_FINGERPRINT, schemaFingerprint)
-            .putAttributes(MESSAGE_ATTRIBUTE_PARTYID, record.getPartyId().toString())
-            .putAttributes(MESSAGE_ATTRIBUTE_EVENTID, record.getEventId())
-            .putAttributes(MESSAGE_ATTRIBUTE_TIMESTAMP, DateTimeFormatter.ISO_INSTANT.format(record.getTimestamp()))
-            .setData(ByteString.copyFrom(record.getByteBuffer()));
-        return schemaConfluentId
-            .map(id -> builder.putAttributes(MESSAGE_ATTRIBUTE_SCHEMA_CONFLUENT_ID, id))
-            .orElse(builder)
-            .build();
+    protected PubsubMessage buildRecord(final Item<AvroRecordBuffer> item) {
+        return messageFactory.buildMessage(item.payload);
     }
 
     @Override
     protected ImmutableList<PubsubMessage> sendBatch(final List<PubsubMessage> batch) throws InterruptedException {
+        return sendBatch(publisher, batch);
+    }
+
+    /*
+     * Publish a batch of messages and wait for the outcome. Returns the messages that
+     * failed with an error that may be transient.
+     */
+    static ImmutableList<PubsubMessage> sendBatch(final Publisher publisher,
+                                                  final List<PubsubMessage> batch) throws InterruptedException {
         // For Pub/Sub we assume the following:
         //  - Batching behaviour is set to flush everything ASAP.
         //  - Retry behaviour will retry indefinitely, so long as it seems likely to succeed.
@@ -19,15 +19,19 @@ package io.divolte.server.topicsinks.pubsub;
 import com.google.cloud.pubsub.v1.Publisher;
 import io.divolte.server.AvroRecordBuffer;
 import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.ItemProcessor;
 import io.divolte.server.processing.ProcessingPool;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
 import io.grpc.ManagedChannel;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 @ParametersAreNonnullByDefault
-public class GoogleCloudPubSubFlushingPool extends ProcessingPool<GoogleCloudPubSubFlusher, AvroRecordBuffer> {
+public class GoogleCloudPubSubFlushingPool extends ProcessingPool<ItemProcessor<AvroRecordBuffer>, AvroRecordBuffer> {
 
     private final Publisher publisher;
     private final Optional<ManagedChannel> channel;
@@ -38,14 +42,63 @@ public class GoogleCloudPubSubFlushingPool extends ProcessingPool<GoogleCloudPub
                                          final Publisher publisher,
                                          final Optional<ManagedChannel> channel,
                                          final DivolteSchema schema) {
+        this(name, numThreads, maxWriteQueue, publisher, channel, schema, 0);
+    }
+
+    /**
+     * Construct a pool of flushers for a Pub/Sub sink.
+     *
+     * @param maxInFlight if positive, the flushers publish asynchronously with at most this many
+     *                    events awaiting acknowledgement across the pool. Otherwise each batch is
+     *                    acknowledged before the next is published.
+     */
+    public GoogleCloudPubSubFlushingPool(final String name,
+                                         final int numThreads,
+                                         final int maxWriteQueue,
+                                         final Publisher publisher,
+                                         final Optional<ManagedChannel> channel,
+                                         final DivolteSchema schema,
+                                         final int maxInFlight) {
+        this(name, numThreads, maxWriteQueue, publisher, channel, schema, maxInFlight, Optional.empty());
+    }
+
+    /**
+     * Construct a pool of flushers for a Pub/Sub sink.
+     *
+     * @param envelopeBuffers if present, the flushers publish envelopes of events using a buffer
+     *                        from this supplier, and <code>maxInFlight</code> is not used.
+     */
+    public GoogleCloudPubSubFlushingPool(final String name,
+                                         final int numThreads,
+                                         final int maxWriteQueue,
+                                         final Publisher publisher,
+                                         final Optional<ManagedChannel> channel,
+                                         final DivolteSchema schema,
+                                         final int maxInFlight,
+                                         final Optional<Supplier<EnvelopeBuffer>> envelopeBuffers) {
         super(numThreads,
               maxWriteQueue,
               String.format("Google Cloud Pub/Sub Flusher [%s]", Objects.requireNonNull(name)),
-              () -> new GoogleCloudPubSubFlusher(publisher, schema));
+              flusherSupplier(publisher, schema, maxInFlight, envelopeBuffers));
         this.publisher = Objects.requireNonNull(publisher);
         this.channel = Objects.requireNonNull(channel);
     }
 
+    private static Supplier<ItemProcessor<AvroRecordBuffer>> flusherSupplier(final Publisher publisher,
+                                                                             final DivolteSchema schema,
+                                                                             final int maxInFlight,
+                                                                             final Optional<Supplier<EnvelopeBuffer>> envelopeBuffers) {
+        if (envelopeBuffers.isPresent()) {
+            final Supplier<EnvelopeBuffer> envelopeBufferSupplier = envelopeBuffers.get();
+            return () -> new GoogleCloudPubSubEnvelopeFlusher(publisher, schema, envelopeBufferSupplier.get());
+        }
+        if (0 < maxInFlight) {
+            final Semaphore inFlightWindow = new Semaphore(maxInFlight);
+            return () -> new AsyncGoogleCloudPubSubFlusher(publisher, schema, inFlightWindow);
+        }
+        return () -> new GoogleCloudPubSubFlusher(publisher, schema);
+    }
+
     @Override
     public void stop() {
         super.stop();
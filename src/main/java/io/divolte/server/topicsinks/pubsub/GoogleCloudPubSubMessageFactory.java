@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.pubsub;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.pubsub.v1.PubsubMessage;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.topicsinks.Envelope;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Builds the Pub/Sub messages for the events, or envelopes of events, of a sink.
+ * <p>
+ * The message data wraps the serialized record without copying it; this is safe because
+ * the buffer of an {@link AvroRecordBuffer} is never modified. The attributes that are the
+ * same for every message are set once on a prototype that each message starts from.
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+final class GoogleCloudPubSubMessageFactory {
+    static final String MESSAGE_ATTRIBUTE_PARTYID = "partyIdentifier";
+    static final String MESSAGE_ATTRIBUTE_EVENTID = "eventIdentifier";
+    private static final String MESSAGE_ATTRIBUTE_TIMESTAMP = "timestamp";
+    private static final String MESSAGE_ATTRIBUTE_SCHEMA_CONFLUENT_ID = "schemaConfluentId";
+    private static final String MESSAGE_ATTRIBUTE_SCHEMA_FINGERPRINT = "schemaFingerprint";
+    private static final String MESSAGE_ATTRIBUTE_EVENT_COUNT = "eventCount";
+
+    private final PubsubMessage prototype;
+
+    // Events from the same request share a timestamp, and tend to be flushed together.
+    private Instant lastTimestamp = Instant.MIN;
+    private String lastFormattedTimestamp = "";
+
+    GoogleCloudPubSubMessageFactory(final DivolteSchema schema) {
+        final PubsubMessage.Builder builder = PubsubMessage.newBuilder()
+            .putAttributes(MESSAGE_ATTRIBUTE_SCHEMA_FINGERPRINT, schema.fingerprint());
+        schema.confluentId.ifPresent(id -> builder.putAttributes(MESSAGE_ATTRIBUTE_SCHEMA_CONFLUENT_ID,
+                                                                 "0x" + Integer.toHexString(id)));
+        prototype = builder.build();
+    }
+
+    PubsubMessage buildMessage(final AvroRecordBuffer record) {
+        return prototype.toBuilder()
+            .putAttributes(MESSAGE_ATTRIBUTE_PARTYID, record.getPartyId().toString())
+            .putAttributes(MESSAGE_ATTRIBUTE_EVENTID, record.getEventId())
+            .putAttributes(MESSAGE_ATTRIBUTE_TIMESTAMP, formatTimestamp(record.getTimestamp()))
+            .setData(UnsafeByteOperations.unsafeWrap(record.getByteBuffer()))
+            .build();
+    }
+
+    PubsubMessage buildMessage(final Envelope envelope) {
+        return prototype.toBuilder()
+            .putAttributes(MESSAGE_ATTRIBUTE_EVENT_COUNT, Integer.toString(envelope.eventCount))
+            .putAttributes(MESSAGE_ATTRIBUTE_TIMESTAMP, formatTimestamp(envelope.timestamp))
+            .setData(UnsafeByteOperations.unsafeWrap(envelope.getByteBuffer()))
+            .build();
+    }
+
+    private String formatTimestamp(final Instant timestamp) {
+        if (!timestamp.equals(lastTimestamp)) {
+            lastFormattedTimestamp = DateTimeFormatter.ISO_INSTANT.format(timestamp);
+            lastTimestamp = timestamp;
+        }
+        return lastFormattedTimestamp;
+    }
+}
@@ -37,6 +37,8 @@ var SCRIPT_NAME = 'divolte.js';
 var EVENT_SUFFIX = 'csc-event';
 /** @define {boolean} */
 var AUTO_PAGE_VIEW_EVENT = true;
+/** @define {boolean} */
+var BATCH_EVENTS = false;
 
 (function (global, factory) {
   factory(global);
@@ -683,7 +685,34 @@ var AUTO_PAGE_VIEW_EVENT = true;
      * @type {!Array.<string|function()>}
      */
     this.queue = [];
+    /**
+     * When batching, the timer that will start delivery of the pending events.
+     * @private
+     * @type {?number}
+     */
+    this.flushTimer = null;
   };
+  /**
+   * When batching, how long to hold back an event so that later events can be
+   * delivered in the same request.
+   * @const
+   * @type {number}
+   */
+  var BATCH_DELAY_MILLISECONDS = 500;
+  /**
+   * The maximum number of events delivered in a single batch.
+   * @const
+   * @type {number}
+   */
+  var BATCH_MAXIMUM_EVENTS = 32;
+  /**
+   * The maximum size of the body of a batch. This must be less than the
+   * maximum that the server accepts, and the limit browsers place on data
+   * pending via sendBeacon().
+   * @const
+   * @type {number}
+   */
+  var BATCH_MAXIMUM_LENGTH = 16384;
   /**
    * Enqueue a signal event or a callback to be invoked when
    * all prior events have been delivered.
@@ -701,7 +730,28 @@ var AUTO_PAGE_VIEW_EVENT = true;
     log("Queueing item for processing; " + pendingEvents.length + " currently pending.", item);
     pendingEvents.push(item);
     if (1 === pendingEvents.length) {
-      log("No pending items; processing immediately.", item);
+      if (BATCH_EVENTS && 'string' === typeof item) {
+        log("No pending items; delaying processing to batch events.", item);
+        var signalQueue = this;
+        this.flushTimer = setTimeout(function() {
+          signalQueue.flush();
+        }, BATCH_DELAY_MILLISECONDS);
+      } else {
+        log("No pending items; processing immediately.", item);
+        this.processNextItem();
+      }
+    }
+  };
+  /**
+   * Start processing items that are being held back for batching,
+   * without waiting any further.
+   */
+  SignalQueue.prototype.flush = function() {
+    var flushTimer = this.flushTimer;
+    if (null !== flushTimer) {
+      log("Flushing pending items.");
+      clearTimeout(flushTimer);
+      this.flushTimer = null;
       this.processNextItem();
     }
   };
@@ -715,7 +765,11 @@ var AUTO_PAGE_VIEW_EVENT = true;
     // this is simpler and sufficient for now.
     switch (typeof firstPendingItem) {
       case 'string':
-        this.deliverFirstPendingEvent(firstPendingItem);
+        if (BATCH_EVENTS) {
+          this.deliverPendingEventBatch();
+        } else {
+          this.deliverFirstPendingEvent(firstPendingItem);
+        }
         break;
       case 'function':
         this.invokeFirstPendingCallback(firstPendingItem);
@@ -747,6 +801,57 @@ var AUTO_PAGE_VIEW_EVENT = true;
     };
     image.src = divolteUrl + EVENT_SUFFIX + '?' + firstPendingEvent;
   };
+  /**
+   * @private
+   * Start delivering the pending events at the front of the queue as a single batch.
+   *
+   * The batch is sent using sendBeacon() if available, otherwise fetch(). If neither
+   * are supported we fall back to delivering the first event on its own.
+   */
+  SignalQueue.prototype.deliverPendingEventBatch = function() {
+    var signalQueue = this;
+    var pendingItems = this.queue;
+    var batch = [];
+    var batchLength = 0;
+    for (var i = 0; i < pendingItems.length && batch.length < BATCH_MAXIMUM_EVENTS; ++i) {
+      var pendingItem = pendingItems[i];
+      if ('string' !== typeof pendingItem
+          || (0 < batch.length && BATCH_MAXIMUM_LENGTH < batchLength + pendingItem.length + 1)) {
+        break;
+      }
+      batch.push(pendingItem);
+      batchLength += pendingItem.length + 1;
+    }
+    var batchSize = batch.length;
+    var body = batch.join('\n');
+    var eventUrl = divolteUrl + EVENT_SUFFIX;
+    log("Delivering batch of pending events.", batchSize);
+    /** @type {function(string,string):boolean} */
+    var sendBeacon = navigator['sendBeacon'];
+    /** @type {function(string,Object):Object} */
+    var fetchResource = window['fetch'];
+    if (sendBeacon && sendBeacon.call(navigator, eventUrl, body)) {
+      // The browser has taken over delivery; there's no completion to wait for.
+      this.onPendingItemsCompleted(batchSize);
+    } else if (fetchResource) {
+      var completionHandler = withTimeout(function() {
+        signalQueue.onPendingItemsCompleted(batchSize);
+      }, EVENT_TIMEOUT_SECONDS * 1000);
+      // A plain-text body and an opaque response avoid a CORS preflight request.
+      fetchResource.call(window, eventUrl, {
+        'method': 'POST',
+        'body': body,
+        'headers': { 'Content-Type': 'text/plain;charset=UTF-8' },
+        'mode': 'no-cors',
+        'keepalive': true
+      })['then'](completionHandler, !LOGGING ? completionHandler : function() {
+        warn("Error delivering batch of events", batchSize);
+        completionHandler();
+      });
+    } else {
+      this.deliverFirstPendingEvent(/** @type {string} */ (pendingItems[0]));
+    }
+  };
   /**
    * @private
    * Invoke the callback that is now at the front of the queue.
@@ -762,10 +867,19 @@ var AUTO_PAGE_VIEW_EVENT = true;
    * Handler for when the first item in the queue has been completed.
    */
   SignalQueue.prototype.onFirstPendingItemCompleted = function() {
-    log("Marking pending item as complete.");
-    // Delete the first event from the queue.
+    this.onPendingItemsCompleted(1);
+  };
+  /**
+   * @private
+   * Handler for when the first items in the queue have been completed.
+   *
+   * @param count {number} the number of items that have been completed.
+   */
+  SignalQueue.prototype.onPendingItemsCompleted = function(count) {
+    log("Marking pending items as complete.", count);
+    // Delete the completed items from the queue.
     var pendingEvents = this.queue;
-    pendingEvents.shift();
+    pendingEvents.splice(0, count);
     // If there are still pending events, schedule the next.
     var remainingEvents = pendingEvents.length;
     if (0 < remainingEvents) {
@@ -784,6 +898,21 @@ var AUTO_PAGE_VIEW_EVENT = true;
    * @type {SignalQueue}
    */
   var signalQueue = new SignalQueue();
+  /*
+   * When batching, events being held back must be sent before the page goes away. Browsers
+   * that support sendBeacon() also support these events, and may never unload a page that
+   * has been hidden.
+   */
+  if (BATCH_EVENTS && window['addEventListener'] && document['addEventListener']) {
+    window['addEventListener']('pagehide', function() {
+      signalQueue.flush();
+    });
+    document['addEventListener']('visibilitychange', function() {
+      if ('hidden' === document['visibilityState']) {
+        signalQueue.flush();
+      }
+    });
+  }
 
   /**
    * UTF-8 encode a string.
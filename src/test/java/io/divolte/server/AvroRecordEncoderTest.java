@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class AvroRecordEncoderTest {
+    private static final Schema SCHEMA = SchemaBuilder.record("Test").fields()
+                                                      .requiredString("value")
+                                                      .endRecord();
+
+    @Test
+    public void shouldEncodeRecordAfterHeader() throws IOException {
+        final AvroRecordEncoder encoder = new AvroRecordEncoder();
+        final GenericRecord record = record("hello");
+
+        final byte[] bytes = encoder.encode(record, 5);
+
+        assertArrayEquals(new byte[5], Arrays.copyOf(bytes, 5));
+        assertEquals(record, decode(bytes, 5));
+    }
+
+    @Test
+    public void shouldEncodeRecordsLargerThanBuffer() throws IOException {
+        final AvroRecordEncoder encoder = new AvroRecordEncoder();
+        final GenericRecord record = record(Strings.repeat("x", 10 * encoder.bufferCapacity()));
+
+        final byte[] bytes = encoder.encode(record, 0);
+
+        assertEquals(record, decode(bytes, 0));
+    }
+
+    @Test
+    public void shouldNotRetainBufferGrownForOutlier() throws IOException {
+        final AvroRecordEncoder encoder = new AvroRecordEncoder();
+        for (int i = 0; i < 1000; ++i) {
+            encoder.encode(record("small"), 0);
+        }
+        final int estimate = encoder.sizeEstimate();
+
+        encoder.encode(record(Strings.repeat("x", 100_000)), 0);
+
+        assertEquals(estimate, encoder.sizeEstimate());
+        assertTrue(encoder.bufferCapacity() <= 2 * estimate);
+    }
+
+    @Test
+    public void shouldEstimateSizeFromRecentRecords() throws IOException {
+        final AvroRecordEncoder encoder = new AvroRecordEncoder();
+        final String value = Strings.repeat("x", 1000);
+        for (int i = 0; i < 1000; ++i) {
+            encoder.encode(record(value), 0);
+        }
+
+        assertTrue(encoder.sizeEstimate() >= 1000);
+        assertTrue(encoder.bufferCapacity() >= 1000);
+    }
+
+    private static GenericRecord record(final String value) {
+        return new GenericRecordBuilder(SCHEMA).set("value", value).build();
+    }
+
+    private static GenericRecord decode(final byte[] bytes, final int offset) throws IOException {
+        return new GenericDatumReader<GenericRecord>(SCHEMA)
+            .read(null, DecoderFactory.get().binaryDecoder(bytes, offset, bytes.length - offset, null));
+    }
+}
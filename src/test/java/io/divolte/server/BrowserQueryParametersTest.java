@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+
+import io.undertow.server.HttpServerExchange;
+
+public class BrowserQueryParametersTest {
+    @Test
+    public void shouldPlaceParametersInSlots() {
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.addQueryParam("p", "party")
+                .addQueryParam("t", "pageView")
+                .addQueryParam("t", "ignored")
+                .addQueryParam("x", "checksum");
+
+        final BrowserQueryParameters parameters = BrowserQueryParameters.fromExchange(exchange);
+
+        assertEquals("party", parameters.get(BrowserQueryParameters.PARTY_ID));
+        assertEquals("pageView", parameters.get(BrowserQueryParameters.EVENT_TYPE));
+        assertEquals("checksum", parameters.get(BrowserQueryParameters.CHECKSUM));
+        assertNull(parameters.get(BrowserQueryParameters.SESSION_ID));
+    }
+
+    @Test
+    public void shouldCalculateChecksumOverCanonicalForm() {
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.addQueryParam("p", "party")
+                .addQueryParam("t", "pageView")
+                .addQueryParam("t", "second")
+                .addQueryParam("unknown", "café 😀")
+                .addQueryParam("x", "checksum");
+
+        final BrowserQueryParameters parameters = BrowserQueryParameters.fromExchange(exchange);
+
+        final String canonicalForm = parameters.canonicalChecksumString();
+        assertEquals("p=party,;t=pageView,second,;unknown=café 😀,;", canonicalForm);
+        assertEquals(Hashing.murmur3_32().hashString(canonicalForm, StandardCharsets.UTF_8).asInt(),
+                     parameters.checksum());
+    }
+}
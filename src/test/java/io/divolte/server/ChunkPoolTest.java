@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class ChunkPoolTest {
+    @Test
+    public void shouldReuseReleasedChunks() {
+        final ChunkPool pool = new ChunkPool(2, false);
+        final ByteBuffer chunk = pool.acquire();
+        assertEquals(ChunkyByteBuffer.CHUNK_SIZE, chunk.capacity());
+        chunk.put((byte) 42).flip();
+        pool.release(chunk);
+
+        final ByteBuffer reused = pool.acquire();
+        assertSame(chunk, reused);
+        // Reused chunks are ready for filling.
+        assertEquals(0, reused.position());
+        assertEquals(ChunkyByteBuffer.CHUNK_SIZE, reused.limit());
+
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0.5, pool.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void shouldDiscardChunksWhenFull() {
+        final ChunkPool pool = new ChunkPool(1, false);
+        final ByteBuffer chunk1 = pool.acquire();
+        final ByteBuffer chunk2 = pool.acquire();
+        pool.release(chunk1);
+        pool.release(chunk2);
+
+        assertEquals(1, pool.getAvailableChunks());
+        assertEquals(1, pool.getDiscards());
+    }
+
+    @Test
+    public void shouldAllocateDirectChunksIfRequested() {
+        final ChunkPool pool = new ChunkPool(1, true);
+        final ByteBuffer chunk = pool.acquire();
+        assertTrue(chunk.isDirect());
+        pool.release(chunk);
+        assertSame(chunk, pool.acquire());
+    }
+
+    @Test
+    public void shouldIgnoreReleasesWhenDisabled() {
+        final ChunkPool pool = ChunkPool.UNPOOLED;
+        assertFalse(pool.isEnabled());
+        pool.release(ByteBuffer.allocate(ChunkyByteBuffer.CHUNK_SIZE));
+        assertEquals(0, pool.getAvailableChunks());
+        assertEquals(0, pool.getDiscards());
+    }
+}
@@ -123,4 +123,31 @@ public class ChunkyByteBufferInputStreamTest {
         }
         assertArrayEquals(Bytes.concat(sentinelBytes1, sentinelBytes4), outputArray);
     }
+
+    @Test
+    public void shouldReadBytesAsUnsigned() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(2).put((byte) 0xff).put((byte) 0x80);
+        try (final InputStream stream = new ChunkyByteBufferInputStream(buffer)) {
+            assertEquals(0xff, stream.read());
+            assertEquals(0x80, stream.read());
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void shouldReturnBuffersToPoolWhenClosed() throws IOException {
+        final ChunkPool pool = new ChunkPool(4, false);
+        final ByteBuffer buffer1 = pool.acquire().put((byte) 1);
+        final ByteBuffer buffer2 = pool.acquire().put((byte) 2);
+
+        final InputStream stream = new ChunkyByteBufferInputStream(new ByteBuffer[] { buffer1, buffer2, null }, pool);
+        assertEquals(1, stream.read());
+        assertEquals(0, pool.getAvailableChunks());
+        stream.close();
+        assertEquals(2, pool.getAvailableChunks());
+        // Once closed, the stream is at its end and closing again has no effect.
+        assertStreamEof(stream);
+        stream.close();
+        assertEquals(2, pool.getAvailableChunks());
+    }
 }
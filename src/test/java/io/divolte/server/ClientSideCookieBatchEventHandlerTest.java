@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.divolte.server.ServerTestUtils.EventPayload;
+import io.divolte.server.ServerTestUtils.TestServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static java.net.HttpURLConnection.*;
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class ClientSideCookieBatchEventHandlerTest {
+    private static final String URL_STRING = "http://%s:%d/csc-event";
+
+    // The same events as used by the RequestChecksumTest.
+    private static final String EVENT_PAGE_VIEW =
+            "p=0%3Ai1t84hgy%3A5AF359Zjq5kUy98u4wQjlIZzWGhN~GlG&"
+            + "s=0%3Ai1t84hgy%3A95CbiPCYln_1e0a6rFvuRkDkeNnc6KC8&"
+            + "v=0%3A1fF6GFGjDOQiEx_OxnTm_tl4BH91eGLF&"
+            + "e=0%3A1fF6GFGjDOQiEx_OxnTm_tl4BH91eGLF0&"
+            + "c=i1t8q2b6&"
+            + "n=f&"
+            + "f=f&"
+            + "l=http%3A%2F%2Flocalhost%3A8290%2F&"
+            + "i=1ak&"
+            + "j=sj&"
+            + "k=2&"
+            + "w=uq&"
+            + "h=qd&"
+            + "t=pageView&"
+            + "x=si9804";
+    private static final String EVENT_UNICODE =
+            "p=0%3Ai1t84hgy%3Aparty&"
+            + "s=0%3Ai1t84hgy%3Asession&"
+            + "v=0%3ApageView&"
+            + "e=0%3AeventId&"
+            + "c=i1t8q2b6&"
+            + "n=f&"
+            + "f=f&"
+            + "l=http%3A%2F%2Flocalhost%3A8290%2F&"
+            + "i=1ak&"
+            + "j=sj&"
+            + "k=2&"
+            + "w=uq&"
+            + "h=qd&"
+            + "t=%E1%BB%A5%C3%B1%E2%9A%95%C2%A9%C2%BA%E1%B8%8C%E2%84%A8&"
+            + "x=-ql2p2c";
+
+    @Nullable
+    private TestServer server;
+
+    @Before
+    public void setUp() {
+        server = new TestServer("base-test-server.conf");
+    }
+
+    @After
+    public void tearDown() {
+        if (null != server) {
+            server.shutdown();
+            server = null;
+        }
+    }
+
+    @Test
+    public void shouldProcessEachEventInBatch() throws IOException, InterruptedException {
+        assertEquals(HTTP_NO_CONTENT, post(EVENT_PAGE_VIEW + '\n' + EVENT_UNICODE + '\n'));
+        Preconditions.checkState(null != server);
+        final Set<Optional<String>> eventTypes = new HashSet<>();
+        for (int i = 0; i < 2; ++i) {
+            final EventPayload payload = server.waitForEvent();
+            assertFalse(payload.event.corruptEvent);
+            eventTypes.add(payload.event.eventType);
+        }
+        assertEquals(ImmutableSet.of(Optional.of("pageView"), Optional.of("ụñ⚕©ºḌℨ")), eventTypes);
+    }
+
+    @Test
+    public void shouldFlagDuplicatesPerEventInBatch() throws IOException, InterruptedException {
+        assertEquals(HTTP_NO_CONTENT, post(EVENT_PAGE_VIEW + '\n' + EVENT_UNICODE + '\n' + EVENT_PAGE_VIEW));
+        Preconditions.checkState(null != server);
+        final List<Boolean> pageViewDuplicates = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            final EventPayload payload = server.waitForEvent();
+            // The mapping must see the flag of its own event, not that of another event in the batch.
+            assertEquals(payload.duplicate, payload.record.get("detectedDuplicate"));
+            if (payload.event.eventType.equals(Optional.of("pageView"))) {
+                pageViewDuplicates.add(payload.duplicate);
+            } else {
+                assertFalse(payload.duplicate);
+            }
+        }
+        // Events for the same party are processed in order, so only the repeat is a duplicate.
+        assertEquals(ImmutableList.of(false, true), pageViewDuplicates);
+    }
+
+    @Test
+    public void shouldSkipImproperEventsInBatch() throws IOException, InterruptedException {
+        assertEquals(HTTP_NO_CONTENT, post("p=notavalidpartyid\n%zz\n\n" + EVENT_PAGE_VIEW));
+        Preconditions.checkState(null != server);
+        final EventPayload payload = server.waitForEvent();
+        assertFalse(payload.event.corruptEvent);
+        assertEquals(Optional.of("pageView"), payload.event.eventType);
+    }
+
+    @Test
+    public void shouldRejectEmptyBatch() throws IOException {
+        assertEquals(HTTP_BAD_REQUEST, post(""));
+    }
+
+    @Test
+    public void shouldDecodeQueryStringLikeUndertow() {
+        final SortedMap<String, Deque<String>> parameters =
+            ClientSideCookieBatchEventHandler.parseQueryString("b=1+2%2B3&a&c=&b=%E2%9A%95&&x=y=z")
+                                             .orElseThrow(AssertionError::new);
+        assertEquals(ImmutableList.of("a", "b", "c", "x"), ImmutableList.copyOf(parameters.keySet()));
+        assertEquals(ImmutableList.of(""), ImmutableList.copyOf(parameters.get("a")));
+        assertEquals(ImmutableList.of("1 2+3", "⚕"), ImmutableList.copyOf(parameters.get("b")));
+        assertEquals(ImmutableList.of(""), ImmutableList.copyOf(parameters.get("c")));
+        assertEquals(ImmutableList.of("y=z"), ImmutableList.copyOf(parameters.get("x")));
+    }
+
+    @Test
+    public void shouldNotDecodeMalformedQueryString() {
+        assertFalse(ClientSideCookieBatchEventHandler.parseQueryString("a=%E").isPresent());
+    }
+
+    private int post(final String body) throws IOException {
+        Preconditions.checkState(null != server);
+        final URL url = new URL(String.format(URL_STRING, server.host, server.port));
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "text/plain;charset=UTF-8");
+        conn.setDoOutput(true);
+        try (final OutputStream requestBody = conn.getOutputStream()) {
+            requestBody.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return conn.getResponseCode();
+    }
+}
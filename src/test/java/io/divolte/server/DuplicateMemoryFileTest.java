@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DuplicateMemoryFileTest {
+    private static final int SLOT_COUNT = 1000;
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("duplicate-memory", ".bin");
+        Files.delete(file);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldRememberEventsAcrossReopening() throws IOException {
+        final ShortTermDuplicateMemory first = DuplicateMemoryFile.open(file, SLOT_COUNT);
+        assertFalse(first.isProbableDuplicate("party", "session", "event"));
+        first.sync();
+
+        final ShortTermDuplicateMemory second = DuplicateMemoryFile.open(file, SLOT_COUNT);
+        assertTrue(second.isProbableDuplicate("party", "session", "event"));
+    }
+
+    @Test
+    public void shouldDiscardMemoryWithDifferentLayout() throws IOException {
+        final ShortTermDuplicateMemory first = DuplicateMemoryFile.open(file, SLOT_COUNT);
+        assertFalse(first.isProbableDuplicate("party", "session", "event"));
+        first.sync();
+
+        final ShortTermDuplicateMemory second = DuplicateMemoryFile.open(file, SLOT_COUNT + 1);
+        assertFalse(second.isProbableDuplicate("party", "session", "event"));
+    }
+
+    @Test
+    public void shouldCreateEmptyMemory() throws IOException {
+        final ShortTermDuplicateMemory memory = DuplicateMemoryFile.open(file, SLOT_COUNT);
+        assertFalse(memory.isProbableDuplicate("party", "session", "event"));
+        assertTrue(memory.isProbableDuplicate("party", "session", "event"));
+    }
+}
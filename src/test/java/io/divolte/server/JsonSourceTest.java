@@ -36,6 +36,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -48,6 +49,7 @@ public class JsonSourceTest {
     private static final String JSON_EVENT_WITHOUT_PARTYID_URL_TEMPLATE = "http://%s:%d/json-event";
     private static final String JSON_EVENT_URL_TEMPLATE = JSON_EVENT_WITHOUT_PARTYID_URL_TEMPLATE + "?p=0%%3Ai1t84hgy%%3A5AF359Zjq5kUy98u4wQjlIZzWGhN~GlG";
     private static final String JSON_EVENT_WITH_BROKEN_PARTYID_URL_TEMPLATE = JSON_EVENT_WITHOUT_PARTYID_URL_TEMPLATE + "?p=notavalidpartyid";
+    private static final String JSON_BULK_EVENT_URL_TEMPLATE = "http://%s:%d/json-bulk-event?p=0%%3Ai1t84hgy%%3A5AF359Zjq5kUy98u4wQjlIZzWGhN~GlG";
     private static final int JSON_MAXIMUM_BODY_SIZE = Integer.parseInt(JsonSourceConfiguration.DEFAULT_MAXIMUM_BODY_SIZE);
     private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
 
@@ -332,6 +334,8 @@ public class JsonSourceTest {
         assertNotNull(jsonEventData);
         final JsonNode parameters = receivedEvent.eventParametersProducer.get().orElseThrow(AssertionError::new);
         assertEquals("value1", parameters.path("parameter1").textValue());
+        // The parameters are only materialized once.
+        assertSame(parameters, receivedEvent.eventParametersProducer.get().orElseThrow(AssertionError::new));
     }
 
     private static ObjectNode buildMinimumJsonEvent() {
@@ -369,4 +373,110 @@ public class JsonSourceTest {
         final Optional<JsonNode> eventParameters = receivedEvent.eventParametersProducer.get();
         assertFalse(eventParameters.isPresent());
     }
+
+    private void startBulkServer() {
+        startServer(ImmutableMap.of("divolte.sources.test-json-source.bulk_event_path", "/json-bulk-event"));
+        urlTemplate = Optional.of(JSON_BULK_EVENT_URL_TEMPLATE);
+    }
+
+    private JsonNode bulkRequest(final String contentType, final String body) throws IOException {
+        final HttpURLConnection conn = startRequest();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", contentType);
+        conn.setDoOutput(true);
+        try (final OutputStream requestBody = conn.getOutputStream()) {
+            requestBody.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(HTTP_OK, conn.getResponseCode());
+        return JSON_MAPPER.readTree(conn.getInputStream());
+    }
+
+    private static String statuses(final JsonNode response) {
+        final StringBuilder builder = new StringBuilder();
+        response.forEach(result -> builder.append(result.path("status").textValue()).append(';'));
+        return builder.toString();
+    }
+
+    @Test
+    public void shouldReceiveArrayOfEventsOnBulkEndpoint() throws IOException, InterruptedException {
+        startBulkServer();
+
+        final String body = JSON_MAPPER.createArrayNode()
+                                       .add(buildCompleteJsonEvent())
+                                       .add(EMPTY_JSON_OBJECT)
+                                       .add(buildMinimumJsonEvent())
+                                       .toString();
+        final JsonNode response = bulkRequest("application/json", body);
+        assertEquals("accepted;rejected;accepted;", statuses(response));
+
+        // Both events have the same party, so they arrive in order.
+        final TestServer server = testServer.orElseThrow(IllegalStateException::new);
+        assertEquals("3c54b1491693aa646914e6feeb4a47d1", server.waitForEvent().event.eventId);
+        assertEquals("3c54b1491693aa646914e6feeb4a47d2", server.waitForEvent().event.eventId);
+    }
+
+    @Test
+    public void shouldReceiveNewlineDelimitedEventsOnBulkEndpoint() throws IOException, InterruptedException {
+        startBulkServer();
+
+        final ObjectNode eventWithParty = buildMinimumJsonEvent()
+            .put("party_id", "0:ikfm9ufy:E9NC4Jz6BSxJtAi7Ct7Zuy2hH3yAbdUr");
+        final String body = buildCompleteJsonEvent().toString() + '\n' + eventWithParty.toString() + '\n';
+        final JsonNode response = bulkRequest("application/x-ndjson", body);
+        assertEquals("accepted;accepted;", statuses(response));
+
+        final TestServer server = testServer.orElseThrow(IllegalStateException::new);
+        final Map<String, String> partyIdsByEventId = new HashMap<>();
+        for (int i = 0; i < 2; ++i) {
+            final DivolteEvent event = server.waitForEvent().event;
+            partyIdsByEventId.put(event.eventId, event.partyId.value);
+        }
+        assertEquals("0:i1t84hgy:5AF359Zjq5kUy98u4wQjlIZzWGhN~GlG", partyIdsByEventId.get("3c54b1491693aa646914e6feeb4a47d1"));
+        assertEquals("0:ikfm9ufy:E9NC4Jz6BSxJtAi7Ct7Zuy2hH3yAbdUr", partyIdsByEventId.get("3c54b1491693aa646914e6feeb4a47d2"));
+    }
+
+    @Test
+    public void shouldFlagDuplicatesPerEventOnBulkEndpoint() throws IOException, InterruptedException {
+        startBulkServer();
+
+        final String body = JSON_MAPPER.createArrayNode()
+                                       .add(buildCompleteJsonEvent())
+                                       .add(buildMinimumJsonEvent())
+                                       .add(buildCompleteJsonEvent())
+                                       .toString();
+        final JsonNode response = bulkRequest("application/json", body);
+        assertEquals("accepted;accepted;accepted;", statuses(response));
+
+        // All events have the same party, so they arrive in order.
+        final TestServer server = testServer.orElseThrow(IllegalStateException::new);
+        for (final boolean expectDuplicate : new boolean[] { false, false, true }) {
+            final ServerTestUtils.EventPayload payload = server.waitForEvent();
+            assertEquals(expectDuplicate, payload.duplicate);
+            assertEquals(expectDuplicate, payload.record.get("detectedDuplicate"));
+        }
+    }
+
+    @Test
+    public void shouldDiscardSingleEventWithPartyId() throws IOException, InterruptedException {
+        startServer();
+
+        // Only bulk events can specify their own party; a single event uses the query parameter.
+        request(buildCompleteJsonEvent().put("party_id", "0:ikfm9ufy:E9NC4Jz6BSxJtAi7Ct7Zuy2hH3yAbdUr"));
+        request(buildMinimumJsonEvent());
+
+        // Both requests have the same party, so they are processed in order.
+        final TestServer server = testServer.orElseThrow(IllegalStateException::new);
+        assertEquals("3c54b1491693aa646914e6feeb4a47d2", server.waitForEvent().event.eventId);
+    }
+
+    @Test
+    public void shouldReportMalformedJsonOnBulkEndpoint() throws IOException, InterruptedException {
+        startBulkServer();
+
+        final JsonNode response = bulkRequest("application/json", '[' + buildCompleteJsonEvent().toString() + ",{");
+        assertEquals("accepted;rejected;", statuses(response));
+
+        final TestServer server = testServer.orElseThrow(IllegalStateException::new);
+        assertEquals("3c54b1491693aa646914e6feeb4a47d1", server.waitForEvent().event.eventId);
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Optional;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Test;
+
+public class RecordProjectionTest {
+    private static final Schema SOURCE_SCHEMA = SchemaBuilder.record("Source").fields()
+                                                             .requiredLong("ts")
+                                                             .optionalString("eventType")
+                                                             .requiredString("remoteHost")
+                                                             .endRecord();
+
+    @Test
+    public void shouldProjectFieldsByName() {
+        final Schema targetSchema = SchemaBuilder.record("Target").fields()
+                                                 .requiredString("remoteHost")
+                                                 .requiredLong("ts")
+                                                 .endRecord();
+        final RecordProjection projection = RecordProjection.between(SOURCE_SCHEMA, new DivolteSchema(targetSchema, Optional.empty()));
+
+        final GenericRecord record = new GenericRecordBuilder(SOURCE_SCHEMA)
+            .set("ts", 42L)
+            .set("eventType", "pageView")
+            .set("remoteHost", "127.0.0.1")
+            .build();
+        final GenericRecord projected = projection.project(record);
+
+        assertEquals(targetSchema, projected.getSchema());
+        assertEquals("127.0.0.1", projected.get("remoteHost"));
+        assertEquals(42L, projected.get("ts"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingFields() {
+        final Schema targetSchema = SchemaBuilder.record("Target").fields()
+                                                 .requiredLong("ts")
+                                                 .optionalString("userAgentString")
+                                                 .endRecord();
+        RecordProjection.between(SOURCE_SCHEMA, new DivolteSchema(targetSchema, Optional.empty()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectFieldsWithDifferentSchema() {
+        final Schema targetSchema = SchemaBuilder.record("Target").fields()
+                                                 .requiredString("ts")
+                                                 .endRecord();
+        RecordProjection.between(SOURCE_SCHEMA, new DivolteSchema(targetSchema, Optional.empty()));
+    }
+}
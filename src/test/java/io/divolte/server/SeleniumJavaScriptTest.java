@@ -36,7 +36,6 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static io.divolte.server.IncomingRequestProcessor.DUPLICATE_EVENT_KEY;
 import static io.divolte.server.SeleniumTestBase.TestPages.*;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -199,7 +198,7 @@ public class SeleniumJavaScriptTest extends SeleniumTestBase {
         final EventPayload payload = server.waitForEvent();
 
         final DivolteEvent eventData = payload.event;
-        final Boolean detectedDuplicate = payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY);
+        final boolean detectedDuplicate = payload.duplicate;
 
         assertFalse(eventData.corruptEvent);
         assertFalse(detectedDuplicate);
@@ -115,13 +115,16 @@ public final class ServerTestUtils {
     @ParametersAreNonnullByDefault
     public static final class EventPayload {
         final DivolteEvent event;
+        final boolean duplicate;
         final AvroRecordBuffer buffer;
         final GenericRecord record;
 
         public EventPayload(final DivolteEvent event,
+                             final boolean duplicate,
                              final AvroRecordBuffer buffer,
                              final GenericRecord record) {
             this.event = Objects.requireNonNull(event);
+            this.duplicate = duplicate;
             this.buffer = Objects.requireNonNull(buffer);
             this.record = Objects.requireNonNull(record);
         }
@@ -162,7 +165,7 @@ public final class ServerTestUtils {
             final ValidatedConfiguration vc = new ValidatedConfiguration(() -> this.config);
             Preconditions.checkArgument(vc.isValid(),
                                         "Invalid test server configuration: %s", vc.errors());
-            server = new Server(vc, (event, buffer, record) -> events.add(new EventPayload(event, buffer, record)));
+            server = new Server(vc, (event, duplicate, buffer, record) -> events.add(new EventPayload(event, duplicate, buffer, record)));
             try {
                 server.run();
             } catch (final RuntimeException e) {
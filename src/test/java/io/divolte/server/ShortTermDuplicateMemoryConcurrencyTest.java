@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@ParametersAreNonnullByDefault
+@RunWith(Parameterized.class)
+public class ShortTermDuplicateMemoryConcurrencyTest {
+    private static final int SLOT_COUNT = 1 << 16;
+    private static final int EVENT_COUNT = 5000;
+    private static final int THREAD_COUNT = 8;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Iterable<Object[]> variants() {
+        return Arrays.asList(new Object[] { "heap" }, new Object[] { "mapped" });
+    }
+
+    private final boolean mapped;
+
+    private Path file;
+    private FileChannel channel;
+
+    public ShortTermDuplicateMemoryConcurrencyTest(final String variant) {
+        mapped = "mapped".equals(variant);
+    }
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("duplicate-memory", ".bin");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private ShortTermDuplicateMemory.Slots newSlots() throws IOException {
+        return mapped
+            ? new ShortTermDuplicateMemory.MappedSlots(channel.map(FileChannel.MapMode.READ_WRITE, 0, 8L * SLOT_COUNT))
+            : new ShortTermDuplicateMemory.HeapSlots(SLOT_COUNT);
+    }
+
+    @Test(timeout = 60000)
+    public void shouldReportEachEventAsNewExactlyOnce() throws Exception {
+        final ShortTermDuplicateMemory memory = new ShortTermDuplicateMemory(newSlots());
+        final List<String[]> events = eventsWithDistinctSlots();
+        final AtomicIntegerArray newCounts = new AtomicIntegerArray(events.size());
+        final AtomicInteger duplicateCount = new AtomicInteger();
+
+        // Every thread sees every event, each in a different order.
+        runConcurrently(threadId -> {
+            final List<Integer> order = new ArrayList<>(events.size());
+            for (int i = 0; i < events.size(); ++i) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(threadId));
+            for (final int i : order) {
+                final String[] event = events.get(i);
+                if (memory.isProbableDuplicate(event[0], event[1], event[2])) {
+                    duplicateCount.incrementAndGet();
+                } else {
+                    newCounts.incrementAndGet(i);
+                }
+            }
+        });
+
+        for (int i = 0; i < events.size(); ++i) {
+            assertEquals("New reports for event " + i, 1, newCounts.get(i));
+        }
+        assertEquals((THREAD_COUNT - 1) * events.size(), duplicateCount.get());
+        for (final String[] event : events) {
+            assertTrue(memory.isProbableDuplicate(event[0], event[1], event[2]));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void shouldSyncOnceForEachIntervalAcrossThreads() throws Exception {
+        final AtomicLong clock = new AtomicLong();
+        final CountingSlots slots = new CountingSlots(newSlots());
+        final ShortTermDuplicateMemory memory = new ShortTermDuplicateMemory(slots, clock::get);
+        final long interval = ShortTermDuplicateMemory.SYNC_INTERVAL_NANOS;
+        final int syncsPerInterval = mapped ? 1 : 0;
+
+        runConcurrently(threadId -> repeatSyncIfDue(memory));
+        assertEquals(0, slots.syncCount.get());
+
+        clock.set(interval);
+        runConcurrently(threadId -> repeatSyncIfDue(memory));
+        assertEquals(syncsPerInterval, slots.syncCount.get());
+
+        clock.set(2 * interval - 1);
+        runConcurrently(threadId -> repeatSyncIfDue(memory));
+        assertEquals(syncsPerInterval, slots.syncCount.get());
+
+        clock.set(2 * interval);
+        runConcurrently(threadId -> repeatSyncIfDue(memory));
+        assertEquals(2 * syncsPerInterval, slots.syncCount.get());
+    }
+
+    private static void repeatSyncIfDue(final ShortTermDuplicateMemory memory) {
+        for (int i = 0; i < 1000; ++i) {
+            memory.syncIfDue();
+        }
+    }
+
+    /*
+     * Events that collide in a slot overwrite each other's signatures, after which a
+     * repeat is reported as new again. Such events are left out so that the outcome
+     * doesn't depend on how the threads are interleaved.
+     */
+    private static List<String[]> eventsWithDistinctSlots() {
+        final SlotRecorder recorder = new SlotRecorder();
+        final ShortTermDuplicateMemory probe = new ShortTermDuplicateMemory(recorder);
+        final BitSet usedSlots = new BitSet(SLOT_COUNT);
+        final List<String[]> events = new ArrayList<>(EVENT_COUNT);
+        for (int i = 0; events.size() < EVENT_COUNT; ++i) {
+            final String[] event = { "party" + i / 100, "session" + i / 10, "event" + i };
+            probe.isProbableDuplicate(event[0], event[1], event[2]);
+            if (!usedSlots.get(recorder.slot)) {
+                usedSlots.set(recorder.slot);
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        void run(int threadId);
+    }
+
+    private static void runConcurrently(final Worker worker) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < THREAD_COUNT; ++t) {
+            final int threadId = t;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(threadId);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+    }
+
+    private static final class SlotRecorder implements ShortTermDuplicateMemory.Slots {
+        private int slot;
+
+        @Override
+        public int length() {
+            return SLOT_COUNT;
+        }
+
+        @Override
+        public long getAndSet(final int slot, final long signature) {
+            this.slot = slot;
+            return ~signature;
+        }
+
+        @Override
+        public boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public void sync() {
+            // Nothing to do.
+        }
+    }
+
+    private static final class CountingSlots implements ShortTermDuplicateMemory.Slots {
+        private final ShortTermDuplicateMemory.Slots delegate;
+        private final AtomicInteger syncCount = new AtomicInteger();
+
+        CountingSlots(final ShortTermDuplicateMemory.Slots delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int length() {
+            return delegate.length();
+        }
+
+        @Override
+        public long getAndSet(final int slot, final long signature) {
+            return delegate.getAndSet(slot, signature);
+        }
+
+        @Override
+        public boolean isPersistent() {
+            return delegate.isPersistent();
+        }
+
+        @Override
+        public void sync() {
+            syncCount.incrementAndGet();
+            delegate.sync();
+        }
+    }
+}
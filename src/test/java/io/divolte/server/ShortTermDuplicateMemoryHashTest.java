@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+@ParametersAreNonnullByDefault
+public class ShortTermDuplicateMemoryHashTest {
+    private static final String HIGH_SURROGATE = String.valueOf((char) 0xD83D);
+    private static final String LOW_SURROGATE = String.valueOf((char) 0xDE00);
+
+    @Test
+    public void shouldMatchGuavaWhenLengthIsMultipleOfBlock() {
+        assertMatchesGuava("party123", "session1", "event123");
+        assertMatchesGuava("party", "session", "event123");
+        assertMatchesGuava("0123456789abcdef", "", "");
+    }
+
+    @Test
+    public void shouldMatchGuavaWhenLengthIsNotMultipleOfBlock() {
+        assertMatchesGuava("party", "session", "event");
+        assertMatchesGuava("p", "s", "e");
+        assertMatchesGuava("0:ix5v8ozp2", "0:ix5v8ozp", "0:ix5v8ozq");
+    }
+
+    @Test
+    public void shouldMatchGuavaForEmptyIdentifiers() {
+        assertMatchesGuava("", "", "");
+        assertMatchesGuava("party", "", "");
+        assertMatchesGuava("", "session", "");
+        assertMatchesGuava("", "", "event");
+    }
+
+    @Test
+    public void shouldMatchGuavaForNonAsciiIdentifiers() {
+        assertMatchesGuava("pärty", "séssion", "ëvent");
+        assertMatchesGuava("パーティー", "セッション", "イベント");
+        assertMatchesGuava("party" + HIGH_SURROGATE + LOW_SURROGATE, "session", "event");
+    }
+
+    @Test
+    public void shouldMatchGuavaForUnpairedSurrogates() {
+        assertMatchesGuava(HIGH_SURROGATE, LOW_SURROGATE, "event");
+        assertMatchesGuava("party" + HIGH_SURROGATE, "session", "event");
+        assertMatchesGuava("party", LOW_SURROGATE + "session", "event" + HIGH_SURROGATE);
+    }
+
+    @Test
+    public void shouldMatchGuavaForArbitraryIdentifiers() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            assertMatchesGuava(randomString(random), randomString(random), randomString(random));
+        }
+    }
+
+    private static String randomString(final Random random) {
+        final char[] chars = new char[random.nextInt(20)];
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = (char) random.nextInt(Character.MAX_VALUE + 1);
+        }
+        return new String(chars);
+    }
+
+    private static void assertMatchesGuava(final String partyId, final String sessionId, final String eventId) {
+        // This is how the slot and signature were derived when Guava was used directly.
+        final HashCode hashCode = Hashing.murmur3_128().newHasher()
+                                         .putUnencodedChars(partyId)
+                                         .putUnencodedChars(sessionId)
+                                         .putUnencodedChars(eventId)
+                                         .hash();
+        final byte[] hashBytes = hashCode.asBytes();
+        final int expectedSlotSelector = Ints.fromBytes(hashBytes[0], hashBytes[1], hashBytes[2], hashBytes[3]);
+        final long expectedSignature = Longs.fromBytes(hashBytes[8], hashBytes[9], hashBytes[10], hashBytes[11],
+                                                       hashBytes[12], hashBytes[13], hashBytes[14], hashBytes[15]);
+
+        final RecordingSlots slots = new RecordingSlots();
+        final ShortTermDuplicateMemory memory = new ShortTermDuplicateMemory(slots);
+        assertFalse(memory.isProbableDuplicate(partyId, sessionId, eventId));
+
+        final String message = String.format("Identifiers: [%s], [%s], [%s]", partyId, sessionId, eventId);
+        assertEquals(message, (expectedSlotSelector & Integer.MAX_VALUE) % slots.length(), slots.slot);
+        assertEquals(message, expectedSignature, slots.signature);
+    }
+
+    /*
+     * Records the last update, for a memory that is as large as possible so that
+     * the slot preserves as much of the hash as it can.
+     */
+    private static final class RecordingSlots implements ShortTermDuplicateMemory.Slots {
+        private int slot = -1;
+        private long signature;
+
+        @Override
+        public int length() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public long getAndSet(final int slot, final long signature) {
+            this.slot = slot;
+            this.signature = signature;
+            // Never a duplicate.
+            return ~signature;
+        }
+
+        @Override
+        public boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public void sync() {
+            // Nothing to do.
+        }
+    }
+}
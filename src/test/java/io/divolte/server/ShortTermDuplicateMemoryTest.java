@@ -16,7 +16,6 @@
 
 package io.divolte.server;
 
-import static io.divolte.server.IncomingRequestProcessor.*;
 import static org.junit.Assert.*;
 import io.divolte.server.ServerTestUtils.EventPayload;
 import io.divolte.server.ServerTestUtils.TestServer;
@@ -96,15 +95,15 @@ public class ShortTermDuplicateMemoryTest {
 
         request(0);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
 
         request(1);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
 
         request(0);
         payload = server.waitForEvent();
-        assertEquals(true, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertTrue(payload.duplicate);
     }
 
     @Test
@@ -113,23 +112,23 @@ public class ShortTermDuplicateMemoryTest {
 
         request(1);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
 
         request(0);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
 
         request(1);
         payload = server.waitForEvent();
-        assertEquals(true, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertTrue(payload.duplicate);
 
         request(2);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
 
         request(1);
         payload = server.waitForEvent();
-        assertEquals(false, payload.event.exchange.getAttachment(DUPLICATE_EVENT_KEY));
+        assertFalse(payload.duplicate);
     }
 
     private void request(final int which) throws IOException {
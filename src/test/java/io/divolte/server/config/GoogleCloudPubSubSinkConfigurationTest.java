@@ -16,12 +16,31 @@
 
 package io.divolte.server.config;
 
+import com.google.api.core.ApiFutures;
 import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.retrying.RetrySettings;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.PubsubMessage;
+import com.typesafe.config.ConfigFactory;
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.SchemaRegistry;
+import io.divolte.server.processing.Item;
+import io.divolte.server.topicsinks.pubsub.GoogleCloudPubSubFlushingPool;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
 
 public class GoogleCloudPubSubSinkConfigurationTest {
 
@@ -47,4 +66,39 @@ public class GoogleCloudPubSubSinkConfigurationTest {
             new GooglePubSubRetryConfiguration(null, null, null, null, null, java.time.Duration.ofNanos(138263), null, null).createRetrySettings();
         assertEquals(retrySettings.getInitialRpcTimeout(), retrySettings.getMaxRpcTimeout());
     }
+
+    @Test
+    public void testEnvelopeConfigurationPublishesEnvelopes() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("pubsub-sink-envelope.conf"));
+        assertTrue(vc.isValid());
+        final GoogleCloudPubSubSinkConfiguration sinkConfiguration =
+            vc.configuration().getSinkConfiguration("pubsub", GoogleCloudPubSubSinkConfiguration.class);
+        assertTrue(sinkConfiguration.envelope.isPresent());
+
+        final Publisher publisher = mock(Publisher.class);
+        when(publisher.publish(any(PubsubMessage.class))).thenReturn(ApiFutures.immediateFuture("message-id"));
+        final GoogleCloudPubSubFlushingPool pool =
+            sinkConfiguration.createFlushingPool(vc, "pubsub", new SchemaRegistry(vc), publisher, Optional.empty());
+        final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+        pool.enqueue(Item.of(0, partyId.value, generateAvroRecord(partyId)));
+        pool.enqueue(Item.of(0, partyId.value, generateAvroRecord(partyId)));
+        pool.stop();
+
+        // Both events are published together, in a single message.
+        final ArgumentCaptor<PubsubMessage> message = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(publisher).publish(message.capture());
+        assertEquals("2", message.getValue().getAttributesOrThrow("eventCount"));
+    }
+
+    private static AvroRecordBuffer generateAvroRecord(final DivolteIdentifier partyId) {
+        final GenericRecord record = new GenericRecordBuilder(DefaultEventRecord.getClassSchema())
+            .set("detectedDuplicate", false)
+            .set("detectedCorruption", false)
+            .set("firstInSession", false)
+            .set("timestamp", Instant.EPOCH.toEpochMilli())
+            .set("clientTimestamp", 0L)
+            .set("remoteHost", "localhost")
+            .build();
+        return AvroRecordBuffer.fromRecord(partyId, DivolteIdentifier.generate(0L), "-", Instant.EPOCH, record);
+    }
 }
@@ -58,4 +58,22 @@ public class SchemaRegistryTest {
         final DivolteSchema schema = registry.getSchemaBySinkName("kafka");
         assertEquals(schema.confluentId, Optional.of(12345));
     }
+
+    @Test
+    public void testProjectedSinkAssociatedWithProjectedSchema() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("schema-registry-with-projection.conf"));
+        final SchemaRegistry registry = new SchemaRegistry(vc);
+        final DivolteSchema schema = registry.getSchemaBySinkName("kafka");
+        assertEquals("ProjectedMinimalRecord", schema.avroSchema.getName());
+        assertEquals(Optional.of(54321), schema.confluentId);
+        assertEquals(Optional.of(schema), registry.getProjectionBySinkName("kafka").map(projection -> projection.schema));
+    }
+
+    @Test
+    public void testUnprojectedSinkAssociatedWithMappingSchema() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("schema-registry-with-projection.conf"));
+        final SchemaRegistry registry = new SchemaRegistry(vc);
+        assertEquals(registry.getSchemaByMappingName("test"), registry.getSchemaBySinkName("hdfs"));
+        assertEquals(Optional.empty(), registry.getProjectionBySinkName("hdfs"));
+    }
 }
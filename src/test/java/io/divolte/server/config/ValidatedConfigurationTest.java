@@ -153,6 +153,18 @@ public class ValidatedConfigurationTest {
         );
     }
 
+    @Test
+    public void projectionsForConfluentSinksMustHaveConfluentId() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("kafka-sink-confluent-projection-without-confluent-id.conf"));
+        assertFalse(vc.isValid());
+        assertEquals(1, vc.errors().size());
+        assertTrue(
+            vc.errors()
+              .get(0)
+              .startsWith("Property 'divolte.' Projections of sinks in Confluent-mode must have their 'confluent_id' attribute set. The following sinks are missing this: [kafka]..")
+        );
+    }
+
     @Test
     public void mappingsForConfluentSinksMustHaveSameConfluentId() {
         final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("kafka-sink-confluent-with-confluent-id-conflict.conf"));
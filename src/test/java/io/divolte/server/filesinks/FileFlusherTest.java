@@ -24,6 +24,7 @@ import static org.mockito.Mockito.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData.Record;
@@ -453,6 +454,43 @@ public class FileFlusherTest {
         calls.verifyNoMoreInteractions();
     }
 
+    @Test
+    public void shouldRequestHeartbeatWhenSyncIsDue() throws IOException {
+        final FileStrategyConfiguration fileStrategyConfiguration = setupConfiguration("1 hour", "10 seconds", "200");
+
+        final FileManager manager = mock(FileManager.class);
+        final DivolteFile file = mock(DivolteFile.class);
+        when(manager.createFile(anyString())).thenReturn(file);
+        final FileFlusher flusher = new FileFlusher(fileStrategyConfiguration, manager, 1L);
+
+        // Without pending records, the next duty is rolling the file.
+        final long untilRoll = flusher.nanosUntilHeartbeat();
+        assertTrue(untilRoll > TimeUnit.MINUTES.toNanos(59) && untilRoll <= TimeUnit.HOURS.toNanos(1) + 1);
+
+        // With pending records, the sync is due first.
+        assertEquals(CONTINUE, flusher.process(itemFromAvroRecordBuffer(newAvroRecordBuffer())));
+        final long untilSync = flusher.nanosUntilHeartbeat();
+        assertTrue(untilSync > TimeUnit.SECONDS.toNanos(9) && untilSync <= TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void shouldBackOffUntilReconnectIsDue() throws IOException {
+        final FileStrategyConfiguration fileStrategyConfiguration = setupConfiguration("1 hour", "1 hour", "200");
+
+        final FileManager manager = mock(FileManager.class);
+        final DivolteFile file = mock(DivolteFile.class);
+        final Item<AvroRecordBuffer> item = itemFromAvroRecordBuffer(newAvroRecordBuffer());
+        when(manager.createFile(anyString())).thenReturn(file);
+        doThrow(new IOException("append")).when(file).append(item.payload);
+        final long reconnectDelay = TimeUnit.MINUTES.toNanos(1);
+        final FileFlusher flusher = new FileFlusher(fileStrategyConfiguration, manager, reconnectDelay);
+
+        assertEquals(PAUSE, flusher.process(item));
+        final long backoff = flusher.pauseBackoffNanos(0);
+        assertTrue(backoff > TimeUnit.SECONDS.toNanos(59) && backoff <= reconnectDelay + 1);
+        assertEquals(PAUSE, flusher.heartbeat());
+    }
+
     private Item<AvroRecordBuffer> itemFromAvroRecordBuffer(final AvroRecordBuffer arb) {
         return Item.of(0, arb.getPartyId().value, arb);
     }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.ip2geo;
+
+import io.divolte.server.ip2geo.LookupService.ClosedServiceException;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@ParametersAreNonnullByDefault
+public class CachingLookupServiceTest {
+    private LookupService delegate;
+    private CachingLookupService service;
+
+    @Before
+    public void setUp() {
+        delegate = mock(LookupService.class);
+        service = new CachingLookupService(delegate, 10);
+    }
+
+    @Test
+    public void shouldOnlyLookupAddressOnce() throws ClosedServiceException, UnknownHostException {
+        final InetAddress address = InetAddress.getByName("192.0.2.1");
+        when(delegate.lookup(address)).thenReturn(Optional.empty());
+
+        assertFalse(service.lookup(address).isPresent());
+        assertFalse(service.lookup(InetAddress.getByName("192.0.2.1")).isPresent());
+
+        verify(delegate, times(1)).lookup(address);
+        assertEquals(1, service.stats().hitCount());
+        assertEquals(1, service.stats().missCount());
+    }
+
+    @Test
+    public void shouldLookupDistinctAddresses() throws ClosedServiceException, UnknownHostException {
+        final InetAddress ipv4Address = InetAddress.getByName("192.0.2.1");
+        final InetAddress ipv6Address = InetAddress.getByName("2001:db8::1");
+        when(delegate.lookup(any())).thenReturn(Optional.empty());
+
+        service.lookup(ipv4Address);
+        service.lookup(ipv6Address);
+
+        verify(delegate).lookup(ipv4Address);
+        verify(delegate).lookup(ipv6Address);
+        assertEquals(2, service.stats().missCount());
+    }
+
+    @Test
+    public void shouldNotCacheClosedService() throws ClosedServiceException, UnknownHostException {
+        final InetAddress address = InetAddress.getByName("192.0.2.1");
+        when(delegate.lookup(address)).thenThrow(new ClosedServiceException(delegate))
+                                      .thenReturn(Optional.empty());
+
+        try {
+            service.lookup(address);
+            fail("Expected the service to be closed.");
+        } catch (final ClosedServiceException e) {
+            assertSame(delegate, e.getService());
+        }
+        assertFalse(service.lookup(address).isPresent());
+        verify(delegate, times(2)).lookup(address);
+    }
+}
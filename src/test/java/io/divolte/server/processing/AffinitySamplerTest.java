@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class AffinitySamplerTest {
+    private static final int KEY_COUNT = 100000;
+
+    @Test
+    public void shouldKeepEverythingAtFullRate() {
+        assertEquals(KEY_COUNT, countAccepted(AffinitySampler.ofRate(1.0)));
+    }
+
+    @Test
+    public void shouldKeepNothingAtZeroRate() {
+        assertEquals(0, countAccepted(AffinitySampler.ofRate(0.0)));
+    }
+
+    @Test
+    public void shouldKeepApproximatelyTheRate() {
+        final long accepted = countAccepted(AffinitySampler.ofRate(0.1));
+        assertEquals(0.1, accepted / (double) KEY_COUNT, 0.01);
+    }
+
+    @Test
+    public void shouldKeepOrDropItemsWithSameAffinityTogether() {
+        final AffinitySampler sampler = AffinitySampler.ofRate(0.5);
+        IntStream.range(0, 1000).forEach(i -> {
+            final Item<String> first = Item.of(0, "party" + i, "first");
+            final Item<String> second = Item.of(1, "party" + i, "second");
+            assertEquals(sampler.accepts(first), sampler.accepts(second));
+        });
+    }
+
+    @Test
+    public void shouldNestSamplesOfDifferentRates() {
+        final AffinitySampler lower = AffinitySampler.ofRate(0.1);
+        final AffinitySampler higher = AffinitySampler.ofRate(0.5);
+        IntStream.range(0, KEY_COUNT)
+                 .mapToObj(i -> Item.of(0, "party" + i, ""))
+                 .filter(lower::accepts)
+                 .forEach(item -> assertTrue(higher.accepts(item)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidRate() {
+        AffinitySampler.ofRate(1.5);
+    }
+
+    private static long countAccepted(final AffinitySampler sampler) {
+        return IntStream.range(0, KEY_COUNT)
+                        .mapToObj(i -> Item.of(0, "party" + i, ""))
+                        .filter(sampler::accepts)
+                        .count();
+    }
+}
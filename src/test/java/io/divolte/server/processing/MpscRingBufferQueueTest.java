@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.processing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MpscRingBufferQueueTest {
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() {
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(5);
+        for (int i = 0; i < 8; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(8));
+    }
+
+    @Test
+    public void shouldDrainInOrderAndReuseSlots() {
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        final List<Integer> drained = new ArrayList<>();
+        for (int round = 0; round < 3; ++round) {
+            assertTrue(queue.isEmpty());
+            for (int i = 0; i < 4; ++i) {
+                assertTrue(queue.offer(round * 4 + i));
+            }
+            assertFalse(queue.isEmpty());
+            assertEquals(3, queue.drainTo(drained, 3));
+            assertEquals(1, queue.drainTo(drained, 3));
+        }
+        assertEquals(12, drained.size());
+        for (int i = 0; i < drained.size(); ++i) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+    }
+
+    @Test
+    public void shouldTimeOutWhenEmpty() throws InterruptedException {
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldWakeWaitingConsumer() throws InterruptedException {
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        final Thread producer = new Thread(() -> queue.offer(42));
+        producer.start();
+        assertEquals(Integer.valueOf(42), queue.poll(1, TimeUnit.MINUTES));
+        producer.join();
+    }
+
+    @Test(timeout = 60000)
+    public void shouldDeliverEveryItemFromConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int itemsPerProducer = 100000;
+        final MpscRingBufferQueue<long[]> queue = new MpscRingBufferQueue<>(1024);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            final int producerId = p;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < itemsPerProducer; ++i) {
+                    final long[] item = { producerId, i };
+                    while (!queue.offer(item)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        // Items from each producer must arrive exactly once, and in order.
+        final long[] expectedNext = new long[producers];
+        final List<long[]> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * itemsPerProducer) {
+            batch.clear();
+            if (0 == queue.drainTo(batch, 128)) {
+                final long[] item = queue.poll(1, TimeUnit.SECONDS);
+                if (null != item) {
+                    batch.add(item);
+                }
+            }
+            for (final long[] item : batch) {
+                assertEquals(expectedNext[(int) item[0]]++, item[1]);
+                ++received;
+            }
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class MappingContextTest {
+    @Test
+    public void shouldShareSlotsForEqualIdentifiers() {
+        final MappingContext context = new MappingContext();
+        final int slot = context.slot("userAgent()");
+        assertEquals(slot, context.slot("userAgent()"));
+        assertNotEquals(slot, context.slot("location()"));
+    }
+
+    @Test
+    public void shouldShareSlotAssignmentsBetweenContexts() {
+        final Map<String,Integer> assignments = new HashMap<>();
+        final MappingContext context1 = new MappingContext(assignments);
+        final MappingContext context2 = new MappingContext(assignments);
+        context1.slot("first");
+        assertEquals(context1.slot("second"), context2.slot("second"));
+        assertSame(context1.slotAssignments(), context2.slotAssignments());
+    }
+
+    @Test
+    public void shouldRememberValuesUntilReset() {
+        final MappingContext context = new MappingContext();
+        final int slot = context.slot("value");
+        assertNull(context.get(slot));
+        context.put(slot, Optional.of("something"));
+        assertEquals(Optional.of("something"), context.get(slot));
+        context.reset();
+        assertNull(context.get(slot));
+    }
+
+    @Test
+    public void shouldGrowToAccommodateManySlots() {
+        final MappingContext context = new MappingContext();
+        for (int i = 0; i < 1000; ++i) {
+            context.put(context.slot("value" + i), Optional.of(i));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(Optional.of(i), context.get(context.slot("value" + i)));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import io.divolte.server.ServerTestUtils;
+import io.divolte.server.recordmapping.DslRecordMapping.MatcherValueProducer;
+import io.divolte.server.recordmapping.DslRecordMapping.PrimitiveValueProducer;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class MatcherValueProducerTest {
+    private static final String[] INPUTS = {
+        "",
+        "http://www.example.com/",
+        "http://www.example.com/path/with/42/shoes.html",
+        "https://www.example.com/",
+        "http://www.example.com/\n",
+        "line\nbreak.html",
+        "a.html",
+        "a$",
+        "a\\",
+        "axhtml",
+    };
+
+    private static final String[] REGEXES = {
+        "^http://www\\.example\\.com/.*",
+        "http://www.example.com/.*",
+        ".*\\.html$",
+        ".*\\.html",
+        "^a\\.html$",
+        "a\\$",
+        "a\\\\",
+        "a\\\\.*",
+        "^$",
+        ".*",
+        "^",
+        "\\.*",
+        "^http://[^/]+/path/with/([0-9]+)/.*",
+        "\\d+",
+    };
+
+    private static boolean matches(final String regex, final String input) {
+        final PrimitiveValueProducer<String> source =
+            new PrimitiveValueProducer<>("stub", String.class, (e, c) -> Optional.of(input));
+        return new MatcherValueProducer(source, regex).matches()
+                                                      .produce(ServerTestUtils.createMockBrowserEvent(), new MappingContext())
+                                                      .orElseThrow(AssertionError::new);
+    }
+
+    @Test
+    public void shouldMatchLikeTheRegexEngine() {
+        for (final String regex : REGEXES) {
+            final Pattern pattern = Pattern.compile(regex);
+            for (final String input : INPUTS) {
+                assertEquals("Unexpected result for " + regex + " against " + input,
+                             pattern.matcher(input).matches(), matches(regex, input));
+            }
+        }
+    }
+
+    @Test(expected = SchemaMappingException.class)
+    public void shouldRejectInvalidRegexWhenMappingIsBuilt() {
+        new MatcherValueProducer(new PrimitiveValueProducer<>("stub", String.class, (e, c) -> Optional.empty()), "([a-z");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import net.sf.uadetector.ReadableUserAgent;
+import net.sf.uadetector.UserAgentStringParser;
+import net.sf.uadetector.service.UADetectorServiceFactory;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class PrecompiledUserAgentStringParserTest {
+    private static final String[] USER_AGENTS = {
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_13_6) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/69.0.3497.100 Safari/537.36",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:62.0) Gecko/20100101 Firefox/62.0",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 12_0 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/12.0 Mobile/15E148 Safari/604.1",
+        "Mozilla/5.0 (iPad; CPU OS 9_3_5 like Mac OS X) AppleWebKit/601.1.46 (KHTML, like Gecko) Version/9.0 Mobile/13G36 Safari/601.1",
+        "Mozilla/5.0 (Linux; Android 8.0.0; SM-G960F Build/R16NW) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/62.0.3202.84 Mobile Safari/537.36",
+        "Mozilla/5.0 (Windows NT 6.1; WOW64; Trident/7.0; rv:11.0) like Gecko",
+        "Mozilla/4.0 (compatible; MSIE 8.0; Windows NT 5.1; Trident/4.0)",
+        "Opera/9.80 (Windows NT 6.1; U; en) Presto/2.10.229 Version/11.62",
+        "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:52.0) Gecko/20100101 Firefox/52.0",
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+        "Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)",
+        "Googlebot/2.1 (+http://www.google.com/bot.html)",
+        "curl/7.54.0",
+        "python-requests/2.19.1",
+        "Wget/1.19.4 (linux-gnu)",
+        "MOZILLA/5.0 (WINDOWS NT 10.0) CHROME/69.0",
+        "",
+        "Not a user agent at all."
+    };
+
+    @Test
+    public void shouldParseLikeTheResourceModuleParser() {
+        final UserAgentStringParser reference = UADetectorServiceFactory.getResourceModuleParser();
+        final UserAgentStringParser precompiled = PrecompiledUserAgentStringParser.getInstance();
+        assertEquals(reference.getDataVersion(), precompiled.getDataVersion());
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(userAgent, describe(reference.parse(userAgent)), describe(precompiled.parse(userAgent)));
+        }
+    }
+
+    private static String describe(final ReadableUserAgent userAgent) {
+        return String.join("|",
+                           userAgent.getName(),
+                           userAgent.getFamily().getName(),
+                           userAgent.getProducer(),
+                           userAgent.getType().getName(),
+                           userAgent.getVersionNumber().toVersionString(),
+                           userAgent.getDeviceCategory().getName(),
+                           userAgent.getOperatingSystem().getName(),
+                           userAgent.getOperatingSystem().getFamily().getName(),
+                           userAgent.getOperatingSystem().getVersionNumber().toVersionString());
+    }
+
+    @Test
+    public void shouldExtractLongestLiteral() {
+        assertEquals(Optional.of("opera/9.8"), requiredLiteral("^Opera\\/9\\.8.*Version\\/([0-9.]+)"));
+        assertEquals(Optional.of("iphone os "), requiredLiteral("iPhone OS ([0-9_]+)"));
+    }
+
+    @Test
+    public void shouldNotRequireOptionalCharacters() {
+        assertEquals(Optional.of("mozil"), requiredLiteral("Mozill?a"));
+        assertEquals(Optional.of("bc"), requiredLiteral("a{2}bc"));
+        assertEquals(Optional.of("mobile"), requiredLiteral("Mobile( Safari)?\\/x"));
+    }
+
+    @Test
+    public void shouldNotExtractLiteralFromAlternatives() {
+        assertFalse(requiredLiteral("Chrome|Chromium").isPresent());
+        assertFalse(requiredLiteral("(?i)Chrome").isPresent());
+        assertFalse(requiredLiteral("[a-z]+").isPresent());
+        // Escapes spanning several characters must not contribute their trailing characters.
+        assertFalse(requiredLiteral("Mozilla\\x41").isPresent());
+        assertFalse(requiredLiteral("Mozill\\u00e9").isPresent());
+        assertFalse(requiredLiteral("Mozilla\\0101").isPresent());
+        assertFalse(requiredLiteral("(?<name>Mozilla)\\k<name>").isPresent());
+        assertFalse(requiredLiteral("Mozilla\\cX").isPresent());
+        assertFalse(requiredLiteral("Mozilla\\p{Alpha}").isPresent());
+        assertFalse(requiredLiteral("Mozilla\\P{Alpha}").isPresent());
+        assertFalse(requiredLiteral("(Mozilla)Safari\\12").isPresent());
+    }
+
+    private static Optional<String> requiredLiteral(final String regex) {
+        return PrecompiledUserAgentStringParser.requiredLiteral(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.recordmapping;
+
+import com.typesafe.config.ConfigFactory;
+import io.divolte.server.config.ValidatedConfiguration;
+import net.sf.uadetector.ReadableUserAgent;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class UserAgentParserAndCacheTest {
+    private static final String USER_AGENT =
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_13_6) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/69.0.3497.100 Safari/537.36";
+
+    @Test
+    public void shouldShareCacheForEquivalentConfiguration() {
+        final ValidatedConfiguration vc1 = new ValidatedConfiguration(() -> ConfigFactory.parseResources("reference.conf"));
+        final ValidatedConfiguration vc2 = new ValidatedConfiguration(() -> ConfigFactory.parseResources("reference.conf"));
+        assertSame(UserAgentParserAndCache.forConfiguration(vc1), UserAgentParserAndCache.forConfiguration(vc2));
+    }
+
+    @Test
+    public void shouldCountCacheHitsAndMisses() {
+        final ValidatedConfiguration vc = new ValidatedConfiguration(() -> ConfigFactory.parseResources("reference.conf"));
+        // A private instance, so that other users of the shared cache don't affect the counts.
+        final UserAgentParserAndCache parserAndCache =
+            new UserAgentParserAndCache(vc.configuration().global.mapper.userAgentParser);
+
+        final Optional<ReadableUserAgent> first = parserAndCache.tryParse(USER_AGENT);
+        final Optional<ReadableUserAgent> second = parserAndCache.tryParse(USER_AGENT);
+
+        assertTrue(first.isPresent());
+        assertEquals("Chrome", first.get().getName());
+        assertSame(first.get(), second.get());
+        assertEquals(1, parserAndCache.getMisses());
+        assertEquals(1, parserAndCache.getHits());
+        assertEquals(0.5, parserAndCache.getHitRate(), 0.0);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.processing.Item;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.PAUSE;
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class AsyncTopicFlusherTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                     .endRecord();
+
+    private Semaphore window;
+    private TestFlusher flusher;
+    private long counter;
+
+    @Before
+    public void setUp() {
+        window = new Semaphore(2);
+        flusher = new TestFlusher(window);
+    }
+
+    @Test
+    public void shouldSendWithoutWaiting() {
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertEquals(2, flusher.sent.size());
+        assertEquals(0, window.availablePermits());
+    }
+
+    @Test
+    public void shouldPauseWhileWindowIsFull() {
+        final Queue<Item<AvroRecordBuffer>> batch = batchOf(3);
+        assertEquals(PAUSE, flusher.process(batch));
+        assertEquals(2, flusher.sent.size());
+        assertEquals(1, batch.size());
+
+        flusher.callbacks.get(0).onSuccess();
+        assertEquals(CONTINUE, flusher.process(batch));
+        assertEquals(3, flusher.sent.size());
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void shouldHoldOnToSingleItemWhileWindowIsFull() {
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertEquals(PAUSE, flusher.process(batchOf(1).remove()));
+        assertEquals(2, flusher.sent.size());
+        assertEquals(PAUSE, flusher.heartbeat());
+
+        flusher.callbacks.get(0).onSuccess();
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(3, flusher.sent.size());
+    }
+
+    @Test
+    public void shouldRetryTransientFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        flusher.callbacks.get(0).onFailure(new TransientException());
+        assertEquals(2, window.availablePermits());
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(2, flusher.sent.size());
+        assertEquals(flusher.sent.get(0), flusher.sent.get(1));
+    }
+
+    @Test
+    public void shouldSendRetriesBeforeNewEvents() {
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        flusher.callbacks.get(0).onFailure(new TransientException());
+
+        // There's room for the retry, but not for the new event after it.
+        final Queue<Item<AvroRecordBuffer>> batch = batchOf(1);
+        assertEquals(PAUSE, flusher.process(batch));
+        assertEquals(3, flusher.sent.size());
+        assertEquals(flusher.sent.get(0), flusher.sent.get(2));
+        assertEquals(1, batch.size());
+    }
+
+    @Test
+    public void shouldAbandonFatalFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        flusher.callbacks.get(0).onFailure(new IllegalStateException("Test failure"));
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(1, flusher.sent.size());
+        assertEquals(2, window.availablePermits());
+    }
+
+    @Test
+    public void shouldReleaseWindowWhenSendThrows() {
+        flusher.failSends = true;
+        try {
+            flusher.process(batchOf(1));
+            fail("Expected the failure to send to propagate.");
+        } catch (final IllegalStateException e) {
+            assertEquals(2, window.availablePermits());
+        }
+    }
+
+    private Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+            final AvroRecordBuffer record =
+                AvroRecordBuffer.fromRecord(partyId, partyId, "event" + counter, Instant.EPOCH,
+                                            new GenericRecordBuilder(MINIMAL_SCHEMA).set("counter", counter++).build());
+            batch.add(Item.of(0, partyId.value, record));
+        }
+        return batch;
+    }
+
+    private static final class TransientException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TransientException() {
+            super("Test transient failure");
+        }
+    }
+
+    private static final class TestFlusher extends AsyncTopicFlusher<String> {
+        private final List<String> sent = new ArrayList<>();
+        private final List<SendCallback> callbacks = new ArrayList<>();
+        private boolean failSends;
+
+        TestFlusher(final Semaphore inFlightWindow) {
+            super(inFlightWindow);
+        }
+
+        @Override
+        protected String buildRecord(final Item<AvroRecordBuffer> item) {
+            return item.payload.getEventId();
+        }
+
+        @Override
+        protected void sendAsync(final String record, final SendCallback callback) {
+            if (failSends) {
+                throw new IllegalStateException("Test send failure");
+            }
+            sent.add(record);
+            callbacks.add(callback);
+        }
+
+        @Override
+        protected boolean isRetryable(final Throwable cause) {
+            return cause instanceof TransientException;
+        }
+
+        @Override
+        protected String describeRecord(final String record) {
+            return record;
+        }
+    }
+}
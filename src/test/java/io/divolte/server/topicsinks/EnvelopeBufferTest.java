@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import com.google.common.base.Strings;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class EnvelopeBufferTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                              .requiredString("payload")
+                     .endRecord();
+    private static final DivolteSchema SCHEMA = new DivolteSchema(MINIMAL_SCHEMA, Optional.empty());
+    private static final DivolteIdentifier PARTY_ID = DivolteIdentifier.generate(0L);
+
+    @Test
+    public void shouldSealEventsAsObjectContainer() throws IOException {
+        final EnvelopeBuffer buffer = new EnvelopeBuffer(SCHEMA, CodecFactory.deflateCodec(6), 10, 1024, Duration.ofSeconds(1));
+        for (int i = 0; i < 3; ++i) {
+            buffer.add(record(i), 0L);
+        }
+        final Envelope envelope = buffer.seal();
+        assertTrue(buffer.isEmpty());
+        assertEquals(3, envelope.eventCount);
+        assertEquals(PARTY_ID, envelope.partyId);
+
+        try (final DataFileStream<GenericRecord> stream =
+                 new DataFileStream<>(new ByteArrayInputStream(envelope.toBytes()), new GenericDatumReader<>(MINIMAL_SCHEMA))) {
+            assertEquals(SCHEMA.fingerprint(), stream.getMetaString(EnvelopeBuffer.METADATA_SCHEMA_FINGERPRINT));
+            assertEquals("deflate", stream.getMetaString("avro.codec"));
+            for (long i = 0; i < 3; ++i) {
+                assertTrue(stream.hasNext());
+                assertEquals(i, stream.next().get("counter"));
+            }
+            assertFalse(stream.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldBeDueWhenFull() {
+        final EnvelopeBuffer buffer = new EnvelopeBuffer(SCHEMA, CodecFactory.nullCodec(), 2, 1024, Duration.ofSeconds(1));
+        buffer.add(record(0), 0L);
+        assertFalse(buffer.isDue(0L));
+        buffer.add(record(1), 0L);
+        assertTrue(buffer.isFull());
+        assertTrue(buffer.isDue(0L));
+    }
+
+    @Test
+    public void shouldBeDueAfterMaximumDelay() {
+        final EnvelopeBuffer buffer = new EnvelopeBuffer(SCHEMA, CodecFactory.nullCodec(), 10, 1024, Duration.ofMillis(100));
+        assertFalse(buffer.isDue(0L));
+        buffer.add(record(0), 0L);
+        assertFalse(buffer.isDue(TimeUnit.MILLISECONDS.toNanos(99)));
+        assertTrue(buffer.isDue(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void shouldNotExceedMaximumSize() {
+        final AvroRecordBuffer record = record(0);
+        final int size = record.getByteBuffer().remaining();
+        final EnvelopeBuffer buffer = new EnvelopeBuffer(SCHEMA, CodecFactory.nullCodec(), 10, 2 * size + size / 2, Duration.ofSeconds(1));
+        assertTrue(buffer.fits(record));
+        buffer.add(record, 0L);
+        buffer.add(record, 0L);
+        assertFalse(buffer.isFull());
+        assertFalse(buffer.fits(record));
+    }
+
+    private static AvroRecordBuffer record(final long counter) {
+        final GenericRecord record = new GenericRecordBuilder(MINIMAL_SCHEMA)
+            .set("counter", counter)
+            .set("payload", Strings.repeat("x", 100))
+            .build();
+        return AvroRecordBuffer.fromRecord(PARTY_ID, PARTY_ID, "-", Instant.EPOCH, record);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import static io.divolte.server.processing.ItemProcessor.DEFAULT_HEARTBEAT_INTERVAL_NANOS;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.PAUSE;
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class EnvelopeFlusherTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                              .requiredString("padding")
+                     .endRecord();
+    private static final DivolteSchema SCHEMA = new DivolteSchema(MINIMAL_SCHEMA, Optional.empty());
+    // Added to each counter so that every record has the same size when encoded.
+    private static final long COUNTER_OFFSET = 1L << 62;
+    private static final int RECORD_SIZE = record(0).getByteBuffer().remaining();
+
+    private static final Duration LONG_DELAY = Duration.ofHours(1);
+
+    private long counter;
+
+    @Test
+    public void shouldSealWhenEnvelopeIsFull() throws IOException {
+        final TestFlusher flusher = new TestFlusher(3, Integer.MAX_VALUE, LONG_DELAY);
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertTrue(flusher.delivered.isEmpty());
+
+        assertEquals(CONTINUE, flusher.process(batchOf(1).remove()));
+        assertEquals(1, flusher.delivered.size());
+        assertEquals(ImmutableList.of(0L, 1L, 2L), counters(flusher.delivered.get(0)));
+    }
+
+    @Test
+    public void shouldSealBeforeEventThatDoesNotFit() throws IOException {
+        final TestFlusher flusher = new TestFlusher(100, 2 * RECORD_SIZE + RECORD_SIZE / 2, LONG_DELAY);
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertTrue(flusher.delivered.isEmpty());
+
+        // The third event would take the envelope past its maximum size.
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        assertEquals(1, flusher.delivered.size());
+        assertEquals(ImmutableList.of(0L, 1L), counters(flusher.delivered.get(0)));
+
+        flusher.cleanup();
+        assertEquals(2, flusher.delivered.size());
+        assertEquals(ImmutableList.of(2L), counters(flusher.delivered.get(1)));
+    }
+
+    @Test
+    public void shouldSealLargeEventOnItsOwn() throws IOException {
+        final TestFlusher flusher = new TestFlusher(100, RECORD_SIZE / 2, LONG_DELAY);
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertEquals(2, flusher.delivered.size());
+        assertEquals(ImmutableList.of(0L), counters(flusher.delivered.get(0)));
+        assertEquals(ImmutableList.of(1L), counters(flusher.delivered.get(1)));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldSealAfterMaxDelay() throws InterruptedException {
+        final Duration maxDelay = Duration.ofMillis(200);
+        final TestFlusher flusher = new TestFlusher(100, Integer.MAX_VALUE, maxDelay);
+        assertEquals(DEFAULT_HEARTBEAT_INTERVAL_NANOS, flusher.nanosUntilHeartbeat());
+
+        assertEquals(CONTINUE, flusher.process(batchOf(1).remove()));
+        assertTrue(flusher.delivered.isEmpty());
+        assertTrue(flusher.nanosUntilHeartbeat() <= maxDelay.toNanos());
+
+        // A heartbeat before the envelope is due leaves it alone.
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertTrue(flusher.delivered.isEmpty());
+
+        long nanosUntilHeartbeat;
+        while (0 < (nanosUntilHeartbeat = flusher.nanosUntilHeartbeat())) {
+            TimeUnit.NANOSECONDS.sleep(nanosUntilHeartbeat);
+        }
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(1, flusher.delivered.size());
+        assertEquals(1, flusher.delivered.get(0).eventCount);
+        assertEquals(DEFAULT_HEARTBEAT_INTERVAL_NANOS, flusher.nanosUntilHeartbeat());
+    }
+
+    @Test
+    public void shouldSealDueEnvelopeWhenProcessingBatch() {
+        final TestFlusher flusher = new TestFlusher(100, Integer.MAX_VALUE, Duration.ZERO);
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        assertEquals(1, flusher.delivered.size());
+    }
+
+    @Test
+    public void shouldRetryPendingEnvelopesWhilePaused() {
+        final TestFlusher flusher = new TestFlusher(1, Integer.MAX_VALUE, LONG_DELAY);
+        flusher.failing = true;
+        assertEquals(PAUSE, flusher.process(batchOf(1).remove()));
+        assertEquals(PAUSE, flusher.heartbeat());
+        assertEquals(2, flusher.attempts.size());
+        assertEquals(flusher.attempts.get(0), flusher.attempts.get(1));
+        assertTrue(flusher.delivered.isEmpty());
+
+        flusher.failing = false;
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(flusher.attempts.get(0), flusher.delivered);
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(3, flusher.attempts.size());
+    }
+
+    @Test
+    public void shouldFlushOnCleanup() throws IOException {
+        final TestFlusher flusher = new TestFlusher(2, Integer.MAX_VALUE, LONG_DELAY);
+        flusher.failing = true;
+        assertEquals(PAUSE, flusher.process(batchOf(3)));
+        assertTrue(flusher.delivered.isEmpty());
+
+        // Both the pending envelope and the partial one are sent.
+        flusher.failing = false;
+        flusher.cleanup();
+        assertEquals(2, flusher.delivered.size());
+        assertEquals(ImmutableList.of(0L, 1L), counters(flusher.delivered.get(0)));
+        assertEquals(ImmutableList.of(2L), counters(flusher.delivered.get(1)));
+    }
+
+    @Test
+    public void shouldNotSendOnCleanupWhenEmpty() {
+        final TestFlusher flusher = new TestFlusher(2, Integer.MAX_VALUE, LONG_DELAY);
+        flusher.cleanup();
+        assertTrue(flusher.attempts.isEmpty());
+    }
+
+    private static List<Long> counters(final Envelope envelope) throws IOException {
+        final List<Long> counters = new ArrayList<>();
+        try (final DataFileStream<GenericRecord> stream =
+                 new DataFileStream<>(new ByteArrayInputStream(envelope.toBytes()), new GenericDatumReader<>())) {
+            assertEquals(SCHEMA.fingerprint(), stream.getMetaString(EnvelopeBuffer.METADATA_SCHEMA_FINGERPRINT));
+            stream.forEach(record -> counters.add((Long) record.get("counter") - COUNTER_OFFSET));
+        }
+        assertEquals(envelope.eventCount, counters.size());
+        return counters;
+    }
+
+    private Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            final AvroRecordBuffer record = record(counter++);
+            batch.add(Item.of(0, record.getPartyId().value, record));
+        }
+        return batch;
+    }
+
+    private static AvroRecordBuffer record(final long counter) {
+        final GenericRecord record = new GenericRecordBuilder(MINIMAL_SCHEMA)
+            .set("counter", COUNTER_OFFSET + counter)
+            .set("padding", Strings.repeat("x", 100))
+            .build();
+        final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+        return AvroRecordBuffer.fromRecord(partyId, partyId, "event" + counter, Instant.EPOCH, record);
+    }
+
+    private static final class TestFlusher extends EnvelopeFlusher<Envelope> {
+        private final List<List<Envelope>> attempts = new ArrayList<>();
+        private final List<Envelope> delivered = new ArrayList<>();
+        private boolean failing;
+
+        TestFlusher(final int maxEvents, final int maxBytes, final Duration maxDelay) {
+            super(new EnvelopeBuffer(SCHEMA, CodecFactory.nullCodec(), maxEvents, maxBytes, maxDelay));
+        }
+
+        @Override
+        protected Envelope buildRecord(final Envelope envelope) {
+            return envelope;
+        }
+
+        @Override
+        protected ImmutableList<Envelope> sendBatch(final List<Envelope> batch) {
+            attempts.add(ImmutableList.copyOf(batch));
+            if (failing) {
+                return ImmutableList.copyOf(batch);
+            }
+            delivered.addAll(batch);
+            return ImmutableList.of();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.processing.Item;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class AsyncKafkaFlusherTest {
+    private MockProducer<DivolteIdentifier, AvroRecordBuffer> producer;
+    private Semaphore window;
+    private AsyncKafkaFlusher flusher;
+
+    @Before
+    public void setUp() {
+        // Sends only complete when the test says so.
+        producer = new MockProducer<>(false, Serializers.createKeySerializer(), new AvroRecordBufferSerializer());
+        window = new Semaphore(2);
+        flusher = new AsyncKafkaFlusher(KafkaRecordFactory.withoutHeaders("topic"), producer, window);
+    }
+
+    @Test
+    public void shouldSendWithoutFlushing() {
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        assertEquals(2, producer.history().size());
+        assertFalse(producer.flushed());
+    }
+
+    @Test
+    public void shouldRetryTransientFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        assertTrue(producer.errorNext(new TimeoutException("Test timeout")));
+        assertEquals(2, window.availablePermits());
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(2, producer.history().size());
+        assertEquals(producer.history().get(0), producer.history().get(1));
+    }
+
+    @Test
+    public void shouldAbandonFatalFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        assertTrue(producer.errorNext(new RecordTooLargeException("Test failure")));
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        assertEquals(1, producer.history().size());
+        assertEquals(2, window.availablePermits());
+    }
+
+    private static Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            batch.add(Item.of(0, "party" + i, generateAvroRecord()));
+        }
+        return batch;
+    }
+
+    private static AvroRecordBuffer generateAvroRecord() {
+        final GenericRecord record = new GenericRecordBuilder(DefaultEventRecord.getClassSchema())
+            .set("detectedDuplicate", false)
+            .set("detectedCorruption", false)
+            .set("firstInSession", false)
+            .set("timestamp", Instant.EPOCH.toEpochMilli())
+            .set("clientTimestamp", 0L)
+            .set("remoteHost", "localhost")
+            .build();
+        return AvroRecordBuffer.fromRecord(DivolteIdentifier.generate(0L),
+                                           DivolteIdentifier.generate(1L),
+                                           "-",
+                                           Instant.EPOCH,
+                                           record,
+                                           Optional.empty());
+    }
+}
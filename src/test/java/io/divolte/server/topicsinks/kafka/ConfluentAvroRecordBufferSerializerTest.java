@@ -25,7 +25,9 @@ import org.junit.Test;
 
 import java.time.Instant;
 import java.util.Collections;
+import java.util.Optional;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -38,7 +40,7 @@ public class ConfluentAvroRecordBufferSerializerTest {
         final byte[] serializedRecord;
         try (final ConfluentAvroRecordBufferSerializer serializer = new ConfluentAvroRecordBufferSerializer(schemaId)) {
             serializer.configure(Collections.emptyMap(), false);
-            serializedRecord = serializer.serialize("atopical", generateAvroRecord());
+            serializedRecord = serializer.serialize("atopical", generateAvroRecord(Optional.empty()));
         }
         // Check the header.
         assertEquals((byte)0x00, serializedRecord[0]);
@@ -50,7 +52,30 @@ public class ConfluentAvroRecordBufferSerializerTest {
         assertTrue(5 < serializedRecord.length);
     }
 
-    private static AvroRecordBuffer generateAvroRecord() {
+    @Test
+    public void serializedRecordsWithReservedHeaderMatchThoseWithout() {
+        final int schemaId = 0x1DEFACED;
+        try (final ConfluentAvroRecordBufferSerializer serializer = new ConfluentAvroRecordBufferSerializer(schemaId)) {
+            serializer.configure(Collections.emptyMap(), false);
+            final byte[] copiedRecord = serializer.serialize("atopical", generateAvroRecord(Optional.empty()));
+            final byte[] reservedRecord = serializer.serialize("atopical", generateAvroRecord(Optional.of(schemaId)));
+            final byte[] otherIdRecord = serializer.serialize("atopical", generateAvroRecord(Optional.of(42)));
+            assertArrayEquals(copiedRecord, reservedRecord);
+            assertArrayEquals(copiedRecord, otherIdRecord);
+        }
+    }
+
+    @Test
+    public void nakedRecordsOmitReservedHeader() {
+        try (final AvroRecordBufferSerializer serializer = new AvroRecordBufferSerializer()) {
+            serializer.configure(Collections.emptyMap(), false);
+            final byte[] nakedRecord = serializer.serialize("atopical", generateAvroRecord(Optional.empty()));
+            final byte[] reservedRecord = serializer.serialize("atopical", generateAvroRecord(Optional.of(42)));
+            assertArrayEquals(nakedRecord, reservedRecord);
+        }
+    }
+
+    private static AvroRecordBuffer generateAvroRecord(final Optional<Integer> confluentId) {
         final GenericRecord record = new GenericRecordBuilder(DefaultEventRecord.getClassSchema())
             .set("detectedDuplicate", false)
             .set("detectedCorruption", false)
@@ -63,6 +88,7 @@ public class ConfluentAvroRecordBufferSerializerTest {
                                            DivolteIdentifier.generate(1L),
                                            "-",
                                            Instant.EPOCH,
-                                           record);
+                                           record,
+                                           confluentId);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class KafkaEnvelopeFlusherTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                     .endRecord();
+    private static final DivolteSchema SCHEMA = new DivolteSchema(MINIMAL_SCHEMA, Optional.empty());
+
+    private MockProducer<DivolteIdentifier, byte[]> producer;
+    private KafkaEnvelopeFlusher flusher;
+    private long counter;
+
+    @Before
+    public void setUp() {
+        producer = new MockProducer<>(true, Serializers.createKeySerializer(), new ByteArraySerializer());
+        final EnvelopeBuffer envelopeBuffer =
+            new EnvelopeBuffer(SCHEMA, CodecFactory.deflateCodec(6), 2, Integer.MAX_VALUE, Duration.ofHours(1));
+        flusher = new KafkaEnvelopeFlusher("topic", producer, envelopeBuffer);
+    }
+
+    @Test
+    public void shouldSendEnvelopeAsRecordValue() throws IOException {
+        final Queue<Item<AvroRecordBuffer>> batch = batchOf(3);
+        final AvroRecordBuffer first = batch.peek().payload;
+        assertEquals(CONTINUE, flusher.process(batch));
+
+        assertEquals(1, producer.history().size());
+        final ProducerRecord<DivolteIdentifier, byte[]> record = producer.history().get(0);
+        assertEquals("topic", record.topic());
+        assertEquals(first.getPartyId(), record.key());
+        assertEquals(Long.valueOf(first.getTimestamp().toEpochMilli()), record.timestamp());
+        assertEquals(2, counters(record.value()).size());
+    }
+
+    @Test
+    public void shouldSendPartialEnvelopeOnCleanup() throws IOException {
+        assertEquals(CONTINUE, flusher.process(batchOf(3)));
+        flusher.cleanup();
+
+        assertEquals(2, producer.history().size());
+        final List<Long> counters = counters(producer.history().get(0).value());
+        counters.addAll(counters(producer.history().get(1).value()));
+        assertEquals(3, counters.size());
+        for (int i = 0; i < counters.size(); ++i) {
+            assertEquals(Long.valueOf(i), counters.get(i));
+        }
+    }
+
+    private static List<Long> counters(final byte[] envelope) throws IOException {
+        final List<Long> counters = new ArrayList<>();
+        try (final DataFileStream<GenericRecord> stream =
+                 new DataFileStream<>(new ByteArrayInputStream(envelope), new GenericDatumReader<>())) {
+            assertEquals(SCHEMA.fingerprint(), stream.getMetaString(EnvelopeBuffer.METADATA_SCHEMA_FINGERPRINT));
+            stream.forEach(record -> counters.add((Long) record.get("counter")));
+        }
+        return counters;
+    }
+
+    private Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            final GenericRecord record = new GenericRecordBuilder(MINIMAL_SCHEMA).set("counter", counter++).build();
+            final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+            batch.add(Item.of(0, partyId.value, AvroRecordBuffer.fromRecord(partyId, partyId, "-", Instant.ofEpochSecond(counter), record)));
+        }
+        return batch;
+    }
+}
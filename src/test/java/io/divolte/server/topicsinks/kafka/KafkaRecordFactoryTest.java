@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.kafka;
+
+import com.google.common.collect.ImmutableList;
+import io.divolte.record.DefaultEventRecord;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.AvroRecordEncoder;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+@ParametersAreNonnullByDefault
+public class KafkaRecordFactoryTest {
+    private static final DivolteIdentifier PARTY_ID = DivolteIdentifier.generate(0L);
+
+    @Test
+    public void shouldOmitHeadersByDefault() {
+        final ProducerRecord<DivolteIdentifier, AvroRecordBuffer> record =
+            KafkaRecordFactory.withoutHeaders("topic").buildRecord(item(0, Optional.of("pageView")));
+        assertEquals("topic", record.topic());
+        assertEquals(PARTY_ID, record.key());
+        assertEquals(Long.valueOf(Instant.EPOCH.toEpochMilli()), record.timestamp());
+        assertFalse(record.headers().iterator().hasNext());
+    }
+
+    @Test
+    public void shouldIncludeEventMetadataInHeaders() {
+        final DivolteSchema schema = new DivolteSchema(DefaultEventRecord.getClassSchema(), Optional.of(0x2a));
+        final KafkaRecordFactory factory =
+            KafkaRecordFactory.withHeaders("topic", schema, ImmutableList.of("first", "second"));
+
+        final Headers headers = factory.buildRecord(item(1, Optional.of("pageView"))).headers();
+        assertEquals(PARTY_ID.toString(), header(headers, "partyIdentifier"));
+        assertEquals("event", header(headers, "eventIdentifier"));
+        assertEquals("pageView", header(headers, "eventType"));
+        assertEquals("second", header(headers, "mapping"));
+        assertEquals(schema.fingerprint(), header(headers, "schemaFingerprint"));
+        assertEquals("0x2a", header(headers, "schemaConfluentId"));
+    }
+
+    @Test
+    public void shouldOmitHeadersForAbsentMetadata() {
+        final DivolteSchema schema = new DivolteSchema(DefaultEventRecord.getClassSchema(), Optional.empty());
+        final KafkaRecordFactory factory = KafkaRecordFactory.withHeaders("topic", schema, ImmutableList.of("first"));
+
+        final Headers headers = factory.buildRecord(item(0, Optional.empty())).headers();
+        assertNull(headers.lastHeader("eventType"));
+        assertNull(headers.lastHeader("schemaConfluentId"));
+        assertEquals("first", header(headers, "mapping"));
+    }
+
+    private static String header(final Headers headers, final String key) {
+        final Header header = headers.lastHeader(key);
+        assertNotNull("Missing header: " + key, header);
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static Item<AvroRecordBuffer> item(final int mappingIndex, final Optional<String> eventType) {
+        final GenericRecord record = new GenericRecordBuilder(DefaultEventRecord.getClassSchema())
+            .set("detectedDuplicate", false)
+            .set("detectedCorruption", false)
+            .set("firstInSession", false)
+            .set("timestamp", Instant.EPOCH.toEpochMilli())
+            .set("clientTimestamp", 0L)
+            .set("remoteHost", "localhost")
+            .build();
+        final AvroRecordBuffer buffer = AvroRecordBuffer.fromRecord(PARTY_ID,
+                                                                    DivolteIdentifier.generate(1L),
+                                                                    "event",
+                                                                    eventType,
+                                                                    Instant.EPOCH,
+                                                                    record,
+                                                                    Optional.empty(),
+                                                                    AvroRecordEncoder.forCurrentThread());
+        return Item.of(mappingIndex, PARTY_ID.value, buffer);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.pubsub;
+
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.PubsubMessage;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import io.grpc.Status;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@ParametersAreNonnullByDefault
+public class AsyncGoogleCloudPubSubFlusherTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                     .endRecord();
+
+    private final List<SettableApiFuture<String>> pending = new ArrayList<>();
+    private Publisher publisher;
+    private Semaphore window;
+    private AsyncGoogleCloudPubSubFlusher flusher;
+    private long counter;
+
+    @Before
+    public void setUp() {
+        // Publishing only completes when the test says so.
+        publisher = mock(Publisher.class);
+        when(publisher.publish(any(PubsubMessage.class))).thenAnswer(invocationOnMock -> {
+            final SettableApiFuture<String> future = SettableApiFuture.create();
+            pending.add(future);
+            return future;
+        });
+        window = new Semaphore(2);
+        flusher = new AsyncGoogleCloudPubSubFlusher(publisher, new DivolteSchema(MINIMAL_SCHEMA, Optional.empty()), window);
+    }
+
+    @Test
+    public void shouldPublishWithoutWaiting() {
+        assertEquals(CONTINUE, flusher.process(batchOf(2)));
+        verify(publisher, times(2)).publish(any(PubsubMessage.class));
+    }
+
+    @Test
+    public void shouldRetryTransientFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        pending.get(0).setException(new ApiException("simulated transient failure",
+                                                     new IOException(),
+                                                     GrpcStatusCode.of(Status.Code.INTERNAL),
+                                                     true));
+        assertEquals(2, window.availablePermits());
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        verify(publisher, times(2)).publish(any(PubsubMessage.class));
+    }
+
+    @Test
+    public void shouldAbandonPermanentFailures() {
+        assertEquals(CONTINUE, flusher.process(batchOf(1)));
+        pending.get(0).setException(new ApiException("simulated permanent failure",
+                                                     new IOException(),
+                                                     GrpcStatusCode.of(Status.Code.NOT_FOUND),
+                                                     false));
+
+        assertEquals(CONTINUE, flusher.heartbeat());
+        verify(publisher).publish(any(PubsubMessage.class));
+        assertEquals(2, window.availablePermits());
+    }
+
+    private Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            final GenericRecord record = new GenericRecordBuilder(MINIMAL_SCHEMA).set("counter", counter++).build();
+            final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+            batch.add(Item.of(0, partyId.value, AvroRecordBuffer.fromRecord(partyId, partyId, "-", Instant.EPOCH, record)));
+        }
+        return batch;
+    }
+}
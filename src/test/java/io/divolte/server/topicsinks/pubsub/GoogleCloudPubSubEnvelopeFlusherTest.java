@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 GoDataDriven B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divolte.server.topicsinks.pubsub;
+
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.PubsubMessage;
+import io.divolte.server.AvroRecordBuffer;
+import io.divolte.server.DivolteIdentifier;
+import io.divolte.server.DivolteSchema;
+import io.divolte.server.processing.Item;
+import io.divolte.server.topicsinks.EnvelopeBuffer;
+import io.grpc.Status;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.CONTINUE;
+import static io.divolte.server.processing.ItemProcessor.ProcessingDirective.PAUSE;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@ParametersAreNonnullByDefault
+public class GoogleCloudPubSubEnvelopeFlusherTest {
+    private static final Schema MINIMAL_SCHEMA =
+        SchemaBuilder.record("test")
+                     .fields().requiredLong("counter")
+                     .endRecord();
+    private static final DivolteSchema SCHEMA = new DivolteSchema(MINIMAL_SCHEMA, Optional.of(12345));
+
+    private Publisher publisher;
+    private GoogleCloudPubSubEnvelopeFlusher flusher;
+    private long counter;
+
+    @Before
+    public void setUp() {
+        publisher = mock(Publisher.class);
+        when(publisher.publish(any(PubsubMessage.class))).thenReturn(ApiFutures.immediateFuture("message-id"));
+        final EnvelopeBuffer envelopeBuffer =
+            new EnvelopeBuffer(SCHEMA, CodecFactory.deflateCodec(6), 2, Integer.MAX_VALUE, Duration.ofHours(1));
+        flusher = new GoogleCloudPubSubEnvelopeFlusher(publisher, SCHEMA, envelopeBuffer);
+    }
+
+    @Test
+    public void shouldPublishEnvelopeAsMessageData() throws IOException {
+        assertEquals(CONTINUE, flusher.process(batchOf(3)));
+
+        final ArgumentCaptor<PubsubMessage> captor = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(publisher).publish(captor.capture());
+        final PubsubMessage message = captor.getValue();
+        assertEquals("2", message.getAttributesOrThrow("eventCount"));
+        assertEquals("1970-01-01T00:00:01Z", message.getAttributesOrThrow("timestamp"));
+        assertEquals(SCHEMA.fingerprint(), message.getAttributesOrThrow("schemaFingerprint"));
+        assertEquals("0x3039", message.getAttributesOrThrow("schemaConfluentId"));
+        assertFalse(message.containsAttributes(GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_PARTYID));
+        assertFalse(message.containsAttributes(GoogleCloudPubSubMessageFactory.MESSAGE_ATTRIBUTE_EVENTID));
+
+        final List<Long> counters = new ArrayList<>();
+        try (final DataFileStream<GenericRecord> stream =
+                 new DataFileStream<>(message.getData().newInput(), new GenericDatumReader<>())) {
+            stream.forEach(record -> counters.add((Long) record.get("counter")));
+        }
+        assertEquals(2, counters.size());
+        assertEquals(Long.valueOf(0), counters.get(0));
+        assertEquals(Long.valueOf(1), counters.get(1));
+    }
+
+    @Test
+    public void shouldRetryTransientFailures() {
+        final SettableApiFuture<String> failure = SettableApiFuture.create();
+        failure.setException(new ApiException("simulated transient failure",
+                                              new IOException(),
+                                              GrpcStatusCode.of(Status.Code.INTERNAL),
+                                              true));
+        when(publisher.publish(any(PubsubMessage.class))).thenReturn(failure)
+                                                         .thenReturn(ApiFutures.immediateFuture("message-id"));
+
+        assertEquals(PAUSE, flusher.process(batchOf(2)));
+        assertEquals(CONTINUE, flusher.heartbeat());
+
+        final ArgumentCaptor<PubsubMessage> captor = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(publisher, times(2)).publish(captor.capture());
+        assertEquals(captor.getAllValues().get(0), captor.getAllValues().get(1));
+    }
+
+    private Queue<Item<AvroRecordBuffer>> batchOf(final int size) {
+        final Queue<Item<AvroRecordBuffer>> batch = new ArrayDeque<>(size);
+        for (int i = 0; i < size; ++i) {
+            final GenericRecord record = new GenericRecordBuilder(MINIMAL_SCHEMA).set("counter", counter++).build();
+            final DivolteIdentifier partyId = DivolteIdentifier.generate(0L);
+            batch.add(Item.of(0, partyId.value, AvroRecordBuffer.fromRecord(partyId, partyId, "-", Instant.ofEpochSecond(counter), record)));
+        }
+        return batch;
+    }
+}